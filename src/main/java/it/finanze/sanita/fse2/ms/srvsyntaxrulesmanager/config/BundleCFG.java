@@ -0,0 +1,44 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Limits applied while extracting an uploaded ZIP bundle
+ */
+@Getter
+@Configuration
+public class BundleCFG {
+
+    /**
+     * Maximum number of files inside a bundle
+     */
+    @Value("${bundle.max-entries}")
+    private int maxEntries;
+
+    /**
+     * Maximum uncompressed size of a single file, the same allowed to a multipart upload
+     */
+    @Value("${bundle.max-entry-size}")
+    private DataSize maxEntrySize;
+
+    /**
+     * Maximum uncompressed size of the whole bundle, the same allowed to a multipart request
+     */
+    @Value("${bundle.max-size}")
+    private DataSize maxSize;
+
+}
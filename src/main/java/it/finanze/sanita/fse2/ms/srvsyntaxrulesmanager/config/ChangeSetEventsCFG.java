@@ -0,0 +1,96 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Collections;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subscriptions to the changeset events and the executor writing them to the clients
+ */
+@Getter
+@Configuration
+public class ChangeSetEventsCFG {
+
+    public static final String CHANGESET_EVENTS_EXECUTOR = "changeSetEventsExecutor";
+
+    /**
+     * Number of open subscriptions, before rejecting the new ones
+     */
+    @Value("${changeset.events.max-subscribers}")
+    private int maxSubscribers;
+
+    /**
+     * Number of events waiting to be written to a single client, before dropping its subscription
+     */
+    @Value("${changeset.events.queue-size}")
+    private int queueSize;
+
+    /**
+     * Number of threads kept to write the events, more are started while clients are slow to read,
+     * up to one for each subscription
+     */
+    @Value("${changeset.events.pool-size}")
+    private int poolSize;
+
+    /**
+     * Lifetime of a subscription, the client reconnects afterwards
+     */
+    @Value("${changeset.events.timeout-ms}")
+    private long timeout;
+
+    /**
+     * Seconds the client is asked to wait (Retry-After) when a subscription is rejected
+     */
+    @Value("${changeset.events.retry-after}")
+    private long retryAfter;
+
+    /**
+     * Interval (ms) between two reads of the changes committed by other replicas, while the change stream is not available
+     */
+    @Value("${changeset.events.poll-interval-ms}")
+    private long pollInterval;
+
+    /**
+     * Max delay (ms) between the update date of a write and its visibility to readers,
+     * the changes are read again for this long
+     */
+    @Value("${changeset.events.clock-skew-ms}")
+    private long clockSkew;
+
+    @Bean(CHANGESET_EVENTS_EXECUTOR)
+    public ThreadPoolExecutor createChangeSetEventsExecutor(MeterRegistry registry) {
+        // Handed off directly, each subscriber has at most one pending drain and a slow client
+        // blocked on its socket holds only its own thread
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            poolSize,
+            Math.max(poolSize, maxSubscribers),
+            60L,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            new CustomizableThreadFactory("changeset-events-")
+        );
+        // Exposes pool size, active threads and queue depth
+        new ExecutorServiceMetrics(executor, CHANGESET_EVENTS_EXECUTOR, Collections.emptyList()).bindTo(registry);
+        return executor;
+    }
+}
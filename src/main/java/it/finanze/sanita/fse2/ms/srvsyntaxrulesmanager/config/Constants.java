@@ -80,6 +80,12 @@ public final class Constants {
          */
         public static final String TEST = "test";
 
+        /**
+         * Replica set test profile name.
+         * Used to run the transactional writes against a single-node replica set.
+         */
+        public static final String REPLICA = "replica";
+
         /**
          * Test profile name underscored
          */
@@ -113,15 +119,33 @@ public final class Constants {
         public static final String ERR_VAL_MISSING_PARAMETER = "Il parametro richiesto '%s' non è presente";
         public static final String ERR_VAL_INVALID_SCHEMA = "Lo schema fornito non risulta valido: %s";
         public static final String ERR_VAL_INVALID_SCHEMA_IO = "Impossibile elaborare il contenuto dello schema";
+        public static final String ERR_VAL_PAGE_LIMIT = "Il numero di elementi per pagina non è valido";
+        public static final String ERR_VAL_PAGE_TOKEN = "Il token di paginazione non è valido";
+        public static final String ERR_VAL_PAGE_TOKEN_MISMATCH = "Il token di paginazione non corrisponde alla data di ultimo aggiornamento richiesta";
 
         // Services
         // DocumentSRV
         public static final String ERR_SRV_ROOT_NOT_FOUND = "Il nome del 'root' file %s non corrisponde a nessuno dei valori possibili: %s";
         public static final String ERR_SRV_INVALID_ROOT_EXT = "L'estensione del 'root' file %s non è consentita";
         public static final String ERR_SRV_DOC_NOT_FOUND = "Il documento richiesto non esiste";
+        public static final String ERR_SRV_DOC_RELOAD = "Impossibile rileggere il contenuto del documento richiesto";
         public static final String ERR_SRV_EXT_NOT_FOUND = "L'estensione richiesta non esiste";
         public static final String ERR_SRV_EXT_ALREADY_ESISTS = "L'estensione richiesta esiste già";
         public static final String ERR_SRV_ROOT_DOC_NOT_FOUND = "Impossibile recuperare il documento root dello schema";
+        // BundleSRV
+        public static final String ERR_SRV_BUNDLE_EMPTY = "L'archivio fornito non contiene alcun file";
+        public static final String ERR_SRV_BUNDLE_TOO_MANY = "L'archivio fornito contiene più di %d file";
+        public static final String ERR_SRV_BUNDLE_TOO_LARGE = "Il contenuto dell'archivio supera la dimensione massima di %d byte";
+        public static final String ERR_SRV_BUNDLE_ENTRY_TOO_LARGE = "Il file %s dell'archivio supera la dimensione massima di %d byte";
+        public static final String ERR_SRV_BUNDLE_INVALID_ENTRY = "Il file %s dell'archivio non è uno schema valido";
+        public static final String ERR_SRV_BUNDLE_DUPLICATED = "Il file %s è presente più volte nell'archivio";
+        public static final String ERR_SRV_BUNDLE_READ = "Impossibile leggere l'archivio fornito";
+        public static final String ERR_SRV_BUNDLE_WRITE = "Impossibile scrivere l'archivio dell'estensione richiesta";
+        // SchemaValidatorSRV
+        public static final String ERR_SRV_VALIDATION_BUSY = "Il servizio di validazione è momentaneamente saturo, riprovare più tardi";
+        public static final String ERR_SRV_VALIDATION_FAILURE = "Errore imprevisto durante la compilazione dello schema";
+        // ChangeSetEventsSRV
+        public static final String ERR_SRV_EVENTS_FULL = "Raggiunto il numero massimo di sottoscrizioni agli eventi, riprovare più tardi";
         // Repository
         // DocumentRepo
         public static final String ERR_REP_DOCS_NOT_FOUND = "Impossibile recuperare i documenti dell'estensione richiesta";
@@ -129,18 +153,42 @@ public final class Constants {
         public static final String ERR_REP_IS_DOCS_INSERTED = "Impossibile recuperare i file dell'estensione richiesta";
         public static final String ERR_REP_INS_DOCS_BY_EXT = "Impossibile inserire i documenti dell'estensione richiesta";
         public static final String ERR_REP_UPD_DOCS_BY_EXT = "Impossibile aggiornare i documenti dell'estensione richiesta";
+        public static final String ERR_REP_PATCH_DOCS_BY_EXT = "Impossibile applicare le modifiche ai documenti dell'estensione richiesta";
+        public static final String ERR_REP_REPLACE_DOCS_BY_EXT = "Impossibile sostituire i documenti dell'estensione richiesta";
+        public static final String ERR_REP_REPLACE_NOTHING = "Nessun documento attivo da sostituire per l'estensione richiesta";
         public static final String ERR_REP_UPD_MISMATCH = "Il numero delle modifiche eseguite <%d> non coincide con quelle richieste <%d>";
         public static final String ERR_REP_DEL_DOCS_BY_EXT = "Impossibile cancellare i documenti dell'estensione richiesta";
         public static final String ERR_REP_DEL_MISMATCH = "Il numero delle cancellazioni eseguite <%d> non coincide con quelle richieste <%d>";
+        public static final String ERR_REP_LAST_UPDATE = "Impossibile recuperare le ultime modifiche dei documenti";
         // Repository
         // ChangeSetRepo
         public static final String ERR_REP_CHANGESET_INSERT = "Impossibile recuperare il change-set degli inserimenti";
         public static final String ERR_REP_CHANGESET_DELETE = "Impossibile recuperare il change-set delle cancellazioni";
         public static final String ERR_REP_EVERY_ACTIVE_DOC = "Impossibile recuperare ogni estensione attiva con i relativi documenti";
         public static final String ERR_REP_COUNT_ACTIVE_DOC = "Impossibile conteggiare ogni estensione attiva";
+        public static final String ERR_REP_CHANGESET_PAGE = "Impossibile recuperare la pagina del change-set";
+        // Repository
+        // SchemaIndexRepo
+        public static final String ERR_REP_ENSURE_INDEX = "Impossibile creare l'indice %s";
+        public static final String ERR_REP_LIST_INDEXES = "Impossibile recuperare gli indici della collezione";
+        // Repository
+        // CompactionRepo
+        public static final String ERR_REP_COMPACTION_FIND = "Impossibile recuperare i documenti cancellati da compattare";
+        public static final String ERR_REP_COMPACTION_PURGE = "Impossibile rimuovere i documenti cancellati";
+        // Repository
+        // SchemaContentRepo
+        public static final String ERR_REP_CONTENT_STORE = "Impossibile salvare il contenuto del documento su GridFS";
+        public static final String ERR_REP_CONTENT_NOT_FOUND = "Il contenuto %s non esiste su GridFS";
+        public static final String ERR_REP_CONTENT_OPEN = "Impossibile leggere il contenuto %s da GridFS";
+        public static final String ERR_REP_CONTENT_DELETE = "Impossibile rimuovere i contenuti dei documenti da GridFS";
+        // Repository
+        // SchemaChangeRepo
+        public static final String ERR_REP_CHANGE_STREAM = "Impossibile aprire il change stream della collezione degli schemi";
         // Entities
         // Schema
         public static final String ERR_ETY_BINARY_CONVERSION = "Impossibile convertire i dati binari nel formato richiesto (UTF-8)";
+        public static final String ERR_ETY_CONTENT_DECODE = "Impossibile decomprimere il contenuto dello schema";
+        public static final String ERR_ETY_CONTENT_ENCODING = "Formato di compressione del contenuto non supportato: %s";
         public static final String ERR_INVALID_CONTENT = "One or more than one file appears not to be a valid schema for the extension: %s";
         public static final String ERR_FIND_ACTIVE_DOCS = "Impossibile trovare documenti attivi";
         // DTO
@@ -0,0 +1,38 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Entity tags properties
+ */
+@Getter
+@Configuration
+public class SchemaETagCFG {
+
+    /**
+     * Interval (ms) between two checks for the writes of other replicas
+     */
+    @Value("${etag.poll-interval-ms}")
+    private long pollInterval;
+
+    /**
+     * Max delay (ms) between the update date of a write and its visibility to readers,
+     * commit latency and clock drift among replicas included
+     */
+    @Value("${etag.clock-skew-ms}")
+    private long clockSkew;
+
+}
@@ -0,0 +1,73 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor used to compile the schemas outside the request threads
+ */
+@Getter
+@Configuration
+public class ValidationExecutorCFG {
+
+    public static final String VALIDATION_EXECUTOR = "validationExecutor";
+
+    /**
+     * Number of concurrent schema compilations
+     */
+    @Value("${validation.executor.pool-size}")
+    private int poolSize;
+
+    /**
+     * Number of schema compilations waiting for a free thread, before rejecting the request
+     */
+    @Value("${validation.executor.queue-size}")
+    private int queueSize;
+
+    /**
+     * Seconds the client is asked to wait (Retry-After) when a compilation is rejected
+     */
+    @Value("${validation.executor.retry-after}")
+    private long retryAfter;
+
+    @Bean(VALIDATION_EXECUTOR)
+    public ThreadPoolExecutor createValidationExecutor(MeterRegistry registry) {
+        // A zero-length queue means direct hand-off
+        BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            poolSize,
+            poolSize,
+            0L,
+            TimeUnit.MILLISECONDS,
+            queue,
+            new CustomizableThreadFactory("schema-validation-"),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+        // Exposes pool size, active threads and queue depth
+        new ExecutorServiceMetrics(executor, VALIDATION_EXECUTOR, Collections.emptyList()).bindTo(registry);
+        return executor;
+    }
+}
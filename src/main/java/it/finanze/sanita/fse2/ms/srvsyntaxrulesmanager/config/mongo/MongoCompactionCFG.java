@@ -0,0 +1,65 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.mongo;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import javax.annotation.PostConstruct;
+
+@Getter
+@Configuration
+@EnableScheduling
+public class MongoCompactionCFG {
+
+    /**
+     * Deleted documents updated within this window are never purged,
+     * it must cover the oldest changeset request issued by downstream consumers
+     */
+    @Value("${data.mongodb.compaction.tombstone-days}")
+    private int tombstoneDays;
+
+    /**
+     * Number of deleted versions kept for each extension and filename, outside the tombstone window
+     */
+    @Value("${data.mongodb.compaction.keep-versions}")
+    private int keepVersions;
+
+    /**
+     * Deleted documents older than this are purged regardless of the kept versions, disabled if not positive
+     */
+    @Value("${data.mongodb.compaction.max-age-days}")
+    private int maxAgeDays;
+
+    /**
+     * Maximum number of documents removed by a single delete
+     */
+    @Value("${data.mongodb.compaction.batch-size}")
+    private int batchSize;
+
+    /**
+     * Rejects values the compaction cannot run with, a batch size
+     * not positive would never remove anything and loop forever
+     */
+    @PostConstruct
+    public void validate() {
+        if (batchSize <= 0) {
+            throw new IllegalStateException("data.mongodb.compaction.batch-size must be positive, found " + batchSize);
+        }
+        if (keepVersions < 0) {
+            throw new IllegalStateException("data.mongodb.compaction.keep-versions must not be negative, found " + keepVersions);
+        }
+    }
+
+}
@@ -19,6 +19,7 @@ import com.mongodb.WriteConcern;
 import com.mongodb.client.MongoClients;
 
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -31,6 +32,7 @@ import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
 import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
 import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
 import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 
 /**
@@ -95,4 +97,13 @@ public class MongoDatabaseCFG {
         return new MongoTemplate(factory, converter);
     }
 
+    /**
+     * Creates a new GridFS template on the bucket holding the schema contents above threshold
+     * @return The new {@link GridFsTemplate} instance
+     */
+    @Bean
+    public GridFsTemplate createGridFs(MongoDatabaseFactory factory, MongoTemplate template, @Qualifier("schemaBean") String collection) {
+        return new GridFsTemplate(factory, template.getConverter(), collection + MongoGridFsCFG.BUCKET_SUFFIX);
+    }
+
 }
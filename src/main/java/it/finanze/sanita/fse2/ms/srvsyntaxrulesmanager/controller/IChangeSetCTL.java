@@ -13,18 +13,30 @@ package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller;
 
 import io.swagger.v3.oas.annotations.tags.Tag;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.operation.changeset.GetChangeSet;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.operation.changeset.GetChangeSetEvents;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.operation.changeset.GetChangeSetStream;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetResDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.InvalidPageTokenException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SubscriptionUnavailableException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.NoFutureDate;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import java.io.IOException;
 import java.util.Date;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_VAL_FUTURE_DATE;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_VAL_PAGE_LIMIT;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.OAUtility.OA_ARRAY_CHANGESET_MAX;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.RoutesUtility.*;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 
 /**
  * ChangeSet retriever controller
@@ -40,6 +52,26 @@ public interface IChangeSetCTL {
         @RequestParam(value=API_QP_LAST_UPDATE, required = false)
         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
         @NoFutureDate(message = ERR_VAL_FUTURE_DATE)
-        Date lastUpdate
-    ) throws OperationException;
+        Date lastUpdate,
+        @RequestParam(value=API_QP_LIMIT, required = false)
+        @Min(value = 1, message = ERR_VAL_PAGE_LIMIT)
+        @Max(value = OA_ARRAY_CHANGESET_MAX, message = ERR_VAL_PAGE_LIMIT)
+        Integer limit,
+        @RequestParam(value=API_QP_PAGE_TOKEN, required = false)
+        String pageToken
+    ) throws OperationException, InvalidPageTokenException;
+
+    @GetChangeSetStream
+    @GetMapping(API_CHANGESET_STATUS_STREAM)
+    void changeSetStream(
+        @RequestParam(value=API_QP_LAST_UPDATE, required = false)
+        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+        @NoFutureDate(message = ERR_VAL_FUTURE_DATE)
+        Date lastUpdate,
+        HttpServletResponse response
+    ) throws OperationException, IOException;
+
+    @GetChangeSetEvents
+    @GetMapping(value = API_CHANGESET_STATUS_EVENTS, produces = TEXT_EVENT_STREAM_VALUE)
+    SseEmitter changeSetEvents() throws SubscriptionUnavailableException;
 }
@@ -16,17 +16,23 @@ import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.operation.document.GetDocumentById;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.operation.document.GetDocumentContentById;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.operation.documents.*;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.data.GetDocByIdResDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.crud.*;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.*;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.UniqueMultipart;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.ValidObjectId;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Size;
@@ -50,12 +56,19 @@ public interface IEdsDocumentsCTL {
             @PathVariable(name = API_PATH_ID_VAR) @Parameter(description = "Document identifier", schema = @Schema(minLength = OA_EXTS_STRING_MIN, maxLength = OA_EXTS_STRING_MAX)) @NotBlank(message = ERR_VAL_ID_BLANK) @Size(min = OA_ANY_STRING_MIN, max = OA_ANY_STRING_MAX, message = "Document id does not match the expected size") @ValidObjectId(message = ERR_VAL_ID_NOT_VALID) String id)
             throws DocumentNotFoundException, OperationException;
 
+    @GetMapping(value = API_GET_CONTENT_BY_ID, produces = { MediaType.APPLICATION_XML_VALUE })
+    @GetDocumentContentById
+    ResponseEntity<Resource> getDocumentContentById(
+            @PathVariable(name = API_PATH_ID_VAR) @Parameter(description = "Document identifier", schema = @Schema(minLength = OA_EXTS_STRING_MIN, maxLength = OA_EXTS_STRING_MAX)) @NotBlank(message = ERR_VAL_ID_BLANK) @Size(min = OA_ANY_STRING_MIN, max = OA_ANY_STRING_MAX, message = "Document id does not match the expected size") @ValidObjectId(message = ERR_VAL_ID_NOT_VALID) String id)
+            throws DocumentNotFoundException, OperationException;
+
     @GetMapping(API_GET_BY_EXTS)
     @GetDocumentsByExt
     GetDocsResDTO getDocumentsByExtension(
             @PathVariable(name = API_PATH_EXTS_VAR) @Parameter(description = "Extension identifier", schema = @Schema(minLength = OA_EXTS_STRING_MIN, maxLength = OA_EXTS_STRING_MAX)) @NotBlank(message = ERR_VAL_EXT_BLANK) @Size(min = OA_EXTS_STRING_MIN, max = OA_EXTS_STRING_MAX, message = "Extension does not match the expected size") String extension,
             @RequestParam(name = API_QP_BINARY, defaultValue = "false") @Parameter(description = "Include binary content") boolean binary,
-            @RequestParam(defaultValue = "false") @Parameter(description = "Include deleted schema") boolean includeDeleted)
+            @RequestParam(defaultValue = "false") @Parameter(description = "Include deleted schema") boolean includeDeleted,
+            @Parameter(hidden = true) WebRequest request)
             throws ExtensionNotFoundException, OperationException;
 
     @PostMapping(produces = { MediaType.APPLICATION_JSON_VALUE }, consumes = { MediaType.MULTIPART_FORM_DATA_VALUE })
@@ -65,7 +78,22 @@ public interface IEdsDocumentsCTL {
             @RequestPart @Parameter(description = "Root filename (eg. Test.xsd)", schema = @Schema(minLength = OA_ANY_STRING_MIN, maxLength = OA_ANY_STRING_MAX)) @NotBlank(message = ERR_VAL_ROOT_BLANK) @Size(min = OA_ANY_STRING_MIN, max = OA_ANY_STRING_MAX, message = "Root filename does not match the expected size") String root,
             @RequestPart @Parameter(description = "Extension identifier", schema = @Schema(minLength = OA_EXTS_STRING_MIN, maxLength = OA_EXTS_STRING_MAX)) @NotBlank(message = ERR_VAL_EXT_BLANK) @Size(min = OA_EXTS_STRING_MIN, max = OA_EXTS_STRING_MAX, message = "Extension does not match the expected size") String extension,
             @RequestPart @Parameter(description = "Files", array = @ArraySchema(minItems = OA_ARRAY_FILES_MIN, maxItems = OA_ARRAY_FILES_MAX, schema = @Schema(type = "string", format = "binary", maxLength = OA_FILE_CONTENT_MAX))) @Size(min = OA_ARRAY_FILES_MIN, max = OA_ARRAY_FILES_MAX, message = "File array does not match the expected size") @UniqueMultipart(message = ERR_VAL_FILES_DUPLICATED) MultipartFile[] files)
-        throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, InvalidContentException, SchemaValidatorException;
+        throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, InvalidContentException, SchemaValidatorException, ValidationUnavailableException;
+
+    @GetMapping(value = API_BUNDLE_BY_EXTS, produces = { API_ZIP_MEDIA_TYPE })
+    @GetBundleByExt
+    ResponseEntity<StreamingResponseBody> getBundle(
+            @PathVariable(name = API_PATH_EXTS_VAR) @Parameter(description = "Extension identifier", schema = @Schema(minLength = OA_EXTS_STRING_MIN, maxLength = OA_EXTS_STRING_MAX)) @NotBlank(message = ERR_VAL_EXT_BLANK) @Size(min = OA_EXTS_STRING_MIN, max = OA_EXTS_STRING_MAX, message = "Extension does not match the expected size") String extension)
+            throws ExtensionNotFoundException, OperationException;
+
+    @PostMapping(value = API_BUNDLE_BY_EXTS, produces = { MediaType.APPLICATION_JSON_VALUE }, consumes = { API_ZIP_MEDIA_TYPE })
+    @UploadBundleByExt
+    @ResponseStatus(HttpStatus.CREATED)
+    PostDocsResDTO uploadBundle(
+            @PathVariable(name = API_PATH_EXTS_VAR) @Parameter(description = "Extension identifier", schema = @Schema(minLength = OA_EXTS_STRING_MIN, maxLength = OA_EXTS_STRING_MAX)) @NotBlank(message = ERR_VAL_EXT_BLANK) @Size(min = OA_EXTS_STRING_MIN, max = OA_EXTS_STRING_MAX, message = "Extension does not match the expected size") String extension,
+            @RequestParam(name = API_PARAM_ROOT) @Parameter(description = "Root filename (eg. Test.xsd)", schema = @Schema(minLength = OA_ANY_STRING_MIN, maxLength = OA_ANY_STRING_MAX)) @NotBlank(message = ERR_VAL_ROOT_BLANK) @Size(min = OA_ANY_STRING_MIN, max = OA_ANY_STRING_MAX, message = "Root filename does not match the expected size") String root,
+            @RequestBody @Parameter(description = "ZIP archive of the schema files", schema = @Schema(type = "string", format = "binary")) InputStreamResource bundle)
+        throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, InvalidContentException, SchemaValidatorException, ValidationUnavailableException;
 
     @PutMapping(produces = { MediaType.APPLICATION_JSON_VALUE }, consumes = { MediaType.MULTIPART_FORM_DATA_VALUE })
     @UpdateDocumentsByExt
@@ -74,7 +102,7 @@ public interface IEdsDocumentsCTL {
             @RequestPart @Parameter(description = "Extension identifier", schema = @Schema(minLength = OA_EXTS_STRING_MIN, maxLength = OA_EXTS_STRING_MAX)) @NotBlank(message = ERR_VAL_EXT_BLANK) @Size(min = OA_EXTS_STRING_MIN, max = OA_EXTS_STRING_MAX, message = "Extension does not match the expected size") String extension,
             @RequestPart @Parameter(description = "Files", array = @ArraySchema(minItems = OA_ARRAY_FILES_MIN, maxItems = OA_ARRAY_FILES_MAX, schema = @Schema(type = "string", format = "binary", maxLength = OA_FILE_CONTENT_MAX))) @Size(min = OA_ARRAY_FILES_MIN, max = OA_ARRAY_FILES_MAX, message = "File array does not match the expected size") @UniqueMultipart(message = ERR_VAL_FILES_DUPLICATED) MultipartFile[] files)
         throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException,
-        DataIntegrityException, InvalidContentException, RootNotValidException, SchemaValidatorException;
+        DataIntegrityException, InvalidContentException, RootNotValidException, SchemaValidatorException, ValidationUnavailableException;
 
     @PatchMapping(produces = { MediaType.APPLICATION_JSON_VALUE }, consumes = { MediaType.MULTIPART_FORM_DATA_VALUE })
     @PatchDocumentsByExt
@@ -82,7 +110,7 @@ public interface IEdsDocumentsCTL {
             @RequestPart @Parameter(description = "Extension identifier", schema = @Schema(minLength = OA_EXTS_STRING_MIN, maxLength = OA_EXTS_STRING_MAX)) @NotBlank(message = ERR_VAL_EXT_BLANK) @Size(min = OA_EXTS_STRING_MIN, max = OA_EXTS_STRING_MAX, message = "Extension does not match the expected size") String extension,
             @RequestPart @Parameter(description = "Files", array = @ArraySchema(minItems = OA_ARRAY_FILES_MIN, maxItems = OA_ARRAY_FILES_MAX, schema = @Schema(type = "string", format = "binary", maxLength = OA_FILE_CONTENT_MAX))) @Size(min = OA_ARRAY_FILES_MIN, max = OA_ARRAY_FILES_MAX, message = "File array does not match the expected size") @UniqueMultipart(message = ERR_VAL_FILES_DUPLICATED) MultipartFile[] files)
         throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException,
-        DataIntegrityException, InvalidContentException, SchemaValidatorException;
+        DataIntegrityException, InvalidContentException, SchemaValidatorException, ValidationUnavailableException;
 
     @DeleteMapping(API_DELETE_BY_EXTS)
     @DeleteDocumentsByExt
@@ -94,6 +122,7 @@ public interface IEdsDocumentsCTL {
     @GetAllDocuments
     GetDocsResDTO getAllDocuments(
         @RequestParam(value = API_QP_BINARY, defaultValue = "false") @Parameter(description = "Include binary content") boolean binary,
-        @RequestParam(value = API_QP_INCLUDE_DELETED, defaultValue = "false") @Parameter(description = "Include deleted content") boolean deleted
+        @RequestParam(value = API_QP_INCLUDE_DELETED, defaultValue = "false") @Parameter(description = "Include deleted content") boolean deleted,
+        @Parameter(hidden = true) WebRequest request
     ) throws DocumentNotFoundException, OperationException;
 }
@@ -278,6 +278,18 @@ public class ExceptionCTL extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(out, headers, out.getStatus());
     }
 
+    @ExceptionHandler(InvalidPageTokenException.class)
+    protected ResponseEntity<ErrorResponseDTO> handleInvalidPageTokenException(InvalidPageTokenException ex) {
+        // Log me
+        log.error("HANDLER handleInvalidPageTokenException()", ex);
+        // Create error DTO
+        ErrorResponseDTO out = createInvalidPageTokenError(getLogTraceInfo(), ex);
+        // Set HTTP headers
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_PROBLEM_JSON);
+        return new ResponseEntity<>(out, headers, out.getStatus());
+    }
+
     @ExceptionHandler(SchemaValidatorException.class)
     protected ResponseEntity<ErrorResponseDTO> handleSchemaValidatorException(SchemaValidatorException ex) {
         // Log me
@@ -290,6 +302,42 @@ public class ExceptionCTL extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(out, headers, out.getStatus());
     }
 
+    /**
+     * Handles exceptions thrown when the schema validation executor is saturated.
+     *
+     * @param ex exception
+     */
+    @ExceptionHandler(ValidationUnavailableException.class)
+    protected ResponseEntity<ErrorResponseDTO> handleValidationUnavailableException(ValidationUnavailableException ex) {
+        // Log me
+        log.error("HANDLER handleValidationUnavailableException()", ex);
+        // Create error DTO
+        ErrorResponseDTO out = createValidationUnavailableError(getLogTraceInfo(), ex);
+        // Set HTTP headers
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_PROBLEM_JSON);
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfter()));
+        return new ResponseEntity<>(out, headers, out.getStatus());
+    }
+
+    /**
+     * Handles exceptions thrown when no more changeset subscriptions can be opened.
+     *
+     * @param ex exception
+     */
+    @ExceptionHandler(SubscriptionUnavailableException.class)
+    protected ResponseEntity<ErrorResponseDTO> handleSubscriptionUnavailableException(SubscriptionUnavailableException ex) {
+        // Log me
+        log.warn("HANDLER handleSubscriptionUnavailableException()", ex);
+        // Create error DTO
+        ErrorResponseDTO out = createSubscriptionUnavailableError(getLogTraceInfo(), ex);
+        // Set HTTP headers
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_PROBLEM_JSON);
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfter()));
+        return new ResponseEntity<>(out, headers, out.getStatus());
+    }
+
     /**
      * Generate a new {@link LogTraceInfoDTO} instance
      * @return The new instance
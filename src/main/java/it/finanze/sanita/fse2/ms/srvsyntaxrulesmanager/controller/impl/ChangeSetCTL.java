@@ -11,33 +11,62 @@
  */
 package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.AbstractCTL;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.IChangeSetCTL;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.ChangeSetPageDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetResDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetStreamDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.log.LogTraceInfoDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.InvalidPageTokenException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SubscriptionUnavailableException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetEventsSRV;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetSRV;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.OAUtility.OA_ARRAY_CHANGESET_MAX;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
 
 @RestController
 public class ChangeSetCTL extends AbstractCTL implements IChangeSetCTL {
 
+    private static final int LINE_SEPARATOR = '\n';
+
     @Autowired
     private IChangeSetSRV service;
 
+    @Autowired
+    private IChangeSetEventsSRV events;
+
+    @Autowired
+    private ObjectMapper mapper;
+
     /**
      * @param lastUpdate The last update date
+     * @param limit The maximum number of items, if paging
+     * @param pageToken The token returned by the previous page, if paging
      * @return The changeset for the current time according to the last update
      * @throws OperationException If a data-layer error occurs
+     * @throws InvalidPageTokenException If the token is malformed or issued for another lastUpdate
      */
     @Override
-    public ChangeSetResDTO changeSet(@Nullable Date lastUpdate) throws OperationException {
+    public ChangeSetResDTO changeSet(@Nullable Date lastUpdate, @Nullable Integer limit, @Nullable String pageToken) throws OperationException, InvalidPageTokenException {
+        if (limit != null || pageToken != null) {
+            return changeSetPage(lastUpdate, limit != null ? limit : OA_ARRAY_CHANGESET_MAX, pageToken);
+        }
         // Retrieve changes
         List<ChangeSetDTO> insertions = service.getInsertions(lastUpdate);
         List<ChangeSetDTO> deletions = service.getDeletions(lastUpdate);
@@ -57,4 +86,88 @@ public class ChangeSetCTL extends AbstractCTL implements IChangeSetCTL {
         response.setCollectionSize(collectionSize);
         return response;
     }
+
+    private ChangeSetResDTO changeSetPage(@Nullable Date lastUpdate, int limit, @Nullable String pageToken) throws OperationException, InvalidPageTokenException {
+        // Retrieve changes
+        ChangeSetPageDTO page = service.getPage(lastUpdate, limit, pageToken);
+        // Retrieve log trace
+        LogTraceInfoDTO trace = getLogTraceInfo();
+        // Build response, the snapshot is the timestamp of every page
+        ChangeSetResDTO response = new ChangeSetResDTO();
+        response.setTraceID(trace.getTraceID());
+        response.setSpanID(trace.getSpanID());
+        response.setLastUpdate(page.getLastUpdate());
+        response.setTimestamp(page.getSnapshot());
+        response.setInsertions(page.getInsertions());
+        response.setDeletions(page.getDeletions());
+        response.setTotalNumberOfElements((long) page.getInsertions().size() + page.getDeletions().size());
+        response.setCollectionSize(page.getCollectionSize());
+        response.setNextPageToken(page.getNextPageToken());
+        return response;
+    }
+
+    /**
+     * Writes the changeset as newline-delimited JSON while reading it from the database,
+     * the summary line is written last and marks the end of a complete response
+     *
+     * @param lastUpdate The last update date
+     * @param response The servlet response to write into
+     * @throws OperationException If a data-layer error occurs
+     * @throws IOException If the client connection is lost
+     */
+    @Override
+    public void changeSetStream(@Nullable Date lastUpdate, HttpServletResponse response) throws OperationException, IOException {
+        // Taken before reading, so changes happening meanwhile are returned again on the next call
+        Date timestamp = new Date();
+        AtomicLong insertions = new AtomicLong();
+        AtomicLong deletions = new AtomicLong();
+        // Retrieve log trace
+        LogTraceInfoDTO trace = getLogTraceInfo();
+        // Prepare output
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        try {
+            // Write changes
+            service.streamInsertions(lastUpdate, i -> {
+                write(out, ChangeSetStreamDTO.insertion(i));
+                insertions.incrementAndGet();
+            });
+            service.streamDeletions(lastUpdate, d -> {
+                write(out, ChangeSetStreamDTO.deletion(d));
+                deletions.incrementAndGet();
+            });
+            // Build summary
+            ChangeSetResDTO summary = new ChangeSetResDTO();
+            summary.setTraceID(trace.getTraceID());
+            summary.setSpanID(trace.getSpanID());
+            summary.setLastUpdate(lastUpdate);
+            summary.setTimestamp(timestamp);
+            summary.setTotalNumberOfElements(insertions.get() + deletions.get());
+            summary.setCollectionSize(service.getCollectionSize());
+            write(out, ChangeSetStreamDTO.summary(summary));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    /**
+     * Subscribes to the changes committed from now on, pushed as server-sent events
+     *
+     * @return The emitter of the subscription
+     * @throws SubscriptionUnavailableException If the maximum number of subscriptions has been reached
+     */
+    @Override
+    public SseEmitter changeSetEvents() throws SubscriptionUnavailableException {
+        return events.subscribe();
+    }
+
+    private void write(OutputStream out, ChangeSetStreamDTO line) {
+        try {
+            out.write(mapper.writeValueAsBytes(line));
+            out.write(LINE_SEPARATOR);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
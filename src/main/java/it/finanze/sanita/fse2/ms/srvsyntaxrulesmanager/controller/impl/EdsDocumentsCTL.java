@@ -17,17 +17,34 @@ import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.AbstractCTL;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.IEdsDocumentsCTL;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDocumentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaFileDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaUpdateDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.data.GetDocByIdResDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.crud.*;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.*;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IBundleSRV;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IDocumentSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility.toWeakETag;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.RoutesUtility.API_ZIP_MEDIA_TYPE;
+
 
 @RestController
 public class EdsDocumentsCTL extends AbstractCTL implements IEdsDocumentsCTL {
@@ -38,6 +55,18 @@ public class EdsDocumentsCTL extends AbstractCTL implements IEdsDocumentsCTL {
     @Autowired
     private IDocumentSRV service;
 
+    /**
+     * Entity tags of the documents
+     */
+    @Autowired
+    private ISchemaETagSRV etags;
+
+    /**
+     * ZIP bundles service layer
+     */
+    @Autowired
+    private IBundleSRV bundles;
+
     /**
      * Retrieves the document by extension identifier and filename
      * @param id The document id
@@ -50,22 +79,45 @@ public class EdsDocumentsCTL extends AbstractCTL implements IEdsDocumentsCTL {
         return new GetDocByIdResDTO(getLogTraceInfo(), service.findDocById(id));
     }
 
+    /**
+     * Retrieves the raw content of the document by identifier.
+     * The digest is used as weak ETag, a matching If-None-Match is answered with 304
+     * by the framework before the content is opened
+     * @param id The document id
+     * @return The document content
+     * @throws OperationException If a data-layer error occurs
+     * @throws DocumentNotFoundException If no document matching the id is found
+     */
+    @Override
+    public ResponseEntity<Resource> getDocumentContentById(String id) throws OperationException, DocumentNotFoundException {
+        SchemaFileDTO file = service.findDocContentById(id);
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_XML)
+            .contentLength(file.getLength())
+            .eTag(toWeakETag(file.getDigest()))
+            .body(file.asResource());
+    }
+
     /**
      * Retrieves the documents by their extension identifier
      *
      * @param binary If response should display binary content for each document
      * @param extension The extension id
-     * @return The documents matching the extension identifier
+     * @param request The current request, used to answer 304 when the tag matches
+     * @return The documents matching the extension identifier or null if not modified
      * @throws OperationException        If a data-layer error occurs
      * @throws ExtensionNotFoundException If no documents matching the extension are found
      */
     @Override
-    public GetDocsResDTO getDocumentsByExtension(String extension, boolean binary, boolean deleted)
+    public GetDocsResDTO getDocumentsByExtension(String extension, boolean binary, boolean deleted, WebRequest request)
         throws ExtensionNotFoundException, OperationException {
+        // Skip loading and serialization if the client copy is still valid
+        String tag = etags.getExtensionTag(extension, deleted, binary);
+        if (tag != null && request.checkNotModified(toWeakETag(tag))) return null;
         // Create options
         SchemaDocumentDTO.Options opts = new SchemaDocumentDTO.Options(binary);
         // Retrieve documents by extension
-        ArrayList<SchemaDocumentDTO> out = new ArrayList<>(service.findDocsByExtensionId(extension, deleted));
+        ArrayList<SchemaDocumentDTO> out = new ArrayList<>(service.findDocsByExtensionId(extension, opts, deleted));
         // Return response
         return new GetDocsResDTO(getLogTraceInfo(), SchemaDTO.fromItems(extension, out, opts));
     }
@@ -85,7 +137,7 @@ public class EdsDocumentsCTL extends AbstractCTL implements IEdsDocumentsCTL {
      */
     @Override
     public PostDocsResDTO uploadDocuments(String root, String extension, MultipartFile[] files)
-        throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, InvalidContentException, SchemaValidatorException {
+        throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, InvalidContentException, SchemaValidatorException, ValidationUnavailableException {
 
         String checkedRoot = checkRootExtension(root);
         if (validateFiles(files)) {
@@ -96,6 +148,48 @@ public class EdsDocumentsCTL extends AbstractCTL implements IEdsDocumentsCTL {
         }
     }
 
+    /**
+     * Retrieves the active documents of the extension as a ZIP archive
+     *
+     * @param extension The extension id
+     * @return The archive, written while the documents are read
+     * @throws OperationException         If a data-layer error occurs
+     * @throws ExtensionNotFoundException If no documents matching the extension are found
+     */
+    @Override
+    public ResponseEntity<StreamingResponseBody> getBundle(String extension) throws ExtensionNotFoundException, OperationException {
+        StreamingResponseBody body = bundles.exportBundle(extension);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(API_ZIP_MEDIA_TYPE))
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(extension + ".zip").build().toString())
+            .body(body);
+    }
+
+    /**
+     * Insert the files of the given ZIP archive inside the schema
+     *
+     * @param extension Extension identifier
+     * @param root      Root filename
+     * @param bundle    The ZIP archive, extracted while it is received
+     * @return The number of files inserted into the schema
+     * @throws OperationException If a data-layer error occurs
+     * @throws ExtensionAlreadyExistsException If the given extension is already inserted into the schema
+     * @throws DataProcessingException If the archive cannot be read
+     * @throws InvalidContentException If the archive is empty, exceeds the limits or contains invalid files
+     */
+    @Override
+    public PostDocsResDTO uploadBundle(String extension, String root, InputStreamResource bundle)
+        throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, InvalidContentException, SchemaValidatorException, ValidationUnavailableException {
+        try (InputStream in = bundle.getInputStream()) {
+            int insertedSchema = bundles.importBundle(checkRootExtension(root), extension, in);
+            return new PostDocsResDTO(getLogTraceInfo(), insertedSchema);
+        } catch (DataProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DataProcessingException(Constants.Logs.ERR_SRV_BUNDLE_READ, e);
+        }
+    }
+
     /**
      * Update the documents content with the provided ones according to the extension
      *
@@ -110,11 +204,11 @@ public class EdsDocumentsCTL extends AbstractCTL implements IEdsDocumentsCTL {
      * @throws InvalidContentException    If at least one files has an invalid content that means is empty or not a proper schema file
      */
     @Override
-    public PutDocsResDTO updateDocuments(String root, String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException, DataIntegrityException, InvalidContentException, RootNotValidException, SchemaValidatorException {
+    public PutDocsResDTO updateDocuments(String root, String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException, DataIntegrityException, InvalidContentException, RootNotValidException, SchemaValidatorException, ValidationUnavailableException {
         String checkedRoot = checkRootExtension(root);
         if (validateFiles(files)) {
-            int updatedSchema = service.updateDocsByExtensionId(checkedRoot, extension, files);
-            return new PutDocsResDTO(getLogTraceInfo(), updatedSchema);
+            SchemaUpdateDTO updated = service.updateDocsByExtensionId(checkedRoot, extension, files);
+            return new PutDocsResDTO(getLogTraceInfo(), updated.getUpdatedItems(), updated.getUnchangedItems());
         } else {
             throw new InvalidContentException(String.format(Constants.Logs.ERR_INVALID_CONTENT, extension));
         }
@@ -147,11 +241,11 @@ public class EdsDocumentsCTL extends AbstractCTL implements IEdsDocumentsCTL {
      * @throws InvalidContentException    If at least one files has an invalid content that means is empty or not a proper schema file
      */
     @Override
-    public PatchDocsResDTO patchDocuments(String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException, DataIntegrityException, InvalidContentException, SchemaValidatorException {
+    public PatchDocsResDTO patchDocuments(String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException, DataIntegrityException, InvalidContentException, SchemaValidatorException, ValidationUnavailableException {
         
         if (validateFiles(files)) {
-            int patchedDocuments = service.patchDocsByExtensionId(extension, files);
-            return new PatchDocsResDTO(getLogTraceInfo(), patchedDocuments);
+            SchemaUpdateDTO patched = service.patchDocsByExtensionId(extension, files);
+            return new PatchDocsResDTO(getLogTraceInfo(), patched.getUpdatedItems(), patched.getUnchangedItems());
         } else {
             throw new InvalidContentException(String.format(Constants.Logs.ERR_INVALID_CONTENT, extension));
         }
@@ -161,11 +255,14 @@ public class EdsDocumentsCTL extends AbstractCTL implements IEdsDocumentsCTL {
      * Retrieves all the active documents
      * @param binary If response should display binary content for each document
      * @param deleted If response should evaluate deleted content
-     * @return The documents found on DB
+     * @param request The current request, used to answer 304 when the tag matches
+     * @return The documents found on DB or null if not modified
      * @throws OperationException        If a data-layer error occurs
      */
     @Override
-    public GetDocsResDTO getAllDocuments(boolean binary, boolean deleted) throws OperationException {
+    public GetDocsResDTO getAllDocuments(boolean binary, boolean deleted, WebRequest request) throws OperationException {
+        // Skip loading and serialization if the client copy is still valid
+        if (request.checkNotModified(toWeakETag(etags.getListingTag(deleted, binary)))) return null;
         // Create options
         SchemaDocumentDTO.Options opts = new SchemaDocumentDTO.Options(binary);
         // Retrieve documents by extension
@@ -29,7 +29,9 @@ import static java.lang.annotation.ElementType.METHOD;
 // OpenAPI descriptor
 @Operation(
     summary = "Retrieve changeset by last-update",
-    description = "Returns an on-the-fly snapshot status for the given timeframe"
+    description = "Returns an on-the-fly snapshot status for the given timeframe. " +
+        "If a limit or a page token is given, the changes are returned in pages read against the same snapshot, " +
+        "following nextPageToken until it is null"
 )
 @ApiResponses(
     value = {
@@ -0,0 +1,75 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.operation.document;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.headers.Header;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.error.base.ErrorResponseDTO;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+
+// OpenAPI descriptor
+@Operation(
+    summary = "Retrieve document content by id",
+    description = "Retrieves the raw content of the document matching the given identifier"
+)
+@ApiResponses(
+    value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Contenuto del documento",
+            headers = @Header(name = HttpHeaders.ETAG, description = "Digest SHA-256 del contenuto"),
+            content = @Content(
+                mediaType = MediaType.APPLICATION_XML_VALUE,
+                schema = @Schema(type = "string", format = "binary"))
+        ),
+        @ApiResponse(
+            responseCode = "304",
+            description = "Il contenuto non è cambiato rispetto all'ETag fornito"
+        ),
+        @ApiResponse(
+            responseCode = "400",
+            description = "I parametri forniti non sono validi",
+            content = @Content(
+                mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                schema = @Schema(implementation = ErrorResponseDTO.class))
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "Documento non trovato sul database",
+            content = @Content(
+                mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                schema = @Schema(implementation = ErrorResponseDTO.class))
+        ),
+        @ApiResponse(
+            responseCode = "500",
+            description = "Internal Server Error",
+            content = @Content(
+                mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                schema = @Schema(implementation = ErrorResponseDTO.class))
+        )
+    }
+)
+@Target(METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface GetDocumentContentById {
+}
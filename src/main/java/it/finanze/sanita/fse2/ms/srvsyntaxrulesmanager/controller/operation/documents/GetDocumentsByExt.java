@@ -12,12 +12,14 @@
 package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.operation.documents;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.crud.GetDocsResDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.error.base.ErrorResponseDTO;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 
 import java.lang.annotation.Retention;
@@ -36,10 +38,15 @@ import static java.lang.annotation.ElementType.METHOD;
         @ApiResponse(
             responseCode = "200",
             description = "Documenti trovati sul database",
+            headers = @Header(name = HttpHeaders.ETAG, description = "Identificativo della versione dei documenti"),
             content = @Content(
                 mediaType = MediaType.APPLICATION_JSON_VALUE,
                 schema = @Schema(implementation = GetDocsResDTO.class))
         ),
+        @ApiResponse(
+            responseCode = "304",
+            description = "I documenti non sono cambiati rispetto all'ETag fornito"
+        ),
         @ApiResponse(
             responseCode = "400",
             description = "I parametri forniti non sono validi",
@@ -71,6 +71,13 @@ import static java.lang.annotation.ElementType.METHOD;
             content = @Content(
                 mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
                 schema = @Schema(implementation = ErrorResponseDTO.class))
+        ),
+        @ApiResponse(
+            responseCode = "503",
+            description = "Servizio di validazione saturo, riprovare dopo il tempo indicato in Retry-After",
+            content = @Content(
+                mediaType = MediaType.APPLICATION_PROBLEM_JSON_VALUE,
+                schema = @Schema(implementation = ErrorResponseDTO.class))
         )
     }
 )
@@ -0,0 +1,121 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.InvalidPageTokenException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.bson.types.ObjectId;
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Objects;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_VAL_PAGE_TOKEN;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_VAL_PAGE_TOKEN_MISMATCH;
+
+/**
+ * Position of a changeset page, exchanged with the client as an opaque token.
+ * Every page is read against the same snapshot, so items are never skipped or repeated
+ * while the client is paging, whatever is written meanwhile. The snapshot lags behind the first request
+ * by the configured clock skew, writes committed later than that after their update date can still be missed
+ */
+@Getter
+@AllArgsConstructor
+public class ChangeSetCursorDTO {
+
+    private static final String VERSION = "1";
+    private static final String SEPARATOR = ":";
+    private static final int PARTS = 6;
+
+    /**
+     * The lastUpdate of the first page
+     */
+    @Nullable
+    private final Date lastUpdate;
+
+    /**
+     * Upper bound of every page, returned as the timestamp to use for the next alignment.
+     * Taken the clock skew before the first page, so that the writes stamped up to it are visible
+     */
+    private final Date snapshot;
+
+    /**
+     * Documents active at the snapshot, counted on the first page only
+     */
+    private final long collectionSize;
+
+    /**
+     * Last update date of the last item returned
+     */
+    @Nullable
+    private final Date afterDate;
+
+    /**
+     * Identifier of the last item returned, breaks the ties on the date
+     */
+    @Nullable
+    private final String afterId;
+
+    /**
+     * @param date The last update date of the last item returned
+     * @param id The identifier of the last item returned
+     * @return The cursor of the following page
+     */
+    public ChangeSetCursorDTO next(Date date, String id) {
+        return new ChangeSetCursorDTO(lastUpdate, snapshot, collectionSize, date, id);
+    }
+
+    public String encode() {
+        String raw = String.join(SEPARATOR,
+            VERSION,
+            String.valueOf(snapshot.getTime()),
+            lastUpdate != null ? String.valueOf(lastUpdate.getTime()) : "",
+            String.valueOf(collectionSize),
+            String.valueOf(afterDate.getTime()),
+            afterId
+        );
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param token The token returned by the previous page
+     * @param lastUpdate The lastUpdate of the request, if any, must match the one of the first page
+     * @return The cursor of the requested page
+     * @throws InvalidPageTokenException If the token is malformed or issued for another lastUpdate
+     */
+    public static ChangeSetCursorDTO decode(String token, @Nullable Date lastUpdate) throws InvalidPageTokenException {
+        ChangeSetCursorDTO cursor;
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII).split(SEPARATOR, -1);
+            if (parts.length != PARTS || !VERSION.equals(parts[0]) || !ObjectId.isValid(parts[5])) {
+                throw new InvalidPageTokenException(ERR_VAL_PAGE_TOKEN);
+            }
+            cursor = new ChangeSetCursorDTO(
+                parts[2].isEmpty() ? null : new Date(Long.parseLong(parts[2])),
+                new Date(Long.parseLong(parts[1])),
+                Long.parseLong(parts[3]),
+                new Date(Long.parseLong(parts[4])),
+                parts[5]
+            );
+        } catch (IllegalArgumentException e) {
+            // Also thrown on malformed numbers
+            throw new InvalidPageTokenException(ERR_VAL_PAGE_TOKEN);
+        }
+        if (lastUpdate != null && !Objects.equals(lastUpdate, cursor.getLastUpdate())) {
+            throw new InvalidPageTokenException(ERR_VAL_PAGE_TOKEN_MISMATCH);
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.lang.Nullable;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A page of the changeset
+ */
+@Getter
+@AllArgsConstructor
+public class ChangeSetPageDTO {
+
+    /**
+     * The lastUpdate of the first page
+     */
+    @Nullable
+    private final Date lastUpdate;
+
+    /**
+     * Time the pages are read at, the same for every page
+     */
+    private final Date snapshot;
+
+    private final List<ChangeSetDTO> insertions;
+
+    private final List<ChangeSetDTO> deletions;
+
+    /**
+     * Documents active at the snapshot
+     */
+    private final long collectionSize;
+
+    /**
+     * Token of the following page, null on the last one
+     */
+    @Nullable
+    private final String nextPageToken;
+
+}
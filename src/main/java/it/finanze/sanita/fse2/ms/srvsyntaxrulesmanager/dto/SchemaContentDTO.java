@@ -0,0 +1,87 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Schema content, either held in memory or lazily opened from the storage.
+ * Jackson writes it as Base64 straight into the response, stored contents are
+ * streamed chunk by chunk without being buffered as a whole
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@JsonSerialize(using = SchemaContentDTO.Serializer.class)
+public class SchemaContentDTO {
+
+    private final byte[] data;
+    private final Source source;
+
+    @FunctionalInterface
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    public static SchemaContentDTO of(byte[] data) {
+        return new SchemaContentDTO(data, null);
+    }
+
+    public static SchemaContentDTO of(Source source) {
+        return new SchemaContentDTO(null, source);
+    }
+
+    /**
+     * Wraps the inline content of the entity, compressed contents are inflated while written
+     * @param e The entity
+     * @return The content
+     */
+    public static SchemaContentDTO inline(SchemaETY e) {
+        if (e.getContentFormat() == null) return of(e.getContentSchema().getData());
+        return of(() -> e.decode(new ByteArrayInputStream(e.getContentSchema().getData())));
+    }
+
+    /**
+     * @return A new stream over the content, it must be closed by the caller
+     * @throws IOException If the content cannot be opened
+     */
+    public InputStream open() throws IOException {
+        return data != null ? new ByteArrayInputStream(data) : source.open();
+    }
+
+    public static class Serializer extends StdSerializer<SchemaContentDTO> {
+
+        public Serializer() {
+            super(SchemaContentDTO.class);
+        }
+
+        @Override
+        public void serialize(SchemaContentDTO value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            if (value.data != null) {
+                gen.writeBinary(value.data);
+            } else {
+                try (InputStream in = value.source.open()) {
+                    gen.writeBinary(in, -1);
+                }
+            }
+        }
+    }
+
+}
@@ -12,12 +12,15 @@
 package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto;
 
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.ExtensionETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.ExtensionMetadataETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_DTO_EMPTY_ITEMS;
@@ -37,9 +40,21 @@ public class SchemaDTO {
     private List<SchemaDocumentDTO> content;
 
     public static SchemaDTO fromExtension(ExtensionETY ext, SchemaDocumentDTO.Options options) {
+        return fromExtension(ext, SchemaDocumentDTO::fromEntity, options);
+    }
+
+    public static SchemaDTO fromExtension(ExtensionETY ext, Function<SchemaETY, SchemaDocumentDTO> mapper, SchemaDocumentDTO.Options options) {
+        return fromItems(
+            ext.getId(),
+            ext.getItems().stream().map(mapper).collect(Collectors.toList()),
+            options
+        );
+    }
+
+    public static SchemaDTO fromMetadata(ExtensionMetadataETY ext, SchemaDocumentDTO.Options options) {
         return fromItems(
             ext.getId(),
-            ext.getItems().stream().map(SchemaDocumentDTO::fromEntity).collect(Collectors.toList()),
+            ext.getItems().stream().map(SchemaDocumentDTO::fromMetadata).collect(Collectors.toList()),
             options
         );
     }
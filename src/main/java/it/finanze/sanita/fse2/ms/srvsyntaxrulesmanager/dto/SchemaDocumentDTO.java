@@ -13,14 +13,15 @@ package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
 
 import java.time.OffsetDateTime;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility.convertToOffsetDateTime;
-import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility.encodeBase64;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.OAUtility.*;
 
 @Data
@@ -31,8 +32,11 @@ public class SchemaDocumentDTO {
     private String id;
     @Schema(maxLength = OA_ANY_STRING_MAX)
     private String nameSchema;
-    @Schema(maxLength = OA_FILE_CONTENT_MAX)
-    private String contentSchema;
+    /**
+     * Raw content, Jackson writes it as Base64 straight into the response
+     */
+    @Schema(type = "string", format = "byte", maxLength = OA_FILE_CONTENT_MAX)
+    private SchemaContentDTO contentSchema;
     @Schema(maxLength = OA_EXTS_STRING_MAX)
     private String typeIdExtension;
     private Boolean rootSchema;
@@ -42,16 +46,34 @@ public class SchemaDocumentDTO {
 
     private boolean deleted;
 
+    @Getter
     @AllArgsConstructor
     public static class Options {
         private final boolean binary;
     }
 
     public static SchemaDocumentDTO fromEntity(SchemaETY e) {
+        return fromEntity(e, SchemaContentDTO.inline(e));
+    }
+
+    public static SchemaDocumentDTO fromEntity(SchemaETY e, SchemaContentDTO content) {
+        return new SchemaDocumentDTO(
+            e.getId(),
+            e.getNameSchema(),
+            content,
+            e.getTypeIdExtension(),
+            e.getRootSchema(),
+            convertToOffsetDateTime(e.getInsertionDate()),
+            convertToOffsetDateTime(e.getLastUpdateDate()),
+            e.isDeleted()
+        );
+    }
+
+    public static SchemaDocumentDTO fromMetadata(SchemaMetadataETY e) {
         return new SchemaDocumentDTO(
             e.getId(),
             e.getNameSchema(),
-            encodeBase64(e.getContentSchema().getData()),
+            null,
             e.getTypeIdExtension(),
             e.getRootSchema(),
             convertToOffsetDateTime(e.getInsertionDate()),
@@ -0,0 +1,73 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Raw schema file, the content is opened only when written to the response
+ */
+@Getter
+@AllArgsConstructor
+public class SchemaFileDTO {
+
+    /**
+     * Filename
+     */
+    private final String nameSchema;
+
+    /**
+     * SHA-256 digest of the content
+     */
+    private final String digest;
+
+    /**
+     * Content size in bytes
+     */
+    private final long length;
+
+    private final SchemaContentDTO content;
+
+    /**
+     * @return The content as a resource with a known length, so it can be copied straight to the response
+     */
+    public Resource asResource() {
+        return new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return "Schema file [" + nameSchema + "]";
+            }
+
+            @Override
+            public String getFilename() {
+                return nameSchema;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return content.open();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes;
+
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import lombok.Value;
+
+import java.util.Date;
+import java.util.List;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.OAUtility.OA_ARRAY_CHANGESET_MAX;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.OAUtility.OA_ARRAY_CHANGESET_MIN;
+
+/**
+ * The changes committed by a single write, pushed to the subscribers
+ */
+@Value
+public class ChangeSetEventDTO {
+
+    /**
+     * Commit time, usable as lastUpdate to realign after a disconnection
+     */
+    Date timestamp;
+
+    @ArraySchema(minItems = OA_ARRAY_CHANGESET_MIN, maxItems = OA_ARRAY_CHANGESET_MAX, uniqueItems = true)
+    List<ChangeSetDTO> insertions;
+
+    @ArraySchema(minItems = OA_ARRAY_CHANGESET_MIN, maxItems = OA_ARRAY_CHANGESET_MAX, uniqueItems = true)
+    List<ChangeSetDTO> deletions;
+}
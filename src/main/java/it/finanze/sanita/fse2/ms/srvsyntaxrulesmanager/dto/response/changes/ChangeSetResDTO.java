@@ -77,4 +77,9 @@ public class ChangeSetResDTO {
      */
     private long collectionSize;
 
+    /**
+     * Token of the following page, null on the last one or when not paging
+     */
+    private String nextPageToken;
+
 }
\ No newline at end of file
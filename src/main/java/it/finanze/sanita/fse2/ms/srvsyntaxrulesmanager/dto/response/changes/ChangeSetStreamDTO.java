@@ -0,0 +1,51 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A single line of the streamed changeset, exactly one field is valued
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ChangeSetStreamDTO {
+
+    /**
+     * Item inserted since the lastUpdate
+     */
+    private final ChangeSetDTO insertion;
+
+    /**
+     * Item deleted since the lastUpdate
+     */
+    private final ChangeSetDTO deletion;
+
+    /**
+     * Trailing line, written once every item has been sent (without insertions/deletions)
+     */
+    private final ChangeSetResDTO summary;
+
+    public static ChangeSetStreamDTO insertion(ChangeSetDTO item) {
+        return new ChangeSetStreamDTO(item, null, null);
+    }
+
+    public static ChangeSetStreamDTO deletion(ChangeSetDTO item) {
+        return new ChangeSetStreamDTO(null, item, null);
+    }
+
+    public static ChangeSetStreamDTO summary(ChangeSetResDTO summary) {
+        return new ChangeSetStreamDTO(null, null, summary);
+    }
+}
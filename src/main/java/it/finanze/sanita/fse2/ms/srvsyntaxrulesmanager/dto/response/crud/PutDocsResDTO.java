@@ -15,14 +15,19 @@ import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.ResponseDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.log.LogTraceInfoDTO;
 import lombok.Getter;
 
+import java.util.List;
+
 
 @Getter
 public class PutDocsResDTO extends ResponseDTO {
 
     private final int updatedItems;
 
-    public PutDocsResDTO(LogTraceInfoDTO info, int updatedItems) {
+    private final List<String> unchangedItems;
+
+    public PutDocsResDTO(LogTraceInfoDTO info, int updatedItems, List<String> unchangedItems) {
         super(info);
         this.updatedItems = updatedItems;
+        this.unchangedItems = unchangedItems;
     }
 }
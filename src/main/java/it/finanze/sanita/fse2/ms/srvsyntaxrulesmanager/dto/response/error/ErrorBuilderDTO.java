@@ -24,6 +24,7 @@ import javax.validation.ConstraintViolationException;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.*;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.error.ErrorInstance.Fields.FILES;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.error.ErrorInstance.Fields.PAGE_TOKEN;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.error.ErrorInstance.*;
 import static org.apache.http.HttpStatus.*;
 
@@ -123,6 +124,17 @@ public final class ErrorBuilderDTO {
         );
     }
 
+    public static ErrorResponseDTO createInvalidPageTokenError(LogTraceInfoDTO trace, InvalidPageTokenException ex) {
+        return new ErrorResponseDTO(
+            trace,
+            ErrorType.VALIDATION.getType(),
+            ErrorType.VALIDATION.getTitle(),
+            ex.getMessage(),
+            SC_BAD_REQUEST,
+            ErrorType.VALIDATION.toInstance(Validation.CONSTRAINT_FIELD, PAGE_TOKEN)
+        );
+    }
+
     public static ErrorResponseDTO createSchemaValidatorException(LogTraceInfoDTO trace, SchemaValidatorException ex) {
         return new ErrorResponseDTO(
             trace,
@@ -145,6 +157,28 @@ public final class ErrorBuilderDTO {
         );
     }
 
+    public static ErrorResponseDTO createValidationUnavailableError(LogTraceInfoDTO trace, ValidationUnavailableException ex) {
+        return new ErrorResponseDTO(
+            trace,
+            ErrorType.SERVER.getType(),
+            ErrorType.SERVER.getTitle(),
+            ex.getMessage(),
+            SC_SERVICE_UNAVAILABLE,
+            ErrorType.SERVER.toInstance(Server.UNAVAILABLE)
+        );
+    }
+
+    public static ErrorResponseDTO createSubscriptionUnavailableError(LogTraceInfoDTO trace, SubscriptionUnavailableException ex) {
+        return new ErrorResponseDTO(
+            trace,
+            ErrorType.SERVER.getType(),
+            ErrorType.SERVER.getTitle(),
+            ex.getMessage(),
+            SC_SERVICE_UNAVAILABLE,
+            ErrorType.SERVER.toInstance(Server.UNAVAILABLE)
+        );
+    }
+
     public static ErrorResponseDTO createExtensionNotFoundError(LogTraceInfoDTO trace, ExtensionNotFoundException ex) {
         return new ErrorResponseDTO(
             trace,
@@ -25,6 +25,7 @@ public final class ErrorInstance {
         @NoArgsConstructor(access = AccessLevel.PRIVATE)
         public static final class Server {
                 public static final String INTERNAL = "/internal";
+                public static final String UNAVAILABLE = "/unavailable";
         }
 
         @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -43,6 +44,7 @@ public final class ErrorInstance {
         public static final class Fields {
                 public static final String ROOT = "root";
                 public static final String FILES = "files";
+                public static final String PAGE_TOKEN = "pageToken";
         }
 
 }
@@ -0,0 +1,32 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions;
+
+/**
+ * When the changeset continuation token cannot be decoded or does not match the request
+ */
+public class InvalidPageTokenException extends Exception {
+
+    /**
+     * Serial version uid
+     */
+    private static final long serialVersionUID = -6373610847923515529L;
+
+    /**
+     * Message constructor.
+     *
+     * @param msg	Message to be shown.
+     */
+    public InvalidPageTokenException(final String msg) {
+        super(msg);
+    }
+}
@@ -12,6 +12,8 @@
 package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions;
 
 import com.mongodb.MongoException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.TransactionException;
 
 /**
  * Mainly used to catch database issues, it's used to describe a data-layer failure
@@ -38,4 +40,26 @@ public class OperationException extends Exception {
     public OperationException(final String msg, final MongoException e) {
         super(msg, e);
     }
-}
\ No newline at end of file
+
+    /**
+     * Complete constructor.
+     *
+     * @param msg	Message to be shown.
+     *              It should describe what the operation was trying to accomplish.
+     * @param e		The original exception, as translated by the template.
+     */
+    public OperationException(final String msg, final DataAccessException e) {
+        super(msg, e);
+    }
+
+    /**
+     * Complete constructor.
+     *
+     * @param msg	Message to be shown.
+     *              It should describe what the operation was trying to accomplish.
+     * @param e		The original exception, raised committing or rolling back a transaction.
+     */
+    public OperationException(final String msg, final TransactionException e) {
+        super(msg, e);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions;
+
+import lombok.Getter;
+
+/**
+ * When the validation executor is saturated and cannot accept any other schema compilation
+ */
+@Getter
+public class ValidationUnavailableException extends Exception {
+
+    /**
+     * Serial version uid
+     */
+    private static final long serialVersionUID = -2208418574329710143L;
+
+    /**
+     * Seconds the client should wait before retrying
+     */
+    private final long retryAfter;
+
+    /**
+     * Complete constructor.
+     *
+     * @param msg           Message to be shown.
+     * @param retryAfter    Seconds the client should wait before retrying
+     * @param cause         The original rejection
+     */
+    public ValidationUnavailableException(final String msg, final long retryAfter, final Throwable cause) {
+        super(msg, cause);
+        this.retryAfter = retryAfter;
+    }
+}
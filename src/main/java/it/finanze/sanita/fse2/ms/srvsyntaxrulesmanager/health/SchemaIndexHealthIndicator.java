@@ -0,0 +1,42 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.health;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaIndexRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Lists the indexes required by the schema queries that are missing, still building or named differently.
+ * It is a performance issue only: the status stays up, so replicas are not taken out of rotation
+ */
+@Component
+public class SchemaIndexHealthIndicator extends AbstractHealthIndicator {
+
+    public static final String DETAIL_EXPECTED = "expected";
+    public static final String DETAIL_MISSING = "missing";
+
+    @Autowired
+    private ISchemaIndexRepo repository;
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+        List<String> missing = repository.getMissingIndexes();
+        builder.up();
+        if(!missing.isEmpty()) builder.withDetail(DETAIL_MISSING, missing);
+        builder.withDetail(DETAIL_EXPECTED, repository.getExpectedIndexes());
+    }
+}
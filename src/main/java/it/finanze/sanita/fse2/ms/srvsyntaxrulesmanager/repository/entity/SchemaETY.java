@@ -12,6 +12,7 @@
 package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity;
 
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataProcessingException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.ContentCodec;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.bson.types.Binary;
@@ -21,12 +22,14 @@ import org.springframework.data.mongodb.core.mapping.Field;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Date;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_ETY_BINARY_CONVERSION;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.*;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility.computeHash;
 
 /**
  * Model to save schema documents
@@ -41,6 +44,10 @@ public class SchemaETY {
     public static final String FIELD_CONTENT = "content_schema";
     public static final String FIELD_TYPE_ID_EXT = "type_id_extension";
     public static final String FIELD_ROOT_SCHEMA = "root_schema";
+    public static final String FIELD_CONTENT_HASH = "content_hash";
+    public static final String FIELD_CONTENT_REF = "content_ref";
+    public static final String FIELD_CONTENT_LENGTH = "content_length";
+    public static final String FIELD_CONTENT_FORMAT = "content_format";
 
     @Id
     private String id;
@@ -48,6 +55,14 @@ public class SchemaETY {
     private String nameSchema;
     @Field(name = FIELD_CONTENT)
     private Binary contentSchema;
+    @Field(name = FIELD_CONTENT_HASH)
+    private String contentHash;
+    @Field(name = FIELD_CONTENT_REF)
+    private String contentRef;
+    @Field(name = FIELD_CONTENT_LENGTH)
+    private Long contentLength;
+    @Field(name = FIELD_CONTENT_FORMAT)
+    private String contentFormat;
     @Field(name = FIELD_TYPE_ID_EXT)
     private String typeIdExtension;
     @Field(name = FIELD_ROOT_SCHEMA)
@@ -59,9 +74,116 @@ public class SchemaETY {
     @Field(name = FIELD_DELETED)
     private boolean deleted;
 
+    /**
+     * Stores the content compressed, unless compression does not pay off.
+     * Digest and length always refer to the plain content
+     *
+     * @param data The plain content
+     */
+    public void setContentSchema(byte[] data) {
+        byte[] encoded = ContentCodec.encode(data);
+        boolean compressed = encoded.length < data.length;
+        this.contentSchema = new Binary(compressed ? encoded : data);
+        this.contentFormat = compressed ? ContentCodec.FORMAT_DEFLATE_XSD_V1 : null;
+        this.contentHash = computeHash(data);
+        this.contentLength = (long) data.length;
+    }
+
+    /**
+     * Returns the plain inline content
+     *
+     * @return The decompressed content
+     * @throws DataProcessingException If the stored content cannot be decompressed
+     */
+    public byte[] content() throws DataProcessingException {
+        return decode(contentSchema.getData());
+    }
+
+    /**
+     * Decompresses the stored content, either inline or offloaded, according to the format of this document
+     *
+     * @param stored The stored content
+     * @return The plain content
+     * @throws DataProcessingException If the stored content cannot be decompressed
+     */
+    public byte[] decode(byte[] stored) throws DataProcessingException {
+        return ContentCodec.decode(contentFormat, stored);
+    }
+
+    /**
+     * Wraps the stream of the offloaded content to decompress it according to the format of this document
+     *
+     * @param stored The stored content stream
+     * @return The plain content stream
+     * @throws DataProcessingException If the format is not supported
+     */
+    public InputStream decode(InputStream stored) throws DataProcessingException {
+        return ContentCodec.decode(contentFormat, stored);
+    }
+
+    /**
+     * Returns the content size in bytes,
+     * documents written before the size was stored are measured on the inline content
+     *
+     * @return The number of bytes
+     */
+    public long size() {
+        return contentLength != null ? contentLength : contentSchema.length();
+    }
+
+    /**
+     * Moves the content out of the document, keeping only the reference to the GridFS file
+     *
+     * @param ref The reference to the stored content
+     */
+    public void offload(String ref) {
+        this.contentRef = ref;
+        this.contentSchema = null;
+    }
+
+    /**
+     * @return true if the content is stored on GridFS instead of inline
+     */
+    public boolean isOffloaded() {
+        return contentRef != null;
+    }
+
+    /**
+     * Returns the SHA-256 digest of the content,
+     * documents written before the digest was stored are hashed on the fly
+     *
+     * @return The hex representation of the digest
+     */
+    public String digest() {
+        // Older documents have neither digest nor format
+        return contentHash != null ? contentHash : computeHash(contentSchema.getData());
+    }
+
+    /**
+     * Copies every field but the inline content, digest and size are resolved
+     * so that they do not need the content anymore
+     *
+     * @return The metadata copy
+     */
+    public SchemaETY withoutContent() {
+        SchemaETY copy = new SchemaETY();
+        copy.id = id;
+        copy.nameSchema = nameSchema;
+        copy.contentHash = digest();
+        copy.contentRef = contentRef;
+        copy.contentLength = size();
+        copy.contentFormat = contentFormat;
+        copy.typeIdExtension = typeIdExtension;
+        copy.rootSchema = rootSchema;
+        copy.insertionDate = insertionDate;
+        copy.lastUpdateDate = lastUpdateDate;
+        copy.deleted = deleted;
+        return copy;
+    }
+
     public void setContentSchema(MultipartFile file) throws DataProcessingException {
         try {
-            this.contentSchema = new Binary(file.getBytes());
+            setContentSchema(file.getBytes());
         } catch (IOException e) {
             throw new DataProcessingException(ERR_ETY_BINARY_CONVERSION, e);
         }
@@ -69,7 +191,7 @@ public class SchemaETY {
 
     public void setContentSchema(Path path) throws DataProcessingException {
         try {
-            this.contentSchema = new Binary(Files.readAllBytes(path));
+            setContentSchema(Files.readAllBytes(path));
         } catch (IOException e) {
             throw new DataProcessingException(ERR_ETY_BINARY_CONVERSION, e);
         }
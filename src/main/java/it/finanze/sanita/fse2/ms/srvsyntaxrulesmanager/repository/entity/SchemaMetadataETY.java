@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Date;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.*;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.*;
+
+/**
+ * Read model of {@link SchemaETY} without the binary content
+ */
+@Document(collection = "#{@schemaBean}")
+@Data
+@NoArgsConstructor
+public class SchemaMetadataETY {
+
+    @Id
+    private String id;
+    @Field(name = FIELD_FILENAME)
+    private String nameSchema;
+    @Field(name = FIELD_CONTENT_HASH)
+    private String contentHash;
+    @Field(name = FIELD_TYPE_ID_EXT)
+    private String typeIdExtension;
+    @Field(name = FIELD_ROOT_SCHEMA)
+    private Boolean rootSchema;
+    @Field(name = FIELD_INSERTION_DATE)
+    private Date insertionDate;
+    @Field(name = FIELD_LAST_UPDATE)
+    private Date lastUpdateDate;
+    @Field(name = FIELD_DELETED)
+    private boolean deleted;
+
+    /**
+     * Restricts the query to the fields mapped by this class,
+     * so the server never sends the binary content
+     *
+     * @param q The query to restrict
+     * @return The same query instance
+     */
+    public static Query project(Query q) {
+        q.fields().include(
+            FIELD_ID,
+            FIELD_FILENAME,
+            FIELD_CONTENT_HASH,
+            FIELD_TYPE_ID_EXT,
+            FIELD_ROOT_SCHEMA,
+            FIELD_INSERTION_DATE,
+            FIELD_LAST_UPDATE,
+            FIELD_DELETED
+        );
+        return q;
+    }
+
+    public static SchemaMetadataETY fromEntity(SchemaETY e) {
+        SchemaMetadataETY metadata = new SchemaMetadataETY();
+        metadata.setId(e.getId());
+        metadata.setNameSchema(e.getNameSchema());
+        metadata.setContentHash(e.getContentHash());
+        metadata.setTypeIdExtension(e.getTypeIdExtension());
+        metadata.setRootSchema(e.getRootSchema());
+        metadata.setInsertionDate(e.getInsertionDate());
+        metadata.setLastUpdateDate(e.getLastUpdateDate());
+        metadata.setDeleted(e.isDeleted());
+        return metadata;
+    }
+
+}
@@ -12,9 +12,11 @@
 package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo;
 
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import org.springframework.lang.Nullable;
 
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface IChangeSetRepo<T> {
 
@@ -48,6 +50,35 @@ public interface IChangeSetRepo<T> {
      */
     List<T> getEveryActiveDocument() throws OperationException;
 
+    /**
+     * Iterates the latest insertions through a database cursor,
+     * handing each item to the consumer without buffering the result set
+     *
+     * @param lastUpdate The timeframe to consider while calculating
+     * @param consumer The item consumer
+     * @throws OperationException If a data-layer error occurs
+     */
+    void streamInsertions(Date lastUpdate, Consumer<T> consumer) throws OperationException;
+
+    /**
+     * Iterates the latest deletions through a database cursor,
+     * handing each item to the consumer without buffering the result set
+     *
+     * @param lastUpdate The timeframe to consider while calculating
+     * @param consumer The item consumer
+     * @throws OperationException If a data-layer error occurs
+     */
+    void streamDeletions(Date lastUpdate, Consumer<T> consumer) throws OperationException;
+
+    /**
+     * Iterates all the not-deleted documents through a database cursor,
+     * handing each item to the consumer without buffering the result set
+     *
+     * @param consumer The item consumer
+     * @throws OperationException If a data-layer error occurs
+     */
+    void streamEveryActiveDocument(Consumer<T> consumer) throws OperationException;
+
     /**
      * Count all the not-deleted extensions items
      *
@@ -55,4 +86,28 @@ public interface IChangeSetRepo<T> {
      * @throws OperationException If a data-layer error occurs
      */
     long getActiveDocumentCount() throws OperationException;
+
+    /**
+     * Retrieves a page of the changes between the given timeframe and the snapshot,
+     * ordered by last update date and identifier. Documents both inserted and deleted
+     * after the timeframe are skipped, as the client has never seen them
+     *
+     * @param lastUpdate The timeframe to consider while calculating, null for a full alignment
+     * @param snapshot The upper bound of the changes, the same for every page
+     * @param afterDate The last update date of the last item of the previous page, null on the first one
+     * @param afterId The identifier of the last item of the previous page, null on the first one
+     * @param limit The maximum number of items
+     * @return The active documents as insertions and the deleted ones as deletions
+     * @throws OperationException If a data-layer error occurs
+     */
+    List<T> getChangesPage(@Nullable Date lastUpdate, Date snapshot, @Nullable Date afterDate, @Nullable String afterId, int limit) throws OperationException;
+
+    /**
+     * Count the documents which were active at the given time
+     *
+     * @param snapshot The time to consider
+     * @return Number of active documents at the snapshot
+     * @throws OperationException If a data-layer error occurs
+     */
+    long getActiveDocumentCount(Date snapshot) throws OperationException;
 }
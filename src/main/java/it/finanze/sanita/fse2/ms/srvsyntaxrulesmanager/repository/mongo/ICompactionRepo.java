@@ -0,0 +1,42 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import org.springframework.lang.Nullable;
+
+import java.util.Date;
+import java.util.List;
+
+public interface ICompactionRepo {
+
+    /**
+     * Retrieves the deleted documents which can be physically removed.
+     * Versions are ranked by last update for each extension and filename.
+     *
+     * @param tombstones Deleted documents updated after this date are always kept
+     * @param expired Deleted documents updated before this date are purged regardless of their rank, if any
+     * @param keep The number of most recent deleted versions to keep
+     * @return The identifiers of the purgeable documents
+     * @throws OperationException If a data-layer error occurs
+     */
+    List<String> findPurgeableIds(Date tombstones, @Nullable Date expired, int keep) throws OperationException;
+
+    /**
+     * Physically removes the given deleted documents, active documents are never matched
+     *
+     * @param ids The documents identifiers
+     * @return The number of removed documents
+     * @throws OperationException If a data-layer error occurs
+     */
+    long purge(List<String> ids) throws OperationException;
+}
@@ -15,8 +15,13 @@ import com.mongodb.bulk.BulkWriteResult;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataIntegrityException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.ExtensionETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.ExtensionMetadataETY;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -33,6 +38,23 @@ public interface IDocumentRepo {
      */
     List<SchemaETY> findDocsByExtensionId(String extension, boolean allDocuments) throws OperationException;
 
+    /**
+     * Opens a cursor over the active documents of the extension, sorted by filename
+     * @param extension The extension id
+     * @return The documents iterator, it must be closed by the caller
+     * @throws OperationException If a data-layer error occurs
+     */
+    CloseableIterator<SchemaETY> streamDocsByExtensionId(String extension) throws OperationException;
+
+    /**
+     * Retrieves the documents metadata by their extension identifier, without loading the binary content
+     * @param extension The extension id
+     * @param includeDeleted If deleted documents should be returned as well
+     * @return The documents matching the extension identifier or an empty list if none match
+     * @throws OperationException If a data-layer error occurs
+     */
+    List<SchemaMetadataETY> findDocsMetadataByExtensionId(String extension, boolean includeDeleted) throws OperationException;
+
     /**
      * Verify if exists at least one document with the given extension identifier
      * @param extension The extension id
@@ -66,6 +88,18 @@ public interface IDocumentRepo {
      */
     List<SchemaETY> updateDocsByExtensionId(Map<SchemaETY, SchemaETY> entities) throws OperationException, DataIntegrityException;
 
+    /**
+     * Replace every active document of the extension with the given ones,
+     * the soft-delete and the inserts are applied atomically as a single bulk write when the deployment supports transactions
+     * @param extension The extension id
+     * @param kept The identifiers of the active documents to leave untouched
+     * @param entities The documents to insert
+     * @return The entities inserted
+     * @throws OperationException If a data-layer error occurs
+     * @throws DataIntegrityException If there are no active documents to replace
+     */
+    List<SchemaETY> replaceDocsByExtensionId(String extension, List<String> kept, List<SchemaETY> entities) throws OperationException, DataIntegrityException;
+
     /**
      * Deletes all the documents entities matching the given extensions
      *
@@ -101,6 +135,16 @@ public interface IDocumentRepo {
      */
     List<SchemaETY> deleteDocsByExtensionIdAndFilenames(String extension, List<String> filenames) throws OperationException, DataIntegrityException;
 
+    /**
+     * Logically delete the given documents and insert the new ones with a single unordered bulk write
+     * @param replaced The active documents to mark as deleted
+     * @param entities The documents to insert
+     * @return The entities inserted
+     * @throws OperationException If a data-layer error occurs
+     * @throws DataIntegrityException If the number of documents marked as deleted does not match the requested ones
+     */
+    List<SchemaETY> patchDocsByExtensionId(List<SchemaETY> replaced, List<SchemaETY> entities) throws OperationException, DataIntegrityException;
+
     /**
      * Retrieves all active documents on DB
      *
@@ -108,4 +152,31 @@ public interface IDocumentRepo {
      * @throws OperationException If a data-layer error occurs
      */
     List<ExtensionETY> groupByExtension(boolean deleted) throws OperationException;
+
+    /**
+     * Retrieves all documents metadata on DB grouped by extension,
+     * the binary content is removed before the grouping stage
+     *
+     * @param deleted If deleted documents should be returned as well
+     * @return All documents metadata
+     * @throws OperationException If a data-layer error occurs
+     */
+    List<ExtensionMetadataETY> groupMetadataByExtension(boolean deleted) throws OperationException;
+
+    /**
+     * Retrieves the most recent update date among every document, deleted ones included
+     *
+     * @return The high-water mark of the collection or {@code null} if there are no documents
+     * @throws OperationException If a data-layer error occurs
+     */
+    Date findLastUpdateDate() throws OperationException;
+
+    /**
+     * Retrieves the extensions having at least one document updated after the given date, deleted ones included
+     *
+     * @param since The exclusive lower bound
+     * @return The extensions identifiers
+     * @throws OperationException If a data-layer error occurs
+     */
+    List<String> findExtensionsUpdatedAfter(Date since) throws OperationException;
 }
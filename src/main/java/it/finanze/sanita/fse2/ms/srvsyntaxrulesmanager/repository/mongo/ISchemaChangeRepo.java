@@ -0,0 +1,32 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo;
+
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import org.bson.BsonDocument;
+import org.bson.Document;
+
+public interface ISchemaChangeRepo {
+
+    /**
+     * Opens a change stream over the schema collection, the full document of each change
+     * carries only the extension identifier
+     *
+     * @param token The resume token of the last processed change, {@code null} to start from now
+     * @return The change cursor, it must be closed by the caller.
+     * Iterating it throws the driver exceptions as they are
+     * @throws OperationException If a data-layer error occurs, including change streams not being supported
+     */
+    MongoChangeStreamCursor<ChangeStreamDocument<Document>> watch(BsonDocument token) throws OperationException;
+}
@@ -0,0 +1,58 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataProcessingException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+
+import java.io.InputStream;
+import java.util.Collection;
+
+public interface ISchemaContentRepo {
+
+    /**
+     * Stores the given content on GridFS
+     *
+     * @param filename The schema filename
+     * @param data The content
+     * @return The reference to the stored content
+     * @throws OperationException If a data-layer error occurs
+     */
+    String store(String filename, byte[] data) throws OperationException;
+
+    /**
+     * Opens the stored content, chunks are fetched while the stream is consumed
+     *
+     * @param ref The reference to the stored content
+     * @return The content stream, it must be closed by the caller
+     * @throws OperationException If a data-layer error occurs or the content does not exist
+     */
+    InputStream open(String ref) throws OperationException;
+
+    /**
+     * Reads the whole stored content
+     *
+     * @param ref The reference to the stored content
+     * @return The content
+     * @throws OperationException If a data-layer error occurs or the content does not exist
+     * @throws DataProcessingException If the content cannot be fully read
+     */
+    byte[] read(String ref) throws OperationException, DataProcessingException;
+
+    /**
+     * Removes the given stored contents
+     *
+     * @param refs The references to the stored contents
+     * @throws OperationException If a data-layer error occurs
+     */
+    void delete(Collection<String> refs) throws OperationException;
+}
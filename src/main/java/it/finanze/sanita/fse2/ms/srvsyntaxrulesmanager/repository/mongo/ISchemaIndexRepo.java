@@ -0,0 +1,43 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+
+import java.util.List;
+
+public interface ISchemaIndexRepo {
+
+    /**
+     * Retrieves the names of the indexes required by the schema queries
+     *
+     * @return The expected index names
+     */
+    List<String> getExpectedIndexes();
+
+    /**
+     * Creates the given index if it does not exist yet
+     *
+     * @param name The index name, one of {@link #getExpectedIndexes()}
+     * @param background If the index should be built in background
+     * @throws OperationException If a data-layer error occurs
+     */
+    void ensureIndex(String name, boolean background) throws OperationException;
+
+    /**
+     * Retrieves the expected indexes not available on the collection
+     *
+     * @return The missing index names
+     * @throws OperationException If a data-layer error occurs
+     */
+    List<String> getMissingIndexes() throws OperationException;
+}
@@ -14,21 +14,32 @@ package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.impl;
 import com.mongodb.MongoException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.*;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_ID;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY.project;
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.springframework.data.mongodb.core.query.Query.query;
 
 @Repository
-public class ChangeSetRepo implements IChangeSetRepo<SchemaETY> {
+public class ChangeSetRepo implements IChangeSetRepo<SchemaMetadataETY> {
     @Autowired
     private MongoTemplate mongo;
 
@@ -40,16 +51,14 @@ public class ChangeSetRepo implements IChangeSetRepo<SchemaETY> {
      * @throws OperationException If a data-layer error occurs
      */
     @Override
-    public List<SchemaETY> getInsertions(Date lastUpdate) throws OperationException {
+    public List<SchemaMetadataETY> getInsertions(Date lastUpdate) throws OperationException {
         // Working var
-        List<SchemaETY> objects;
+        List<SchemaMetadataETY> objects;
         // Create query
-        Query q = query(
-            where(FIELD_INSERTION_DATE).gt(lastUpdate).and(FIELD_DELETED).ne(true)
-        );
+        Query q = getInsertionsQuery(lastUpdate);
         try {
             // Execute
-            objects = mongo.find(q, SchemaETY.class);
+            objects = mongo.find(q, SchemaMetadataETY.class);
         } catch (MongoException e) {
             // Catch data-layer runtime exceptions and turn into a checked exception
             throw new OperationException(ERR_REP_CHANGESET_INSERT, e);
@@ -65,22 +74,14 @@ public class ChangeSetRepo implements IChangeSetRepo<SchemaETY> {
      * @throws OperationException If a data-layer error occurs
      */
     @Override
-    public List<SchemaETY> getDeletions(Date lastUpdate) throws OperationException {
+    public List<SchemaMetadataETY> getDeletions(Date lastUpdate) throws OperationException {
         // Working var
-        List<SchemaETY> objects;
+        List<SchemaMetadataETY> objects;
         // Create query
-        Query q = query(
-            where(FIELD_LAST_UPDATE).gt(lastUpdate)
-                // If a given file is insert at t1 and
-                // lastUpdate is called with t1 value
-                // without the lte operator we would
-                // miss its own deletion
-                .and(FIELD_INSERTION_DATE).lte(lastUpdate)
-                .and(FIELD_DELETED).is(true)
-        );
+        Query q = getDeletionsQuery(lastUpdate);
         try {
             // Execute
-            objects = mongo.find(q, SchemaETY.class);
+            objects = mongo.find(q, SchemaMetadataETY.class);
         } catch (MongoException e) {
             // Catch data-layer runtime exceptions and turn into a checked exception
             throw new OperationException(ERR_REP_CHANGESET_DELETE, e);
@@ -95,14 +96,14 @@ public class ChangeSetRepo implements IChangeSetRepo<SchemaETY> {
      * @throws OperationException If a data-layer error occurs
      */
     @Override
-    public List<SchemaETY> getEveryActiveDocument() throws OperationException {
+    public List<SchemaMetadataETY> getEveryActiveDocument() throws OperationException {
         // Working var
-        List<SchemaETY> objects;
+        List<SchemaMetadataETY> objects;
         // Create query
-        Query q = query(where(FIELD_DELETED).ne(true));
+        Query q = project(getActiveQuery());
         try {
             // Execute
-            objects = mongo.find(q, SchemaETY.class);
+            objects = mongo.find(q, SchemaMetadataETY.class);
         } catch (MongoException e) {
             // Catch data-layer runtime exceptions and turn into a checked exception
             throw new OperationException(ERR_REP_EVERY_ACTIVE_DOC, e);
@@ -121,7 +122,7 @@ public class ChangeSetRepo implements IChangeSetRepo<SchemaETY> {
         // Working var
         long size;
         // Create query
-        Query q = query(where(FIELD_DELETED).ne(true));
+        Query q = getActiveQuery();
         try {
             // Execute count
             size = mongo.count(q, SchemaETY.class);
@@ -131,4 +132,146 @@ public class ChangeSetRepo implements IChangeSetRepo<SchemaETY> {
         }
         return size;
     }
+
+    /**
+     * Iterates the latest insertions through a database cursor
+     *
+     * @param lastUpdate The timeframe to consider while calculating
+     * @param consumer The item consumer
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public void streamInsertions(Date lastUpdate, Consumer<SchemaMetadataETY> consumer) throws OperationException {
+        stream(getInsertionsQuery(lastUpdate), consumer, ERR_REP_CHANGESET_INSERT);
+    }
+
+    /**
+     * Iterates the latest deletions through a database cursor
+     *
+     * @param lastUpdate The timeframe to consider while calculating
+     * @param consumer The item consumer
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public void streamDeletions(Date lastUpdate, Consumer<SchemaMetadataETY> consumer) throws OperationException {
+        stream(getDeletionsQuery(lastUpdate), consumer, ERR_REP_CHANGESET_DELETE);
+    }
+
+    /**
+     * Iterates all the not-deleted documents through a database cursor
+     *
+     * @param consumer The item consumer
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public void streamEveryActiveDocument(Consumer<SchemaMetadataETY> consumer) throws OperationException {
+        stream(project(getActiveQuery()), consumer, ERR_REP_EVERY_ACTIVE_DOC);
+    }
+
+    /**
+     * Retrieves a page of the changes through the (last update date, identifier) key,
+     * so every page costs the same whatever its position
+     *
+     * @param lastUpdate The timeframe to consider while calculating, null for a full alignment
+     * @param snapshot The upper bound of the changes, the same for every page
+     * @param afterDate The last update date of the last item of the previous page, null on the first one
+     * @param afterId The identifier of the last item of the previous page, null on the first one
+     * @param limit The maximum number of items
+     * @return The active documents as insertions and the deleted ones as deletions
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public List<SchemaMetadataETY> getChangesPage(@Nullable Date lastUpdate, Date snapshot, @Nullable Date afterDate, @Nullable String afterId, int limit) throws OperationException {
+        // Working var
+        List<SchemaMetadataETY> objects;
+        // Create query
+        List<Criteria> criteria = new ArrayList<>();
+        if (lastUpdate != null) {
+            criteria.add(where(FIELD_LAST_UPDATE).gt(lastUpdate).lte(snapshot));
+            // Inserted and deleted within the timeframe, nothing to align
+            criteria.add(new Criteria().orOperator(
+                where(FIELD_DELETED).is(false),
+                where(FIELD_INSERTION_DATE).lte(lastUpdate)
+            ));
+        } else {
+            criteria.add(where(FIELD_LAST_UPDATE).lte(snapshot));
+            criteria.add(where(FIELD_DELETED).is(false));
+        }
+        if (afterDate != null) {
+            // Resume right after the last item returned
+            criteria.add(new Criteria().orOperator(
+                where(FIELD_LAST_UPDATE).gt(afterDate),
+                where(FIELD_LAST_UPDATE).is(afterDate).and(FIELD_ID).gt(new ObjectId(afterId))
+            ));
+        }
+        Query q = project(query(new Criteria().andOperator(criteria.toArray(new Criteria[0]))))
+            .with(Sort.by(Direction.ASC, FIELD_LAST_UPDATE, FIELD_ID))
+            .limit(limit);
+        try {
+            // Execute
+            objects = mongo.find(q, SchemaMetadataETY.class);
+        } catch (MongoException e) {
+            // Catch data-layer runtime exceptions and turn into a checked exception
+            throw new OperationException(ERR_REP_CHANGESET_PAGE, e);
+        }
+        return objects;
+    }
+
+    /**
+     * Count the documents which were active at the given time
+     *
+     * @param snapshot The time to consider
+     * @return Number of active documents at the snapshot
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public long getActiveDocumentCount(Date snapshot) throws OperationException {
+        // Working var
+        long size;
+        // Create query, documents deleted after the snapshot were still active
+        Query q = query(where(FIELD_INSERTION_DATE).lte(snapshot).orOperator(
+            where(FIELD_DELETED).is(false),
+            where(FIELD_LAST_UPDATE).gt(snapshot)
+        ));
+        try {
+            // Execute count
+            size = mongo.count(q, SchemaETY.class);
+        } catch (MongoException e) {
+            // Catch data-layer runtime exceptions and turn into a checked exception
+            throw new OperationException(ERR_REP_COUNT_ACTIVE_DOC, e);
+        }
+        return size;
+    }
+
+    private void stream(Query q, Consumer<SchemaMetadataETY> consumer, String error) throws OperationException {
+        // Only the current batch is kept in memory, the cursor is closed on exit
+        try (CloseableIterator<SchemaMetadataETY> cursor = mongo.stream(q, SchemaMetadataETY.class)) {
+            cursor.forEachRemaining(consumer);
+        } catch (MongoException e) {
+            // Catch data-layer runtime exceptions and turn into a checked exception
+            throw new OperationException(error, e);
+        }
+    }
+
+    private Query getInsertionsQuery(Date lastUpdate) {
+        return project(query(
+            where(FIELD_INSERTION_DATE).gt(lastUpdate).and(FIELD_DELETED).is(false)
+        ));
+    }
+
+    private Query getDeletionsQuery(Date lastUpdate) {
+        return project(query(
+            where(FIELD_LAST_UPDATE).gt(lastUpdate)
+                // If a given file is insert at t1 and
+                // lastUpdate is called with t1 value
+                // without the lte operator we would
+                // miss its own deletion
+                .and(FIELD_INSERTION_DATE).lte(lastUpdate)
+                .and(FIELD_DELETED).is(true)
+        ));
+    }
+
+    private Query getActiveQuery() {
+        return query(where(FIELD_DELETED).is(false));
+    }
 }
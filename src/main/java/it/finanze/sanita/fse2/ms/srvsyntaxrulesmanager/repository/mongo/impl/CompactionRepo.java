@@ -0,0 +1,128 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.impl;
+
+import com.mongodb.MongoException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ICompactionRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaContentRepo;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_REP_COMPACTION_FIND;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_REP_COMPACTION_PURGE;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.*;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.FIELD_DELETED;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.FIELD_LAST_UPDATE;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregationOptions;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@Repository
+public class CompactionRepo implements ICompactionRepo {
+
+    private static final String FIELD_IDS = "ids";
+    private static final String FIELD_DATES = "dates";
+
+    @Autowired
+    private MongoTemplate mongo;
+
+    @Autowired
+    private ISchemaContentRepo content;
+
+    /**
+     * Retrieves the deleted documents which can be physically removed.
+     * Versions are ranked by last update for each extension and filename,
+     * only identifiers and dates leave the server.
+     *
+     * @param tombstones Deleted documents updated after this date are always kept
+     * @param expired Deleted documents updated before this date are purged regardless of their rank, if any
+     * @param keep The number of most recent deleted versions to keep
+     * @return The identifiers of the purgeable documents
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public List<String> findPurgeableIds(Date tombstones, @Nullable Date expired, int keep) throws OperationException {
+        // Working var
+        List<String> ids = new ArrayList<>();
+        // Newest first, so the rank is the position inside the group
+        TypedAggregation<SchemaETY> agg = Aggregation.newAggregation(
+            SchemaETY.class,
+            Aggregation.match(where(FIELD_DELETED).is(true)),
+            Aggregation.sort(Direction.DESC, FIELD_LAST_UPDATE),
+            Aggregation.group(FIELD_TYPE_ID_EXT, FIELD_FILENAME)
+                .push(FIELD_ID).as(FIELD_IDS)
+                .push(FIELD_LAST_UPDATE).as(FIELD_DATES)
+        ).withOptions(newAggregationOptions().allowDiskUse(true).build());
+        // Iterate groups through a cursor
+        try (CloseableIterator<Document> groups = mongo.aggregateStream(agg, Document.class)) {
+            while (groups.hasNext()) {
+                Document group = groups.next();
+                List<ObjectId> versions = group.getList(FIELD_IDS, ObjectId.class);
+                List<Date> dates = group.getList(FIELD_DATES, Date.class);
+                for (int i = 0; i < versions.size(); i++) {
+                    Date date = dates.get(i);
+                    boolean outdated = i >= keep || (expired != null && date.before(expired));
+                    if (outdated && date.before(tombstones)) {
+                        ids.add(versions.get(i).toHexString());
+                    }
+                }
+            }
+        } catch (MongoException e) {
+            throw new OperationException(ERR_REP_COMPACTION_FIND, e);
+        }
+        return ids;
+    }
+
+    /**
+     * Physically removes the given deleted documents, active documents are never matched.
+     * Their contents stored on GridFS are removed as well
+     *
+     * @param ids The documents identifiers
+     * @return The number of removed documents
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public long purge(List<String> ids) throws OperationException {
+        List<ObjectId> objects = ids.stream().map(ObjectId::new).collect(Collectors.toList());
+        Query query = query(where(FIELD_ID).in(objects).and(FIELD_DELETED).is(true));
+        List<String> refs;
+        long removed;
+        try {
+            // Collect the stored contents before losing their references
+            refs = mongo.findDistinct(
+                Query.of(query).addCriteria(where(FIELD_CONTENT_REF).exists(true)),
+                FIELD_CONTENT_REF, SchemaETY.class, String.class
+            );
+            removed = mongo.remove(query, SchemaETY.class).getDeletedCount();
+        } catch (MongoException e) {
+            throw new OperationException(ERR_REP_COMPACTION_PURGE, e);
+        }
+        content.delete(refs);
+        return removed;
+    }
+}
@@ -14,43 +14,83 @@ package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.impl;
 import com.mongodb.MongoException;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.result.UpdateResult;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.mongo.MongoGridFsCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.mongo.MongoTransactionsCFG;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataIntegrityException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.ExtensionETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.ExtensionMetadataETY;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaContentRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.MongoTransactionManager;
 import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.GroupOperation;
 import org.springframework.data.mongodb.core.aggregation.MatchOperation;
+import org.springframework.data.mongodb.core.aggregation.ProjectionOperation;
 import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
 
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.*;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.*;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.FIELD_DELETED;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.FIELD_INSERTION_DATE;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.FIELD_LAST_UPDATE;
+import static org.springframework.data.mongodb.core.BulkOperations.BulkMode.ORDERED;
 import static org.springframework.data.mongodb.core.BulkOperations.BulkMode.UNORDERED;
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.springframework.data.mongodb.core.query.Query.query;
 
+@Slf4j
 @Repository
 public class DocumentRepo implements IDocumentRepo {
 
+    private static final String CMD_HELLO = "hello";
+    private static final String HELLO_SET_NAME = "setName";
+    private static final String HELLO_MSG = "msg";
+    private static final String HELLO_MONGOS = "isdbgrid";
+
     @Autowired
     private MongoTemplate mongo;
 
+    @Autowired
+    private ISchemaContentRepo content;
+
+    @Autowired
+    private MongoGridFsCFG gridfs;
+
+    @Autowired
+    private MongoTransactionManager transactions;
+
+    @Autowired
+    private MongoTransactionsCFG transactionsCfg;
+
+    private volatile Boolean transactional;
+
     /**
      * Retrieves the documents entities by their extension identifier
      * @param extension The extension id
@@ -73,6 +113,57 @@ public class DocumentRepo implements IDocumentRepo {
         }
     }
 
+    /**
+     * Opens a cursor over the active documents of the extension, sorted by filename
+     * @param extension The extension id
+     * @return The documents iterator, it must be closed by the caller
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public CloseableIterator<SchemaETY> streamDocsByExtensionId(String extension) throws OperationException {
+        Query query = Query.query(Criteria.where(FIELD_TYPE_ID_EXT).is(extension).and(FIELD_DELETED).is(false));
+        query.with(Sort.by(FIELD_FILENAME));
+        try {
+            return mongo.stream(query, SchemaETY.class);
+        } catch (MongoException e) {
+            throw new OperationException(ERR_REP_DOCS_NOT_FOUND, e);
+        }
+    }
+
+    /**
+     * Retrieves the documents metadata by their extension identifier.
+     * Documents written before the digest was stored are read in full and hashed on the fly
+     * @param extension The extension id
+     * @param includeDeleted If deleted documents should be returned as well
+     * @return The documents matching the extension identifier or an empty list if none match
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public List<SchemaMetadataETY> findDocsMetadataByExtensionId(String extension, boolean includeDeleted) throws OperationException {
+        Query query = Query.query(Criteria.where(FIELD_TYPE_ID_EXT).is(extension));
+
+        if (!includeDeleted) {
+            query.addCriteria(Criteria.where(FIELD_DELETED).is(false));
+        }
+
+        try {
+            List<SchemaMetadataETY> metadata = mongo.find(SchemaMetadataETY.project(query), SchemaMetadataETY.class);
+            // Legacy documents have no digest
+            Map<String, SchemaMetadataETY> legacy = metadata.stream()
+                .filter(m -> m.getContentHash() == null)
+                .collect(Collectors.toMap(SchemaMetadataETY::getId, m -> m));
+            if (!legacy.isEmpty()) {
+                List<ObjectId> ids = legacy.keySet().stream().map(ObjectId::new).collect(Collectors.toList());
+                for (SchemaETY entity : mongo.find(query(where(FIELD_ID).in(ids)), SchemaETY.class)) {
+                    legacy.get(entity.getId()).setContentHash(entity.digest());
+                }
+            }
+            return metadata;
+        } catch (MongoException e) {
+            throw new OperationException(ERR_REP_DOCS_NOT_FOUND, e);
+        }
+    }
+
     /**
      * Verify if exists at least one document with the given extension identifier
      * @param extension The extension id
@@ -114,9 +205,11 @@ public class DocumentRepo implements IDocumentRepo {
      */
     @Override
     public List<SchemaETY> insertDocsByExtensionId(List<SchemaETY> entities) throws OperationException {
+        List<String> refs = offload(entities);
         try {
             return new ArrayList<>(mongo.insertAll(entities));
         } catch(MongoException e) {
+            discard(refs);
             throw new OperationException(ERR_REP_INS_DOCS_BY_EXT , e);
         }
     }
@@ -133,6 +226,8 @@ public class DocumentRepo implements IDocumentRepo {
         // List to hold queries
         BulkOperations ops = mongo.bulkOps(UNORDERED, SchemaETY.class);
         BulkWriteResult result;
+        // Move large contents to GridFS before building the inserts
+        List<String> refs = offload(new ArrayList<>(entities.values()));
         // Create queries
         // They will be sent as a single call to the database
         entities.forEach((current, newest) -> {
@@ -151,7 +246,7 @@ public class DocumentRepo implements IDocumentRepo {
             // Creating query to mark as deleted the old file
             ops.updateOne(query, update);
             // Creating query to insert the new ones
-            ops.insert(newest);
+            ops.insert(identify(newest));
         });
 
         // Now, we reach the database instance with the queries
@@ -159,6 +254,7 @@ public class DocumentRepo implements IDocumentRepo {
             // Execute
             result = ops.execute();
         }catch (MongoException e) {
+            discard(refs);
             // Catch data-layer runtime exceptions and turn into a checked exception
             throw new OperationException(ERR_REP_UPD_DOCS_BY_EXT , e);
         }
@@ -172,6 +268,168 @@ public class DocumentRepo implements IDocumentRepo {
         return new ArrayList<>(entities.values());
     }
 
+    /**
+     * Replace every active document of the extension with the given ones.
+     * On replica sets and sharded clusters the soft-delete and the inserts are sent as a single bulk write
+     * inside a transaction, so readers never observe the extension without active documents.
+     * Standalone deployments cannot run transactions: the documents are soft-deleted first and the new ones inserted afterwards
+     * @param extension The extension id
+     * @param kept The identifiers of the active documents to leave untouched
+     * @param entities The documents to insert
+     * @return The entities inserted
+     * @throws OperationException If a data-layer error occurs
+     * @throws DataIntegrityException If there are no active documents to replace
+     */
+    @Override
+    public List<SchemaETY> replaceDocsByExtensionId(String extension, List<String> kept, List<SchemaETY> entities) throws OperationException, DataIntegrityException {
+        // Without transactions the bulk write could not be rolled back
+        if (!isTransactional()) return replaceInSteps(extension, kept, entities);
+        return inTransaction(() -> replaceInBulk(extension, kept, entities), entities, ERR_REP_REPLACE_DOCS_BY_EXT);
+    }
+
+    /**
+     * Runs the write inside a transaction, rolled back if it fails.
+     * Large contents are moved to GridFS beforehand since files are not part of the transaction,
+     * they are removed if the write is rolled back or the commit fails
+     * @param write The write to run
+     * @param entities The documents inserted by the write
+     * @param error The message of the exception raised if the commit fails
+     * @return The entities inserted by the write
+     */
+    private List<SchemaETY> inTransaction(Write write, List<SchemaETY> entities, String error) throws OperationException, DataIntegrityException {
+        // Working var
+        List<SchemaETY> inserted;
+        List<String> refs = offload(entities);
+        TransactionStatus tx = transactions.getTransaction(TransactionDefinition.withDefaults());
+        try {
+            inserted = write.apply();
+        } catch (OperationException | DataIntegrityException | RuntimeException e) {
+            transactions.rollback(tx);
+            discard(refs);
+            throw e;
+        }
+        try {
+            transactions.commit(tx);
+        } catch (TransactionException e) {
+            // The documents may have been written anyway, their contents must stay
+            if (isCommitUnknown(e)) {
+                log.warn("Unknown outcome of the transaction, GridFS contents {} are kept", refs);
+            } else {
+                discard(refs);
+            }
+            throw new OperationException(error, e);
+        }
+        return inserted;
+    }
+
+    private static boolean isCommitUnknown(TransactionException e) {
+        return e.getCause() instanceof MongoException &&
+            ((MongoException) e.getCause()).hasErrorLabel(MongoException.UNKNOWN_TRANSACTION_COMMIT_RESULT_LABEL);
+    }
+
+    private List<SchemaETY> replaceInBulk(String extension, List<String> kept, List<SchemaETY> entities) throws OperationException, DataIntegrityException {
+        // List to hold queries
+        BulkOperations ops = mongo.bulkOps(UNORDERED, SchemaETY.class);
+        BulkWriteResult result;
+        // Mark as deleted the current files, except the unchanged ones
+        ops.updateMulti(getReplacedQuery(extension, kept), getReplacedUpdate());
+        // Creating queries to insert the new ones
+        entities.forEach(DocumentRepo::identify);
+        ops.insert(entities);
+        // Now, we reach the database instance with the queries
+        try {
+            result = ops.execute();
+        } catch (MongoException e) {
+            // Catch data-layer runtime exceptions and turn into a checked exception
+            throw new OperationException(ERR_REP_REPLACE_DOCS_BY_EXT, e);
+        }
+        // The extension has been removed meanwhile, rollback the inserts
+        if (kept.isEmpty() && result.getMatchedCount() == 0) {
+            throw new DataIntegrityException(ERR_REP_REPLACE_NOTHING);
+        }
+        // Assert we modified the expected data size
+        if (result.getMatchedCount() != result.getModifiedCount()) {
+            throw new DataIntegrityException(
+                String.format(ERR_REP_UPD_MISMATCH, result.getModifiedCount(), result.getMatchedCount())
+            );
+        }
+        return entities;
+    }
+
+    private List<SchemaETY> replaceInSteps(String extension, List<String> kept, List<SchemaETY> entities) throws OperationException, DataIntegrityException {
+        // Working var
+        UpdateResult result;
+        try {
+            // Mark as deleted the current files, except the unchanged ones
+            result = mongo.updateMulti(getReplacedQuery(extension, kept), getReplacedUpdate(), SchemaETY.class);
+        } catch (MongoException e) {
+            // Catch data-layer runtime exceptions and turn into a checked exception
+            throw new OperationException(ERR_REP_REPLACE_DOCS_BY_EXT, e);
+        }
+        // The extension has been removed meanwhile, nothing has been inserted yet
+        if (kept.isEmpty() && result.getMatchedCount() == 0) {
+            throw new DataIntegrityException(ERR_REP_REPLACE_NOTHING);
+        }
+        // Assert we modified the expected data size
+        if (result.getMatchedCount() != result.getModifiedCount()) {
+            throw new DataIntegrityException(
+                String.format(ERR_REP_UPD_MISMATCH, result.getModifiedCount(), result.getMatchedCount())
+            );
+        }
+        return insertDocsByExtensionId(entities);
+    }
+
+    private static Query getReplacedQuery(String extension, List<String> kept) {
+        Query query = new Query();
+        query.addCriteria(where(FIELD_TYPE_ID_EXT).is(extension));
+        query.addCriteria(where(FIELD_DELETED).is(false));
+        if (!kept.isEmpty()) {
+            query.addCriteria(where(FIELD_ID).nin(kept.stream().map(ObjectId::new).collect(Collectors.toList())));
+        }
+        return query;
+    }
+
+    private static Update getReplacedUpdate() {
+        Update update = new Update();
+        update.set(FIELD_LAST_UPDATE, new Date());
+        update.set(FIELD_DELETED, true);
+        return update;
+    }
+
+    /**
+     * Transactions are used if enabled and supported by the deployment, the topology is checked once
+     * @return {@code true} if connected to a replica set member or to a mongos
+     */
+    private boolean isTransactional() {
+        Boolean supported = transactional;
+        if (supported == null) {
+            supported = transactionsCfg.isEnabled() && isReplicated();
+            transactional = supported;
+        }
+        return supported;
+    }
+
+    /**
+     * A write to run inside a transaction
+     */
+    @FunctionalInterface
+    private interface Write {
+        List<SchemaETY> apply() throws OperationException, DataIntegrityException;
+    }
+
+    private boolean isReplicated() {
+        try {
+            Document hello = mongo.executeCommand(new Document(CMD_HELLO, 1));
+            // Replica set members report the set name, routers identify as mongos
+            boolean replicated = hello.containsKey(HELLO_SET_NAME) || HELLO_MONGOS.equals(hello.getString(HELLO_MSG));
+            if (!replicated) log.warn("Standalone deployment, documents are replaced without transactions");
+            return replicated;
+        } catch (MongoException | DataAccessException e) {
+            log.warn("Unable to detect the deployment topology, documents are replaced without transactions", e);
+            return false;
+        }
+    }
+
     /**
      * Deletes all the documents entities matching the given extensions
      * @param extension The extension id
@@ -270,12 +528,117 @@ public class DocumentRepo implements IDocumentRepo {
         return entities;
     }
 
+    /**
+     * Logically delete the given documents and insert the new ones, both are sent to the database as a single bulk write.
+     * On replica sets and sharded clusters the write runs inside a transaction, rolled back if any document
+     * has been replaced meanwhile. Standalone deployments check the documents upfront and revert the write
+     * if a concurrent one retired any of them in between
+     * @param replaced The active documents to mark as deleted
+     * @param entities The documents to insert
+     * @return The entities inserted
+     * @throws OperationException If a data-layer error occurs
+     * @throws DataIntegrityException If the number of documents marked as deleted does not match the requested ones
+     */
+    @Override
+    public List<SchemaETY> patchDocsByExtensionId(List<SchemaETY> replaced, List<SchemaETY> entities) throws OperationException, DataIntegrityException {
+        if (isTransactional()) return inTransaction(() -> patchInBulk(replaced, entities, UNORDERED), entities, ERR_REP_PATCH_DOCS_BY_EXT);
+        // Already replaced by someone else, nothing is written
+        long active;
+        try {
+            active = mongo.count(query(where(FIELD_ID).in(ids(replaced)).and(FIELD_DELETED).is(false)), SchemaETY.class);
+        } catch (MongoException e) {
+            // Catch data-layer runtime exceptions and turn into a checked exception
+            throw new OperationException(ERR_REP_PATCH_DOCS_BY_EXT, e);
+        }
+        if (active != replaced.size()) {
+            throw new DataIntegrityException(String.format(ERR_REP_UPD_MISMATCH, active, replaced.size()));
+        }
+        // Move large contents to GridFS before building the inserts
+        List<String> refs = offload(entities);
+        try {
+            // The soft-deletes are applied before the inserts
+            return patchInBulk(replaced, entities, ORDERED);
+        } catch (OperationException | DataIntegrityException | RuntimeException e) {
+            discard(refs);
+            throw e;
+        }
+    }
+
+    private List<SchemaETY> patchInBulk(List<SchemaETY> replaced, List<SchemaETY> entities, BulkMode mode) throws OperationException, DataIntegrityException {
+        // List to hold queries
+        BulkOperations ops = mongo.bulkOps(mode, SchemaETY.class);
+        BulkWriteResult result;
+        // Same timestamp for every replaced document
+        Date now = new Date();
+        // Creating queries to mark as deleted the old files
+        for (SchemaETY current : replaced) {
+            Query query = new Query();
+            query.addCriteria(where(FIELD_ID).is(new ObjectId(current.getId())));
+            query.addCriteria(where(FIELD_DELETED).is(false));
+            Update update = new Update();
+            update.set(FIELD_LAST_UPDATE, now);
+            update.set(FIELD_DELETED, true);
+            ops.updateOne(query, update);
+        }
+        // Creating queries to insert the new ones
+        entities.forEach(DocumentRepo::identify);
+        ops.insert(entities);
+        // Now, we reach the database instance with the queries
+        try {
+            result = ops.execute();
+        } catch (MongoException e) {
+            // An ordered bulk stops at the first failure, the previous writes are applied
+            if (mode == ORDERED) revert(replaced, entities, now);
+            // Catch data-layer runtime exceptions and turn into a checked exception
+            throw new OperationException(ERR_REP_PATCH_DOCS_BY_EXT, e);
+        } catch (DataAccessException e) {
+            if (mode == ORDERED) revert(replaced, entities, now);
+            throw new OperationException(ERR_REP_PATCH_DOCS_BY_EXT, e);
+        }
+        // Assert we modified the expected data size
+        if (replaced.size() != result.getMatchedCount() || replaced.size() != result.getModifiedCount()) {
+            // Rolled back by the transaction, if any
+            if (mode == ORDERED) revert(replaced, entities, now);
+            throw new DataIntegrityException(
+                String.format(ERR_REP_UPD_MISMATCH, result.getModifiedCount(), replaced.size())
+            );
+        }
+        return entities;
+    }
+
+    /**
+     * Undoes a patch applied without transaction: the inserted documents are removed and the ones
+     * marked as deleted by it are active again. They are stamped as inserted now,
+     * so the changeset readers that have seen the deletion meanwhile insert them back
+     * @param replaced The documents the patch marked as deleted
+     * @param inserted The documents the patch inserted
+     * @param retired The date the patch marked the documents as deleted with
+     */
+    private void revert(List<SchemaETY> replaced, List<SchemaETY> inserted, Date retired) {
+        Date now = new Date();
+        BulkOperations ops = mongo.bulkOps(UNORDERED, SchemaETY.class);
+        ops.remove(query(where(FIELD_ID).in(ids(inserted))));
+        ops.updateMulti(
+            query(where(FIELD_ID).in(ids(replaced)).and(FIELD_DELETED).is(true).and(FIELD_LAST_UPDATE).is(retired)),
+            new Update().set(FIELD_DELETED, false).set(FIELD_LAST_UPDATE, now).set(FIELD_INSERTION_DATE, now)
+        );
+        try {
+            ops.execute();
+        } catch (MongoException e) {
+            log.error("Unable to revert the patch, the extension must be uploaded again", e);
+        }
+    }
+
+    private static List<ObjectId> ids(List<SchemaETY> entities) {
+        return entities.stream().map(e -> new ObjectId(e.getId())).collect(Collectors.toList());
+    }
+
     @Override
     public List<ExtensionETY> groupByExtension(boolean deleted) throws OperationException {
         // Working var
         List<ExtensionETY> extensions;
         // Define aggregation operation
-        MatchOperation match = Aggregation.match(where(FIELD_DELETED).ne(true));
+        MatchOperation match = Aggregation.match(where(FIELD_DELETED).is(false));
         GroupOperation group = Aggregation.group(FIELD_TYPE_ID_EXT).push(Aggregation.ROOT).as(ExtensionETY.FIELD_ITEMS);
         TypedAggregation<SchemaETY> agg = Aggregation.newAggregation(SchemaETY.class, match, group);
         // Override match operator if deleted is allowed
@@ -288,4 +651,109 @@ public class DocumentRepo implements IDocumentRepo {
         }
         return extensions;
     }
+
+    @Override
+    public List<ExtensionMetadataETY> groupMetadataByExtension(boolean deleted) throws OperationException {
+        // Working var
+        List<ExtensionMetadataETY> extensions;
+        // Define aggregation operation
+        MatchOperation match = Aggregation.match(where(FIELD_DELETED).is(false));
+        // Drop the binary before grouping, so it never reaches the pipeline output
+        ProjectionOperation project = Aggregation.project().andExclude(FIELD_CONTENT);
+        GroupOperation group = Aggregation.group(FIELD_TYPE_ID_EXT).push(Aggregation.ROOT).as(ExtensionETY.FIELD_ITEMS);
+        TypedAggregation<SchemaETY> agg = Aggregation.newAggregation(SchemaETY.class, match, project, group);
+        // Override match operator if deleted is allowed
+        if(deleted) agg = Aggregation.newAggregation(SchemaETY.class, project, group);
+        // Execute
+        try {
+            extensions = mongo.aggregate(agg, ExtensionMetadataETY.class).getMappedResults();
+        } catch (MongoException e) {
+            throw new OperationException(ERR_FIND_ACTIVE_DOCS , e);
+        }
+        return extensions;
+    }
+
+    /**
+     * Assigns the identifier before a bulk insert, which does not set it back on the entity
+     * @param entity The entity about to be inserted
+     * @return The same entity
+     */
+    private static SchemaETY identify(SchemaETY entity) {
+        if (entity.getId() == null) entity.setId(new ObjectId().toHexString());
+        return entity;
+    }
+
+    /**
+     * Stores on GridFS every content whose plain size is above the configured threshold,
+     * the entities keep only the reference to the stored file
+     * @param entities The entities about to be inserted
+     * @return The references of the stored contents
+     * @throws OperationException If a data-layer error occurs
+     */
+    private List<String> offload(List<SchemaETY> entities) throws OperationException {
+        List<String> refs = new ArrayList<>();
+        if (!gridfs.isEnabled()) return refs;
+        try {
+            for (SchemaETY entity : entities) {
+                Binary data = entity.getContentSchema();
+                // Compared with the plain size, the stored bytes are usually compressed
+                if (data != null && entity.size() > gridfs.getThreshold()) {
+                    String ref = content.store(entity.getNameSchema(), data.getData());
+                    entity.offload(ref);
+                    refs.add(ref);
+                }
+            }
+        } catch (OperationException e) {
+            discard(refs);
+            throw e;
+        }
+        return refs;
+    }
+
+    /**
+     * Removes the stored contents of a failed write, errors are only logged
+     * since orphan files are never referenced by any document
+     * @param refs The references of the stored contents
+     */
+    private void discard(List<String> refs) {
+        try {
+            content.delete(refs);
+        } catch (OperationException e) {
+            log.warn("Unable to remove orphan GridFS contents {}", refs, e);
+        }
+    }
+
+    /**
+     * Retrieves the most recent update date among every document, deleted ones included
+     *
+     * @return The high-water mark of the collection or {@code null} if there are no documents
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public Date findLastUpdateDate() throws OperationException {
+        Query query = new Query().with(Sort.by(Sort.Direction.DESC, FIELD_LAST_UPDATE)).limit(1);
+        query.fields().include(FIELD_LAST_UPDATE);
+        try {
+            SchemaETY last = mongo.findOne(query, SchemaETY.class);
+            return last != null ? last.getLastUpdateDate() : null;
+        } catch (MongoException e) {
+            throw new OperationException(ERR_REP_LAST_UPDATE, e);
+        }
+    }
+
+    /**
+     * Retrieves the extensions having at least one document updated after the given date, deleted ones included
+     *
+     * @param since The exclusive lower bound
+     * @return The extensions identifiers
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public List<String> findExtensionsUpdatedAfter(Date since) throws OperationException {
+        try {
+            return mongo.findDistinct(query(where(FIELD_LAST_UPDATE).gt(since)), FIELD_TYPE_ID_EXT, SchemaETY.class, String.class);
+        } catch (MongoException e) {
+            throw new OperationException(ERR_REP_LAST_UPDATE, e);
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.impl;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaChangeRepo;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_REP_CHANGE_STREAM;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_FILENAME;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_TYPE_ID_EXT;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.FIELD_DELETED;
+
+@Repository
+public class SchemaChangeRepo implements ISchemaChangeRepo {
+
+    private static final String FIELD_OPERATION_TYPE = "operationType";
+    private static final String FIELD_FULL_DOCUMENT = "fullDocument";
+    private static final String FIELD_DOCUMENT_KEY = "documentKey";
+    private static final String FIELD_NAMESPACE = "ns";
+
+    /**
+     * Upper bound of each wait on the server, it is also the latency of a stop request
+     */
+    private static final long MAX_AWAIT_MS = 1000;
+
+    @Autowired
+    private MongoTemplate mongo;
+
+    /**
+     * Opens a change stream over the schema collection, the full document of each change
+     * carries only the extension identifier, the filename and the deleted flag
+     *
+     * @param token The resume token of the last processed change, {@code null} to start from now
+     * @return The change cursor, it must be closed by the caller.
+     * Iterating it throws the driver exceptions as they are
+     * @throws OperationException If a data-layer error occurs, including change streams not being supported
+     */
+    @Override
+    public MongoChangeStreamCursor<ChangeStreamDocument<Document>> watch(BsonDocument token) throws OperationException {
+        // The looked up document is trimmed on the server, contents never travel
+        ChangeStreamIterable<Document> stream = mongo.getCollection(mongo.getCollectionName(SchemaETY.class))
+            .watch(Collections.singletonList(Aggregates.project(Projections.include(
+                FIELD_OPERATION_TYPE,
+                FIELD_DOCUMENT_KEY,
+                FIELD_NAMESPACE,
+                FIELD_FULL_DOCUMENT + "." + FIELD_TYPE_ID_EXT,
+                FIELD_FULL_DOCUMENT + "." + FIELD_FILENAME,
+                FIELD_FULL_DOCUMENT + "." + FIELD_DELETED
+            ))))
+            .fullDocument(FullDocument.UPDATE_LOOKUP)
+            .maxAwaitTime(MAX_AWAIT_MS, TimeUnit.MILLISECONDS);
+        if (token != null) stream = stream.resumeAfter(token);
+        try {
+            return stream.cursor();
+        } catch (MongoException e) {
+            throw new OperationException(ERR_REP_CHANGE_STREAM, e);
+        }
+    }
+}
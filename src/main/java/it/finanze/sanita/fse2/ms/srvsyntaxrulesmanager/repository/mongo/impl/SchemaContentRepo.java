@@ -0,0 +1,115 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.impl;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataProcessingException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaContentRepo;
+import org.apache.commons.io.IOUtils;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@Repository
+public class SchemaContentRepo implements ISchemaContentRepo {
+
+    private static final String FIELD_ID = "_id";
+
+    @Autowired
+    private GridFsTemplate gridfs;
+
+    /**
+     * Stores the given content on GridFS
+     *
+     * @param filename The schema filename
+     * @param data The content
+     * @return The reference to the stored content
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public String store(String filename, byte[] data) throws OperationException {
+        try {
+            return gridfs.store(new ByteArrayInputStream(data), filename).toHexString();
+        } catch (MongoException e) {
+            throw new OperationException(ERR_REP_CONTENT_STORE, e);
+        }
+    }
+
+    /**
+     * Opens the stored content, chunks are fetched while the stream is consumed
+     *
+     * @param ref The reference to the stored content
+     * @return The content stream, it must be closed by the caller
+     * @throws OperationException If a data-layer error occurs or the content does not exist
+     */
+    @Override
+    public InputStream open(String ref) throws OperationException {
+        try {
+            GridFSFile file = gridfs.findOne(query(where(FIELD_ID).is(new ObjectId(ref))));
+            if (file == null) throw new MongoGridFSException(String.format(ERR_REP_CONTENT_NOT_FOUND, ref));
+            return gridfs.getResource(file).getContent();
+        } catch (MongoException e) {
+            throw new OperationException(String.format(ERR_REP_CONTENT_OPEN, ref), e);
+        }
+    }
+
+    /**
+     * Reads the whole stored content
+     *
+     * @param ref The reference to the stored content
+     * @return The content
+     * @throws OperationException If a data-layer error occurs or the content does not exist
+     * @throws DataProcessingException If the content cannot be fully read
+     */
+    @Override
+    public byte[] read(String ref) throws OperationException, DataProcessingException {
+        try (InputStream in = open(ref)) {
+            return IOUtils.toByteArray(in);
+        } catch (MongoException e) {
+            throw new OperationException(String.format(ERR_REP_CONTENT_OPEN, ref), e);
+        } catch (IOException e) {
+            throw new DataProcessingException(String.format(ERR_REP_CONTENT_OPEN, ref), e);
+        }
+    }
+
+    /**
+     * Removes the given stored contents
+     *
+     * @param refs The references to the stored contents
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public void delete(Collection<String> refs) throws OperationException {
+        if (refs.isEmpty()) return;
+        List<ObjectId> ids = refs.stream().map(ObjectId::new).collect(Collectors.toList());
+        try {
+            gridfs.delete(query(where(FIELD_ID).in(ids)));
+        } catch (MongoException e) {
+            throw new OperationException(ERR_REP_CONTENT_DELETE, e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.impl;
+
+import com.mongodb.MongoException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaIndexRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_REP_ENSURE_INDEX;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_REP_LIST_INDEXES;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_ID;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_FILENAME;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_TYPE_ID_EXT;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.*;
+
+@Repository
+public class SchemaIndexRepo implements ISchemaIndexRepo {
+
+    /**
+     * Extension lookups, with or without deleted documents, and by filename.
+     * Active reads ({@code deleted: false}) use it as well, no partial index is needed for them
+     */
+    public static final String IDX_EXT_DELETED_NAME = "idx_ext_deleted_name";
+    /**
+     * Changeset insertions
+     */
+    public static final String IDX_INSERTION_DELETED = "idx_insertion_deleted";
+    /**
+     * Changeset deletions
+     */
+    public static final String IDX_UPDATE_INSERTION_DELETED = "idx_update_insertion_deleted";
+    /**
+     * Changeset pages, the key the pages are sorted and resumed on
+     */
+    public static final String IDX_UPDATE_ID = "idx_update_id";
+
+    private static final Map<String, Supplier<Index>> INDEXES = new LinkedHashMap<>();
+
+    static {
+        INDEXES.put(IDX_EXT_DELETED_NAME, () -> new Index()
+            .on(FIELD_TYPE_ID_EXT, Direction.ASC)
+            .on(FIELD_DELETED, Direction.ASC)
+            .on(FIELD_FILENAME, Direction.ASC));
+        INDEXES.put(IDX_INSERTION_DELETED, () -> new Index()
+            .on(FIELD_INSERTION_DATE, Direction.ASC)
+            .on(FIELD_DELETED, Direction.ASC));
+        INDEXES.put(IDX_UPDATE_INSERTION_DELETED, () -> new Index()
+            .on(FIELD_LAST_UPDATE, Direction.ASC)
+            .on(FIELD_INSERTION_DATE, Direction.ASC)
+            .on(FIELD_DELETED, Direction.ASC));
+        INDEXES.put(IDX_UPDATE_ID, () -> new Index()
+            .on(FIELD_LAST_UPDATE, Direction.ASC)
+            .on(FIELD_ID, Direction.ASC));
+    }
+
+    @Autowired
+    private MongoTemplate mongo;
+
+    /**
+     * Retrieves the names of the indexes required by the schema queries
+     *
+     * @return The expected index names
+     */
+    @Override
+    public List<String> getExpectedIndexes() {
+        return new ArrayList<>(INDEXES.keySet());
+    }
+
+    /**
+     * Creates the given index if it does not exist yet
+     *
+     * @param name The index name
+     * @param background If the index should be built in background
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public void ensureIndex(String name, boolean background) throws OperationException {
+        // Create definition
+        Index index = INDEXES.get(name).get().named(name);
+        if(background) index.background();
+        try {
+            // Execute, no-op if already available with the same definition
+            mongo.indexOps(SchemaETY.class).ensureIndex(index);
+        } catch (MongoException e) {
+            // Catch data-layer runtime exceptions and turn into a checked exception
+            throw new OperationException(String.format(ERR_REP_ENSURE_INDEX, name), e);
+        } catch (DataAccessException e) {
+            // Same, but already translated by the template (e.g. conflicting definition)
+            throw new OperationException(String.format(ERR_REP_ENSURE_INDEX, name), e);
+        }
+    }
+
+    /**
+     * Retrieves the expected indexes not available on the collection
+     *
+     * @return The missing index names
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public List<String> getMissingIndexes() throws OperationException {
+        // Working var
+        Set<String> available;
+        try {
+            // Execute
+            available = mongo.indexOps(SchemaETY.class).getIndexInfo().stream().map(IndexInfo::getName).collect(Collectors.toSet());
+        } catch (MongoException e) {
+            // Catch data-layer runtime exceptions and turn into a checked exception
+            throw new OperationException(ERR_REP_LIST_INDEXES, e);
+        } catch (DataAccessException e) {
+            // Same, but already translated by the template
+            throw new OperationException(ERR_REP_LIST_INDEXES, e);
+        }
+        return INDEXES.keySet().stream().filter(name -> !available.contains(name)).collect(Collectors.toList());
+    }
+}
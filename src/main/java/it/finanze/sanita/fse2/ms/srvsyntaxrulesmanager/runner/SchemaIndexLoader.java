@@ -0,0 +1,64 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.runner;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.mongo.MongoIndexCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaIndexRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Slf4j
+@Component
+public class SchemaIndexLoader implements CommandLineRunner {
+
+    @Autowired
+    private ISchemaIndexRepo repository;
+
+    @Autowired
+    private MongoIndexCFG config;
+
+    /**
+     * Callback used to run the bean.
+     *
+     * @param args incoming main method arguments
+     */
+    @Override
+    public void run(String... args) {
+        log.info("RUNNER schemaIndexLoader()");
+        // Create indexes one by one, a failure must not prevent the others
+        if(config.isCreate()) {
+            for (String name : repository.getExpectedIndexes()) {
+                try {
+                    repository.ensureIndex(name, config.isBackground());
+                } catch (OperationException e) {
+                    log.error("[schemaIndexLoader()] Unable to create index {}", name, e);
+                }
+            }
+        }
+        // Verify
+        try {
+            List<String> missing = repository.getMissingIndexes();
+            if(missing.isEmpty()) {
+                log.info("[schemaIndexLoader()] Indexes available: {}", repository.getExpectedIndexes());
+            } else {
+                log.warn("[schemaIndexLoader()] Indexes missing: {}", missing);
+            }
+        } catch (OperationException e) {
+            log.error("[schemaIndexLoader()] Unable to verify indexes", e);
+        }
+    }
+}
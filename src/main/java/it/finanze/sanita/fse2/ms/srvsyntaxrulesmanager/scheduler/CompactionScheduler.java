@@ -0,0 +1,44 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.scheduler;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ICompactionSRV;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "data.mongodb.compaction.enabled", havingValue = "true")
+public class CompactionScheduler {
+
+    @Autowired
+    private ICompactionSRV service;
+
+    /**
+     * Purges the deleted documents outside the retention,
+     * running it on several replicas at once is harmless
+     */
+    @Scheduled(cron = "${data.mongodb.compaction.cron}")
+    public void run() {
+        log.info("SCHEDULER compaction()");
+        try {
+            long removed = service.compact();
+            log.info("[compaction()] Removed documents: {}", removed);
+        } catch (OperationException e) {
+            log.error("[compaction()] Unable to compact the deleted documents", e);
+        }
+    }
+}
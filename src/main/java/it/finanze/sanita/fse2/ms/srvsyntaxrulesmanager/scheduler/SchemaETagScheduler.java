@@ -0,0 +1,46 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.scheduler;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaChangeSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+public class SchemaETagScheduler {
+
+    @Autowired
+    private ISchemaETagSRV service;
+
+    @Autowired
+    private ISchemaChangeSRV changes;
+
+    /**
+     * Catches up the writes of the other replicas while the change stream is not available,
+     * the interval bounds how long clients can be answered with a stale tag
+     */
+    @Scheduled(fixedDelayString = "${etag.poll-interval-ms}")
+    public void run() {
+        if (changes.isActive()) return;
+        try {
+            int dropped = service.reconcile();
+            if (dropped > 0) log.info("[reconcile()] Dropped extension tags: {}", dropped);
+        } catch (OperationException e) {
+            log.error("[reconcile()] Unable to check the last updates of the documents", e);
+        }
+    }
+}
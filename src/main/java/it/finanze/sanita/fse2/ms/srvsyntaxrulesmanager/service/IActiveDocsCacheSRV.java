@@ -0,0 +1,69 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaContentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+
+import java.util.List;
+
+public interface IActiveDocsCacheSRV {
+
+    /**
+     * Retrieves the active documents of the extension, reading them from the database on miss.
+     * Cached entities are shared and must not be modified, their inline content
+     * is kept off-heap and must be retrieved with {@link #getContent(SchemaETY)}
+     *
+     * @param extension The extension id
+     * @return The active documents or an empty list if none match
+     * @throws OperationException If a data-layer error occurs
+     */
+    List<SchemaETY> getActiveDocs(String extension) throws OperationException;
+
+    /**
+     * Retrieves a cached active document, the database is never read
+     *
+     * @param id The document id
+     * @return The document or {@code null} if its extension is not cached
+     */
+    SchemaETY getActiveDoc(String id);
+
+    /**
+     * Retrieves the off-heap content of a cached document, it stays readable even if evicted afterwards
+     *
+     * @param doc The cached document
+     * @return The content or {@code null} if the document is not cached anymore
+     */
+    SchemaContentDTO getContent(SchemaETY doc);
+
+    /**
+     * Drops the documents of the extension, it must be invoked by every write path
+     *
+     * @param extension The extension id
+     */
+    void invalidate(String extension);
+
+    /**
+     * Drops every cached document
+     */
+    void invalidateAll();
+
+    /**
+     * Drops the extensions written by other replicas since the last check,
+     * comparing the last update date of the collection with the one previously seen
+     *
+     * @return The number of extensions dropped
+     * @throws OperationException If a data-layer error occurs
+     */
+    int reconcile() throws OperationException;
+}
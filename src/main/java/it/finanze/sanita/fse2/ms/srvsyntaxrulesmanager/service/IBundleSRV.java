@@ -0,0 +1,46 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+
+public interface IBundleSRV {
+
+    /**
+     * Prepares the ZIP of the active documents of the extension,
+     * documents are read from the cursor while the archive is written
+     * @param extension The extension id
+     * @return The archive writer
+     * @throws OperationException If a data-layer error occurs
+     * @throws ExtensionNotFoundException If no documents matching the extension are found
+     */
+    StreamingResponseBody exportBundle(String extension) throws OperationException, ExtensionNotFoundException;
+
+    /**
+     * Extracts the given ZIP and inserts its files as a new extension
+     * @param root Root filename
+     * @param extension Extension identifier
+     * @param bundle The ZIP stream, entries are read one at a time
+     * @return Number of files inserted into the schema
+     * @throws OperationException If a data-layer error occurs
+     * @throws ExtensionAlreadyExistsException If the given extension is already inserted into the schema
+     * @throws DataProcessingException If the archive cannot be read
+     * @throws RootNotValidException If the given root filename is not present in the archive
+     * @throws InvalidContentException If the archive is empty, exceeds the limits or contains invalid files
+     * @throws SchemaValidatorException If the files do not represent a valid schema
+     * @throws ValidationUnavailableException If the validation executor is saturated
+     */
+    int importBundle(String root, String extension, InputStream bundle) throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, InvalidContentException, SchemaValidatorException, ValidationUnavailableException;
+}
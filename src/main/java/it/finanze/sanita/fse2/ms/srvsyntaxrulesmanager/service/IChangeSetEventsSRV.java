@@ -0,0 +1,55 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SubscriptionUnavailableException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+public interface IChangeSetEventsSRV {
+
+    /**
+     * Opens a subscription, the first event carries the time the changes are pushed from
+     * @return The emitter of the subscription
+     * @throws SubscriptionUnavailableException If the maximum number of subscriptions has been reached
+     */
+    SseEmitter subscribe() throws SubscriptionUnavailableException;
+
+    /**
+     * Pushes the changes committed by a write to every subscriber, without waiting for the clients.
+     * Changes already published are skipped
+     * @param insertions The inserted documents
+     * @param deletions The deleted documents
+     */
+    void publish(List<ChangeSetDTO> insertions, List<ChangeSetDTO> deletions);
+
+    /**
+     * Publishes the changes committed by every replica since the previous call, used while the change stream is not available
+     * @return The number of changes not published before
+     * @throws OperationException If a data-layer error occurs
+     */
+    int reconcile() throws OperationException;
+
+    /**
+     * Keeps the idle connections open and drops the clients not reading anymore,
+     * forgets the published changes that cannot be read again
+     */
+    void heartbeat();
+
+    /**
+     * @return The number of open subscriptions
+     */
+    int subscribers();
+}
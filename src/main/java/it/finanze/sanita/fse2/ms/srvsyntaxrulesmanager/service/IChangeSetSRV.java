@@ -11,12 +11,15 @@
  */
 package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service;
 
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.ChangeSetPageDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.InvalidPageTokenException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
 import org.springframework.lang.Nullable;
 
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface IChangeSetSRV {
     /**
@@ -35,10 +38,37 @@ public interface IChangeSetSRV {
      */
     List<ChangeSetDTO> getDeletions(@Nullable Date lastUpdate) throws OperationException;
 
+    /**
+     * Streams the latest insertions according to the given timeframe
+     * @param lastUpdate The timeframe to consider while calculating
+     * @param consumer The consumer receiving each missing insertion
+     * @throws OperationException If a data-layer error occurs
+     */
+    void streamInsertions(@Nullable Date lastUpdate, Consumer<ChangeSetDTO> consumer) throws OperationException;
+
+    /**
+     * Streams the latest deletions according to the given timeframe
+     * @param lastUpdate The timeframe to consider while calculating
+     * @param consumer The consumer receiving each missing deletion
+     * @throws OperationException If a data-layer error occurs
+     */
+    void streamDeletions(@Nullable Date lastUpdate, Consumer<ChangeSetDTO> consumer) throws OperationException;
+
     /**
      * Retrieves the expected collection size after the alignment
      * @return The collection size
      * @throws OperationException If a data-layer error occurs
      */
     long getCollectionSize() throws OperationException;
+
+    /**
+     * Retrieves a page of the changes according to the given timeframe
+     * @param lastUpdate The timeframe to consider while calculating
+     * @param limit The maximum number of items
+     * @param token The token returned by the previous page, null on the first one
+     * @return The page with the token of the following one
+     * @throws OperationException If a data-layer error occurs
+     * @throws InvalidPageTokenException If the token is malformed or issued for another lastUpdate
+     */
+    ChangeSetPageDTO getPage(@Nullable Date lastUpdate, int limit, @Nullable String token) throws OperationException, InvalidPageTokenException;
 }
@@ -13,6 +13,8 @@ package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service;
 
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDocumentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaFileDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaUpdateDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.*;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -29,15 +31,25 @@ public interface IDocumentSRV {
      */
     SchemaDocumentDTO findDocById(String id) throws OperationException, DocumentNotFoundException;
 
+    /**
+     * Retrieves the raw content of the document by identifier
+     * @param id The document id
+     * @return The file matching the identifier, its content is opened only when consumed
+     * @throws OperationException If a data-layer error occurs
+     * @throws DocumentNotFoundException If no document matching the identifier is found
+     */
+    SchemaFileDTO findDocContentById(String id) throws OperationException, DocumentNotFoundException;
+
     /**
      * Retrieves the documents by their extension identifier
      * @param extension The extension id
+     * @param opts The output options, binary content is not loaded if not required
      * @param includeDeleted
      * @return The documents matching the extension identifier
      * @throws OperationException If a data-layer error occurs
      * @throws ExtensionNotFoundException If no documents matching the extension are found
      */
-    List<SchemaDocumentDTO> findDocsByExtensionId(String extension, boolean includeDeleted) throws OperationException, ExtensionNotFoundException;
+    List<SchemaDocumentDTO> findDocsByExtensionId(String extension, SchemaDocumentDTO.Options opts, boolean includeDeleted) throws OperationException, ExtensionNotFoundException;
 
     /**
      * Insert the given data inside the schema
@@ -49,21 +61,23 @@ public interface IDocumentSRV {
      * @throws ExtensionAlreadyExistsException If the given extension is already inserted into the schema
      * @throws DataProcessingException If an error occurs while converting raw data to entity type
      * @throws RootNotValidException If the given root filename is not present in the files array
+     * @throws ValidationUnavailableException If the validation executor is saturated
      */
-    int insertDocsByExtensionId(String root, String extension, MultipartFile[] files) throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, SchemaValidatorException;
+    int insertDocsByExtensionId(String root, String extension, MultipartFile[] files) throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, SchemaValidatorException, ValidationUnavailableException;
 
     /**
      * Update the documents content with the provided ones according to the extension, deleting the old ones
      * @param root The root identifier of the schemas
      * @param extension The extension id
      * @param files   The documents to use as replacement of the old ones
-     * @return The number of inserted schema.
+     * @return The number of inserted schema and the files left untouched because identical to the active ones
      * @throws OperationException        If a data-layer error occurs
      * @throws ExtensionNotFoundException  If no documents matching the extension are found
      * @throws DocumentNotFoundException If at least one document to be replaced is not found inside the collection
      * @throws DataProcessingException If unable to convert the input raw data into a binary representation
+     * @throws ValidationUnavailableException If the validation executor is saturated
      */
-    int updateDocsByExtensionId(String root, String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException, DataIntegrityException, RootNotValidException, SchemaValidatorException;
+    SchemaUpdateDTO updateDocsByExtensionId(String root, String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException, DataIntegrityException, RootNotValidException, SchemaValidatorException, ValidationUnavailableException;
 
     /**
      * Deletes all the documents entities matching the given extensions
@@ -78,9 +92,9 @@ public interface IDocumentSRV {
      * Patch the documents content with the provided ones according to the extension, adding the new ones
      * @param extension
      * @param files
-     * @return
+     * @return The number of inserted schema and the files left untouched because identical to the active ones
      */
-    int patchDocsByExtensionId(String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException, DataIntegrityException, SchemaValidatorException;
+    SchemaUpdateDTO patchDocsByExtensionId(String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException, DataIntegrityException, SchemaValidatorException, ValidationUnavailableException;
 
     /**
      * Find all active documents in DB
@@ -0,0 +1,54 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+
+public interface ISchemaETagSRV {
+
+    /**
+     * Returns the entity tag of the extension documents, computed from their identifiers and last update dates
+     * @param extension The extension id
+     * @param deleted If deleted documents are part of the response
+     * @param binary If binary contents are part of the response
+     * @return The entity tag or null if the extension has no documents
+     * @throws OperationException If a data-layer error occurs
+     */
+    String getExtensionTag(String extension, boolean deleted, boolean binary) throws OperationException;
+
+    /**
+     * Returns the entity tag of the whole documents listing
+     * @param deleted If deleted documents are part of the response
+     * @param binary If binary contents are part of the response
+     * @return The entity tag
+     * @throws OperationException If a data-layer error occurs
+     */
+    String getListingTag(boolean deleted, boolean binary) throws OperationException;
+
+    /**
+     * Drops the cached tags of the extension and of the listing
+     * @param extension The extension id
+     */
+    void invalidate(String extension);
+
+    /**
+     * Drops every cached tag
+     */
+    void invalidateAll();
+
+    /**
+     * Drops the tags of the extensions written since the previous check, by this replica or by any other
+     * @return The number of dropped extensions
+     * @throws OperationException If a data-layer error occurs
+     */
+    int reconcile() throws OperationException;
+}
@@ -0,0 +1,40 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SchemaValidatorException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.ValidationUnavailableException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Map;
+
+public interface ISchemaValidatorSRV {
+
+    /**
+     * Compiles the given files starting from the root one
+     * @param root Root filename
+     * @param files The schema files
+     * @throws SchemaValidatorException If the files do not represent a valid schema
+     * @throws ValidationUnavailableException If the validation executor is saturated
+     */
+    void verify(String root, MultipartFile[] files) throws SchemaValidatorException, ValidationUnavailableException;
+
+    /**
+     * Compiles the current files, replaced by the newest ones, starting from the root one
+     * @param root Root filename
+     * @param current The current schema files content, by filename
+     * @param newest The schema files replacing the current ones
+     * @throws SchemaValidatorException If the files do not represent a valid schema
+     * @throws ValidationUnavailableException If the validation executor is saturated
+     */
+    void verify(String root, Map<String, byte[]> current, MultipartFile[] newest) throws SchemaValidatorException, ValidationUnavailableException;
+}
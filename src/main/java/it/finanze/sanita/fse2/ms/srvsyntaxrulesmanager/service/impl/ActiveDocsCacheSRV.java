@@ -0,0 +1,287 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.ActiveDocsCacheCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaContentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IActiveDocsCacheSRV;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-through LRU cache of the active documents by extension, bounded both by entries and by stored bytes.
+ * Only metadata is kept on heap, inline contents are copied as stored (compressed) into one direct buffer
+ * per extension and streamed from there, so long-lived binaries never reach the old generation.
+ * Local writes drop their extension synchronously, writes of other replicas are caught up
+ * by polling the last update date of the collection. The latest updates are scanned again
+ * for a poll interval plus the allowed clock skew, so late commits are not missed
+ */
+@Slf4j
+@Service
+public class ActiveDocsCacheSRV implements IActiveDocsCacheSRV {
+
+    public static final String METRIC_CACHE_GETS = "schema.docs.cache.gets";
+    public static final String METRIC_CACHE_EVICTIONS = "schema.docs.cache.evictions";
+    public static final String METRIC_CACHE_SIZE = "schema.docs.cache.size";
+    public static final String METRIC_CACHE_BYTES = "schema.docs.cache.bytes";
+    public static final String METRIC_CACHE_OFF_HEAP = "schema.docs.cache.off.heap";
+    public static final String METRIC_CACHE_HIT_RATIO = "schema.docs.cache.hit.ratio";
+
+    /**
+     * Rough footprint of an entity besides its inline content
+     */
+    private static final long ENTITY_OVERHEAD = 512;
+
+    private final IDocumentRepo repository;
+    private final ActiveDocsCacheCFG cfg;
+
+    /**
+     * Access-order is required to evict the least recently used extension
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Extension of each cached document, by id
+     */
+    private final Map<String, String> index = new HashMap<>();
+    private long bytes;
+    private long offHeap;
+    /**
+     * Bumped on every invalidation, documents read across an invalidation are not cached
+     */
+    private long generation;
+    /**
+     * Last update date of the collection seen by the previous reconciliation
+     */
+    private Date watermark;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    @Autowired
+    public ActiveDocsCacheSRV(IDocumentRepo repository, ActiveDocsCacheCFG cfg, MeterRegistry registry) {
+        this.repository = repository;
+        this.cfg = cfg;
+        this.hits = Counter.builder(METRIC_CACHE_GETS).tag("result", "hit").register(registry);
+        this.misses = Counter.builder(METRIC_CACHE_GETS).tag("result", "miss").register(registry);
+        this.evictions = Counter.builder(METRIC_CACHE_EVICTIONS).register(registry);
+        Gauge.builder(METRIC_CACHE_SIZE, this, ActiveDocsCacheSRV::size).register(registry);
+        Gauge.builder(METRIC_CACHE_BYTES, this, ActiveDocsCacheSRV::bytes).baseUnit("bytes").register(registry);
+        Gauge.builder(METRIC_CACHE_OFF_HEAP, this, ActiveDocsCacheSRV::offHeap).baseUnit("bytes").register(registry);
+        Gauge.builder(METRIC_CACHE_HIT_RATIO, this, ActiveDocsCacheSRV::ratio).register(registry);
+    }
+
+    @Override
+    public List<SchemaETY> getActiveDocs(String extension) throws OperationException {
+        if (!cfg.isEnabled()) return repository.findDocsByExtensionId(extension, false);
+        long started;
+        synchronized (this) {
+            Entry entry = entries.get(extension);
+            if (entry != null) {
+                hits.increment();
+                return entry.docs;
+            }
+            misses.increment();
+            started = generation;
+        }
+        // Read outside the lock, concurrent misses on the same extension may both hit the database
+        List<SchemaETY> docs = Collections.unmodifiableList(repository.findDocsByExtensionId(extension, false));
+        // Not found is answered by the regular flow
+        if (!docs.isEmpty()) cache(extension, docs, started);
+        // The caller keeps the entities just read, the cached copies are used from the next call
+        return docs;
+    }
+
+    @Override
+    public synchronized SchemaETY getActiveDoc(String id) {
+        if (!cfg.isEnabled()) return null;
+        String extension = index.get(id);
+        Entry entry = extension != null ? entries.get(extension) : null;
+        // Lookups by id do not count as gets, misses are not read through
+        return entry != null ? entry.byId.get(id) : null;
+    }
+
+    @Override
+    public SchemaContentDTO getContent(SchemaETY doc) {
+        ByteBuffer buffer;
+        synchronized (this) {
+            String extension = index.get(doc.getId());
+            Entry entry = extension != null ? entries.get(extension) : null;
+            buffer = entry != null ? entry.contents.get(doc.getId()) : null;
+        }
+        if (buffer == null) return null;
+        // The slab stays alive as long as the view is referenced
+        return SchemaContentDTO.of(() -> doc.decode(new ByteBufferBackedInputStream(buffer.duplicate())));
+    }
+
+    @Override
+    public synchronized void invalidate(String extension) {
+        generation++;
+        Entry entry = entries.remove(extension);
+        if (entry != null) release(entry);
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+        index.clear();
+        bytes = 0;
+        offHeap = 0;
+    }
+
+    @Override
+    public int reconcile() throws OperationException {
+        Date last = repository.findLastUpdateDate();
+        if (last == null) return 0;
+        Date seen = watermark();
+        // Dates are stamped before the commit and by the clock of each replica, a write stamped
+        // before the watermark may become visible later: the recent ones are checked again for a while
+        Date since = seen != null ? new Date(Math.min(seen.getTime(), System.currentTimeMillis() - cfg.getPollInterval() - cfg.getClockSkew())) : null;
+        if (since != null && !last.after(since)) return 0;
+        int dropped;
+        if (since == null) {
+            // Nothing to compare with, whatever was read before the first check is dropped
+            dropped = size();
+            invalidateAll();
+        } else {
+            List<String> updated = repository.findExtensionsUpdatedAfter(since);
+            for (String extension : updated) invalidate(extension);
+            dropped = updated.size();
+        }
+        if (seen == null || last.after(seen)) watermark(last);
+        log.debug("Reconciled documents cache up to {}, dropped extensions n.: {}", last, dropped);
+        return dropped;
+    }
+
+    private void cache(String extension, List<SchemaETY> docs, long started) {
+        // A single extension must not flush the whole cache
+        if (weight(docs) > cfg.getMaxBytes()) return;
+        // Copied outside the lock, direct allocations are expensive
+        Entry entry = new Entry(docs);
+        synchronized (this) {
+            if (generation != started) return;
+            Entry previous = entries.put(extension, entry);
+            if (previous != null) release(previous);
+            entry.byId.keySet().forEach(id -> index.put(id, extension));
+            bytes += entry.weight;
+            offHeap += entry.offHeap;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (entries.size() > cfg.getMaxEntries() || bytes > cfg.getMaxBytes()) {
+                Map.Entry<String, Entry> evicted = eldest.next();
+                log.debug("Evicting active documents of extension {}", evicted.getKey());
+                eldest.remove();
+                release(evicted.getValue());
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops the bookkeeping of a removed entry, the direct buffer is reclaimed
+     * by the garbage collector once no reader holds a view over it anymore
+     */
+    private void release(Entry entry) {
+        entry.byId.keySet().forEach(index::remove);
+        bytes -= entry.weight;
+        offHeap -= entry.offHeap;
+    }
+
+    private synchronized Date watermark() {
+        return watermark;
+    }
+
+    private synchronized void watermark(Date last) {
+        watermark = last;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long offHeap() {
+        return offHeap;
+    }
+
+    private double ratio() {
+        double total = hits.count() + misses.count();
+        return total > 0 ? hits.count() / total : 0;
+    }
+
+    private static long weight(List<SchemaETY> docs) {
+        long weight = 0;
+        for (SchemaETY doc : docs) {
+            weight += ENTITY_OVERHEAD;
+            // Offloaded contents are opened on demand and never held here
+            if (doc.getContentSchema() != null) weight += doc.getContentSchema().length();
+        }
+        return weight;
+    }
+
+    private static class Entry {
+        private final List<SchemaETY> docs;
+        private final Map<String, SchemaETY> byId = new HashMap<>();
+        private final Map<String, ByteBuffer> contents = new HashMap<>();
+        private final long weight;
+        private final long offHeap;
+
+        private Entry(List<SchemaETY> source) {
+            long size = 0;
+            for (SchemaETY doc : source) {
+                if (doc.getContentSchema() != null) size += doc.getContentSchema().length();
+            }
+            // One slab for the whole extension, sliced by document
+            ByteBuffer slab = ByteBuffer.allocateDirect((int) size);
+            List<SchemaETY> docs = new ArrayList<>(source.size());
+            for (SchemaETY doc : source) {
+                SchemaETY meta = doc.withoutContent();
+                if (doc.getContentSchema() != null) {
+                    int position = slab.position();
+                    slab.put(doc.getContentSchema().getData());
+                    ByteBuffer slice = slab.duplicate();
+                    // Through Buffer, the covariant overrides of ByteBuffer do not exist on Java 8
+                    ((Buffer) slice).position(position);
+                    ((Buffer) slice).limit(slab.position());
+                    contents.put(meta.getId(), slice.slice().asReadOnlyBuffer());
+                }
+                docs.add(meta);
+                byId.put(meta.getId(), meta);
+            }
+            this.docs = Collections.unmodifiableList(docs);
+            this.offHeap = size;
+            this.weight = weight(source);
+        }
+    }
+}
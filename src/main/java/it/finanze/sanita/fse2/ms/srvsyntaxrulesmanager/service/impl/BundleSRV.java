@@ -0,0 +1,162 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.BundleCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.BundleFileDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.*;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaContentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IBundleSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IDocumentSRV;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.*;
+
+@Slf4j
+@Service
+public class BundleSRV implements IBundleSRV {
+
+    private static final String SCHEMA_EXTENSION = "xsd";
+
+    private final IDocumentRepo repository;
+    private final ISchemaContentRepo content;
+    private final IDocumentSRV documents;
+    private final BundleCFG cfg;
+
+    @Autowired
+    public BundleSRV(IDocumentRepo repository, ISchemaContentRepo content, IDocumentSRV documents, BundleCFG cfg) {
+        this.repository = repository;
+        this.content = content;
+        this.documents = documents;
+        this.cfg = cfg;
+    }
+
+    @Override
+    public StreamingResponseBody exportBundle(String extension) throws OperationException, ExtensionNotFoundException {
+        // Checked upfront, once streaming the status cannot change anymore
+        if (!repository.isExtensionInserted(extension)) {
+            throw new ExtensionNotFoundException(ERR_SRV_EXT_NOT_FOUND);
+        }
+        return out -> write(extension, out);
+    }
+
+    @Override
+    public int importBundle(String root, String extension, InputStream bundle) throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, InvalidContentException, SchemaValidatorException, ValidationUnavailableException {
+        List<BundleFileDTO> files = extract(bundle);
+        log.debug("Extracted files n.: {} from bundle of extension {}", files.size(), extension);
+        // Same flow of the multipart upload
+        return documents.insertDocsByExtensionId(root, extension, files.toArray(new BundleFileDTO[0]));
+    }
+
+    private void write(String extension, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        try (CloseableIterator<SchemaETY> docs = repository.streamDocsByExtensionId(extension)) {
+            while (docs.hasNext()) {
+                SchemaETY doc = docs.next();
+                ZipEntry entry = new ZipEntry(doc.getNameSchema());
+                entry.setTime(doc.getLastUpdateDate().getTime());
+                zip.putNextEntry(entry);
+                if (doc.isOffloaded()) {
+                    try (InputStream in = doc.decode(content.open(doc.getContentRef()))) {
+                        StreamUtils.copy(in, zip);
+                    }
+                } else {
+                    zip.write(doc.content());
+                }
+                zip.closeEntry();
+            }
+        } catch (OperationException e) {
+            throw new DataProcessingException(ERR_SRV_BUNDLE_WRITE, e);
+        }
+        // The response stream is owned by the container
+        zip.finish();
+    }
+
+    private List<BundleFileDTO> extract(InputStream bundle) throws DataProcessingException, InvalidContentException {
+        List<BundleFileDTO> files = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        long size = 0;
+        try {
+            ZipInputStream zip = new ZipInputStream(bundle);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) continue;
+                // Folders are not part of the schema, includes are resolved by filename
+                String name = FilenameUtils.getName(entry.getName());
+                if (!FilenameUtils.isExtension(name, SCHEMA_EXTENSION)) {
+                    throw new InvalidContentException(String.format(ERR_SRV_BUNDLE_INVALID_ENTRY, name));
+                }
+                if (!names.add(name)) {
+                    throw new InvalidContentException(String.format(ERR_SRV_BUNDLE_DUPLICATED, name));
+                }
+                if (names.size() > cfg.getMaxEntries()) {
+                    throw new InvalidContentException(String.format(ERR_SRV_BUNDLE_TOO_MANY, cfg.getMaxEntries()));
+                }
+                long available = cfg.getMaxSize().toBytes() - size;
+                long limit = Math.min(cfg.getMaxEntrySize().toBytes(), available);
+                byte[] data = read(zip, limit);
+                if (data == null) {
+                    // Over its own limit or over what is left of the bundle one
+                    throw new InvalidContentException(limit < available
+                        ? String.format(ERR_SRV_BUNDLE_ENTRY_TOO_LARGE, name, cfg.getMaxEntrySize().toBytes())
+                        : String.format(ERR_SRV_BUNDLE_TOO_LARGE, cfg.getMaxSize().toBytes()));
+                }
+                if (data.length == 0) {
+                    throw new InvalidContentException(String.format(ERR_SRV_BUNDLE_INVALID_ENTRY, name));
+                }
+                size += data.length;
+                files.add(new BundleFileDTO(name, data));
+            }
+        } catch (IOException e) {
+            throw new DataProcessingException(ERR_SRV_BUNDLE_READ, e);
+        }
+        if (files.isEmpty()) {
+            throw new InvalidContentException(ERR_SRV_BUNDLE_EMPTY);
+        }
+        return files;
+    }
+
+    /**
+     * Reads the current entry, declared sizes are not trusted
+     * @return The entry bytes, or {@code null} as soon as the limit is exceeded
+     */
+    private byte[] read(InputStream in, long limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[StreamUtils.BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            if (out.size() + n > limit) return null;
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
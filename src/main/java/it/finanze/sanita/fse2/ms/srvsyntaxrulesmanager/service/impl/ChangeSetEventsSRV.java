@@ -0,0 +1,319 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.ChangeSetEventsCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetEventDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SubscriptionUnavailableException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetEventsSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.ChangeSetEventsCFG.CHANGESET_EVENTS_EXECUTOR;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_SRV_EVENTS_FULL;
+
+/**
+ * Pushes the committed changes to the subscribers as server-sent events.
+ * Each subscriber has a bounded queue drained by the executor, one thread at a time, so neither the writers
+ * nor the other subscribers wait for a slow client: a subscriber whose queue is full is dropped
+ * and realigns through the status endpoint once reconnected.
+ * The changes of every replica are published: the local writes right away, the others from the change stream
+ * or by reading the changeset periodically. The same change may come from more than one source,
+ * it is published only once
+ */
+@Slf4j
+@Service
+public class ChangeSetEventsSRV implements IChangeSetEventsSRV {
+
+    public static final String EVENT_READY = "ready";
+    public static final String EVENT_CHANGESET = "changeset";
+
+    public static final String METRIC_EVENTS_SUBSCRIBERS = "schema.changeset.events.subscribers";
+    public static final String METRIC_EVENTS_REJECTED = "schema.changeset.events.rejected";
+    public static final String METRIC_EVENTS_DROPPED = "schema.changeset.events.dropped";
+
+    private static final String HEARTBEAT = "keep-alive";
+    private static final String KEY_INSERTION = "+";
+    private static final String KEY_DELETION = "-";
+
+    private final ExecutorService executor;
+    private final IChangeSetRepo<SchemaMetadataETY> changes;
+    private final ObjectMapper mapper;
+    private final ChangeSetEventsCFG cfg;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    /**
+     * Reserved before registering, the limit is never exceeded by concurrent subscriptions
+     */
+    private final AtomicInteger count = new AtomicInteger();
+    /**
+     * Time each change has been published at, kept as long as it can be read again
+     */
+    private final Map<String, Long> published = new ConcurrentHashMap<>();
+    /**
+     * Start of the previous read of the changeset, accessed by the scheduler only
+     */
+    private long polled = System.currentTimeMillis();
+
+    private final Counter rejected;
+    private final Counter dropped;
+
+    @Autowired
+    public ChangeSetEventsSRV(
+        @Qualifier(CHANGESET_EVENTS_EXECUTOR) ExecutorService executor,
+        IChangeSetRepo<SchemaMetadataETY> changes,
+        ObjectMapper mapper,
+        ChangeSetEventsCFG cfg,
+        MeterRegistry registry
+    ) {
+        this.executor = executor;
+        this.changes = changes;
+        this.mapper = mapper;
+        this.cfg = cfg;
+        this.rejected = Counter.builder(METRIC_EVENTS_REJECTED).register(registry);
+        this.dropped = Counter.builder(METRIC_EVENTS_DROPPED).register(registry);
+        Gauge.builder(METRIC_EVENTS_SUBSCRIBERS, this, ChangeSetEventsSRV::subscribers).register(registry);
+    }
+
+    @Override
+    public SseEmitter subscribe() throws SubscriptionUnavailableException {
+        if (count.incrementAndGet() > cfg.getMaxSubscribers()) {
+            count.decrementAndGet();
+            rejected.increment();
+            throw new SubscriptionUnavailableException(ERR_SRV_EVENTS_FULL, cfg.getRetryAfter());
+        }
+        SseEmitter emitter = new SseEmitter(cfg.getTimeout());
+        Subscriber subscriber = new Subscriber(emitter, cfg.getQueueSize());
+        emitter.onCompletion(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        emitter.onTimeout(() -> {
+            subscriber.close();
+            emitter.complete();
+        });
+        subscribers.add(subscriber);
+        // Changes committed from now on are pushed, the previous ones are read from the status endpoint
+        long now = System.currentTimeMillis();
+        subscriber.offer(new Event(String.valueOf(now), EVENT_READY, String.valueOf(now)));
+        return emitter;
+    }
+
+    @Override
+    public void publish(List<ChangeSetDTO> insertions, List<ChangeSetDTO> deletions) {
+        push(insertions, deletions);
+    }
+
+    @Override
+    public int reconcile() throws OperationException {
+        long started = System.currentTimeMillis();
+        if (subscribers.isEmpty()) {
+            polled = started;
+            return 0;
+        }
+        // Writes are stamped before the commit and by the clock of each replica, the recent ones are read again.
+        // After a pause, e.g. while the change stream was active, it does not go back further than two intervals
+        Date since = new Date(Math.max(polled, started - 2 * cfg.getPollInterval()) - cfg.getClockSkew());
+        List<ChangeSetDTO> insertions = toChangeset(changes.getInsertions(since));
+        List<ChangeSetDTO> deletions = toChangeset(changes.getDeletions(since));
+        polled = started;
+        return push(insertions, deletions);
+    }
+
+    @Override
+    public void heartbeat() {
+        broadcast(new Event(null, null, null));
+        // Past the last read that could return them again
+        long expired = System.currentTimeMillis() - 2 * (cfg.getPollInterval() + cfg.getClockSkew());
+        published.values().removeIf(at -> at < expired);
+    }
+
+    @Override
+    public int subscribers() {
+        return count.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : new ArrayList<>(subscribers)) subscriber.evict();
+    }
+
+    /**
+     * @return The number of changes not published before
+     */
+    private int push(List<ChangeSetDTO> insertions, List<ChangeSetDTO> deletions) {
+        if (subscribers.isEmpty()) return 0;
+        List<ChangeSetDTO> inserted = unseen(insertions, KEY_INSERTION);
+        List<ChangeSetDTO> deleted = unseen(deletions, KEY_DELETION);
+        if (inserted.isEmpty() && deleted.isEmpty()) return 0;
+        Date now = new Date();
+        String data;
+        try {
+            // Serialized once for every subscriber
+            data = mapper.writeValueAsString(new ChangeSetEventDTO(now, inserted, deleted));
+        } catch (JsonProcessingException e) {
+            log.error("Unable to serialize the changeset event, subscribers will realign on reconnection", e);
+            return 0;
+        }
+        broadcast(new Event(String.valueOf(now.getTime()), EVENT_CHANGESET, data));
+        return inserted.size() + deleted.size();
+    }
+
+    private List<ChangeSetDTO> unseen(List<ChangeSetDTO> items, String kind) {
+        long now = System.currentTimeMillis();
+        List<ChangeSetDTO> unseen = new ArrayList<>(items.size());
+        for (ChangeSetDTO item : items) {
+            if (published.putIfAbsent(kind + item.getId(), now) == null) unseen.add(item);
+        }
+        return unseen;
+    }
+
+    private static List<ChangeSetDTO> toChangeset(List<SchemaMetadataETY> entities) {
+        return entities.stream().map(MiscUtility::toChangeset).collect(Collectors.toList());
+    }
+
+    private void broadcast(Event event) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(event)) {
+                // Not reading fast enough, the missed events would be lost anyway
+                dropped.increment();
+                log.warn("Dropping changeset subscriber, {} events pending", cfg.getQueueSize());
+                subscriber.evict();
+            }
+        }
+    }
+
+    private static final class Event {
+        private final String id;
+        private final String name;
+        private final String data;
+
+        private Event(String id, String name, String data) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+        }
+
+        private SseEventBuilder toBuilder() {
+            if (name == null) return SseEmitter.event().comment(HEARTBEAT);
+            return SseEmitter.event().id(id).name(name).data(data);
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter, int capacity) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private boolean offer(Event event) {
+            if (closed.get()) return true;
+            if (!queue.offer(event)) return false;
+            schedule();
+            return true;
+        }
+
+        /**
+         * Unregisters the subscriber, the emitter is completed by the caller if needed
+         * @return false if already closed
+         */
+        private boolean close() {
+            if (!closed.compareAndSet(false, true)) return false;
+            subscribers.remove(this);
+            count.decrementAndGet();
+            return true;
+        }
+
+        /**
+         * Closes the subscription from the executor, the emitter may be busy writing to a slow client
+         */
+        private void evict() {
+            if (close()) schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Shutting down, or as many clients stalled as the subscriptions allowed
+                scheduled.set(false);
+                close();
+                complete();
+            }
+        }
+
+        private void drain() {
+            boolean failed = false;
+            try {
+                Event event;
+                while (!closed.get() && (event = queue.poll()) != null) {
+                    emitter.send(event.toBuilder());
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Connection lost or already completed, the container notifies the emitter
+                log.debug("Changeset subscriber disconnected: {}", e.getMessage());
+                failed = true;
+                close();
+            } finally {
+                scheduled.set(false);
+            }
+            if (closed.get()) {
+                queue.clear();
+                if (!failed) complete();
+            } else if (!queue.isEmpty()) {
+                // Offered while leaving the loop
+                schedule();
+            }
+        }
+
+        private void complete() {
+            try {
+                emitter.complete();
+            } catch (IllegalStateException e) {
+                log.debug("Changeset subscriber already completed");
+            }
+        }
+    }
+}
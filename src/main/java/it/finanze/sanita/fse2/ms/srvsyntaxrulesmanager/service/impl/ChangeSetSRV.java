@@ -11,9 +11,13 @@
  */
 package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl;
 
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.ChangeSetEventsCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.ChangeSetCursorDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.ChangeSetPageDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.InvalidPageTokenException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
-import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetSRV;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility;
@@ -24,13 +28,17 @@ import org.springframework.stereotype.Service;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class ChangeSetSRV implements IChangeSetSRV {
 
     @Autowired
-    private IChangeSetRepo<SchemaETY> repository;
+    private IChangeSetRepo<SchemaMetadataETY> repository;
+
+    @Autowired
+    private ChangeSetEventsCFG cfg;
 
     /**
      * Retrieves the latest insertions according to the given timeframe
@@ -42,7 +50,7 @@ public class ChangeSetSRV implements IChangeSetSRV {
     @Override
     public List<ChangeSetDTO> getInsertions(@Nullable Date lastUpdate) throws OperationException {
         // Retrieve insertions
-        List<SchemaETY> insertions;
+        List<SchemaMetadataETY> insertions;
         // Verify no null value has been provided
         if(lastUpdate != null) {
             insertions = repository.getInsertions(lastUpdate);
@@ -67,13 +75,47 @@ public class ChangeSetSRV implements IChangeSetSRV {
         // Verify no null value has been provided
         if(lastUpdate != null) {
             // Retrieve deletions
-            List<SchemaETY> deletions = repository.getDeletions(lastUpdate);
+            List<SchemaMetadataETY> deletions = repository.getDeletions(lastUpdate);
             // Iterate and populate
             changes = deletions.stream().map(MiscUtility::toChangeset).collect(Collectors.toList());
         }
         return changes;
     }
 
+    /**
+     * Streams the latest insertions according to the given timeframe
+     *
+     * @param lastUpdate The timeframe to consider while calculating
+     * @param consumer The consumer receiving each missing insertion
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public void streamInsertions(@Nullable Date lastUpdate, Consumer<ChangeSetDTO> consumer) throws OperationException {
+        // Map each item as soon as it leaves the cursor
+        Consumer<SchemaMetadataETY> mapper = e -> consumer.accept(MiscUtility.toChangeset(e));
+        // Verify no null value has been provided
+        if(lastUpdate != null) {
+            repository.streamInsertions(lastUpdate, mapper);
+        } else {
+            repository.streamEveryActiveDocument(mapper);
+        }
+    }
+
+    /**
+     * Streams the latest deletions according to the given timeframe
+     *
+     * @param lastUpdate The timeframe to consider while calculating
+     * @param consumer The consumer receiving each missing deletion
+     * @throws OperationException If a data-layer error occurs
+     */
+    @Override
+    public void streamDeletions(@Nullable Date lastUpdate, Consumer<ChangeSetDTO> consumer) throws OperationException {
+        // Nothing has been deleted on a full alignment
+        if(lastUpdate != null) {
+            repository.streamDeletions(lastUpdate, e -> consumer.accept(MiscUtility.toChangeset(e)));
+        }
+    }
+
     /**
      * Retrieves the expected collection size after the alignment
      *
@@ -84,4 +126,45 @@ public class ChangeSetSRV implements IChangeSetSRV {
     public long getCollectionSize() throws OperationException {
         return repository.getActiveDocumentCount();
     }
+
+    /**
+     * Retrieves a page of the changes according to the given timeframe,
+     * every page is read against the snapshot taken by the first one
+     *
+     * @param lastUpdate The timeframe to consider while calculating
+     * @param limit The maximum number of items
+     * @param token The token returned by the previous page, null on the first one
+     * @return The page with the token of the following one
+     * @throws OperationException If a data-layer error occurs
+     * @throws InvalidPageTokenException If the token is malformed or issued for another lastUpdate
+     */
+    @Override
+    public ChangeSetPageDTO getPage(@Nullable Date lastUpdate, int limit, @Nullable String token) throws OperationException, InvalidPageTokenException {
+        ChangeSetCursorDTO cursor;
+        if (token != null) {
+            cursor = ChangeSetCursorDTO.decode(token, lastUpdate);
+        } else {
+            // Pinned in the past, writes stamped before it but not yet committed become visible while paging.
+            // Changes happening after it are returned by the next alignment
+            Date snapshot = new Date(System.currentTimeMillis() - cfg.getClockSkew());
+            cursor = new ChangeSetCursorDTO(lastUpdate, snapshot, repository.getActiveDocumentCount(snapshot), null, null);
+        }
+        // One more item tells if another page follows
+        List<SchemaMetadataETY> items = repository.getChangesPage(
+            cursor.getLastUpdate(), cursor.getSnapshot(), cursor.getAfterDate(), cursor.getAfterId(), limit + 1
+        );
+        String next = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            SchemaMetadataETY last = items.get(limit - 1);
+            next = cursor.next(last.getLastUpdateDate(), last.getId()).encode();
+        }
+        // Split by state, the deletions unknown to the client have been skipped by the query
+        List<ChangeSetDTO> insertions = new ArrayList<>();
+        List<ChangeSetDTO> deletions = new ArrayList<>();
+        for (SchemaMetadataETY item : items) {
+            (item.isDeleted() ? deletions : insertions).add(MiscUtility.toChangeset(item));
+        }
+        return new ChangeSetPageDTO(cursor.getLastUpdate(), cursor.getSnapshot(), insertions, deletions, cursor.getCollectionSize(), next);
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.mongo.MongoCompactionCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ICompactionRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ICompactionSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+public class CompactionSRV implements ICompactionSRV {
+
+    public static final String METRIC_COMPACTION_PURGED = "schema.compaction.purged";
+
+    private final ICompactionRepo repository;
+    private final MongoCompactionCFG cfg;
+    private final ISchemaETagSRV etags;
+    private final Counter purged;
+
+    @Autowired
+    public CompactionSRV(ICompactionRepo repository, MongoCompactionCFG cfg, ISchemaETagSRV etags, MeterRegistry registry) {
+        this.repository = repository;
+        this.cfg = cfg;
+        this.etags = etags;
+        this.purged = Counter.builder(METRIC_COMPACTION_PURGED).register(registry);
+    }
+
+    @Override
+    public long compact() throws OperationException {
+        long now = System.currentTimeMillis();
+        // Tombstones required by the changeset window are never touched
+        Date tombstones = new Date(now - TimeUnit.DAYS.toMillis(cfg.getTombstoneDays()));
+        Date expired = cfg.getMaxAgeDays() > 0 ? new Date(now - TimeUnit.DAYS.toMillis(cfg.getMaxAgeDays())) : null;
+        List<String> ids = repository.findPurgeableIds(tombstones, expired, cfg.getKeepVersions());
+        log.debug("Purgeable documents n.: {}", ids.size());
+        // Remove in batches, each one is a single round trip
+        long removed = 0;
+        for (int i = 0; i < ids.size(); i += cfg.getBatchSize()) {
+            long count = repository.purge(ids.subList(i, Math.min(i + cfg.getBatchSize(), ids.size())));
+            purged.increment(count);
+            removed += count;
+        }
+        // Listings including deleted documents changed
+        if (removed > 0) etags.invalidateAll();
+        return removed;
+    }
+}
@@ -11,21 +11,38 @@
  */
 package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaContentDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDocumentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaFileDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaUpdateDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.error.ErrorInstance.Fields;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.*;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaContentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IActiveDocsCacheSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetEventsSRV;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IDocumentSRV;
-import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaValidator;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaValidatorSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -35,9 +52,50 @@ import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.L
 @Slf4j
 public class DocumentSRV implements IDocumentSRV {
 
+    public static final String METRIC_PATCH = "schema.patch";
+    public static final String TAG_PHASE = "phase";
+    public static final String PHASE_READ = "read";
+    public static final String PHASE_VALIDATE = "validate";
+    public static final String PHASE_DIFF = "diff";
+    public static final String PHASE_WRITE = "write";
+
     @Autowired
     IDocumentRepo repository;
 
+    @Autowired
+    private ISchemaValidatorSRV validator;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private ISchemaContentRepo content;
+
+    @Autowired
+    private ISchemaETagSRV etags;
+
+    @Autowired
+    private IActiveDocsCacheSRV cache;
+
+    @Autowired
+    private IChangeSetEventsSRV events;
+
+    private Timer readTimer;
+    private Timer validateTimer;
+    private Timer diffTimer;
+    private Timer writeTimer;
+
+    /**
+     * Registers the PATCH phase timers once, so that each request only records on them
+     */
+    @PostConstruct
+    void registerTimers() {
+        readTimer = timer(PHASE_READ);
+        validateTimer = timer(PHASE_VALIDATE);
+        diffTimer = timer(PHASE_DIFF);
+        writeTimer = timer(PHASE_WRITE);
+    }
+
     /**
      * Retrieves the document by identifier
      *
@@ -48,28 +106,54 @@ public class DocumentSRV implements IDocumentSRV {
      */
     @Override
     public SchemaDocumentDTO findDocById(String id) throws OperationException, DocumentNotFoundException {
-        SchemaETY doc = repository.findDocById(id);
+        SchemaETY doc = findDoc(id);
+        if (doc == null) {
+            throw new DocumentNotFoundException(ERR_SRV_DOC_NOT_FOUND);
+        }
+        return toDTO(doc);
+    }
+
+    /**
+     * Retrieves the raw content of the document by identifier
+     *
+     * @param id The document id
+     * @return The file matching the identifier, its content is opened only when consumed
+     * @throws OperationException        If a data-layer error occurs
+     * @throws DocumentNotFoundException If no document matching the identifier is found
+     */
+    @Override
+    public SchemaFileDTO findDocContentById(String id) throws OperationException, DocumentNotFoundException {
+        SchemaETY doc = findDoc(id);
         if (doc == null) {
             throw new DocumentNotFoundException(ERR_SRV_DOC_NOT_FOUND);
         }
-        return SchemaDocumentDTO.fromEntity(doc);
+        return new SchemaFileDTO(doc.getNameSchema(), doc.digest(), doc.size(), toContent(doc));
     }
 
     /**
      * Retrieves the documents by their extension identifier
      * @param extension The extension id
+     * @param opts The output options, binary content is not loaded if not required
      * @param includeDeleted
      * @return The documents matching the extension identifier
      * @throws OperationException If a data-layer error occurs
      * @throws ExtensionNotFoundException If no documents matching the extension are found
      */
     @Override
-    public List<SchemaDocumentDTO> findDocsByExtensionId(String extension, boolean includeDeleted) throws OperationException, ExtensionNotFoundException {
-        List<SchemaETY> docs = repository.findDocsByExtensionId(extension, includeDeleted);
+    public List<SchemaDocumentDTO> findDocsByExtensionId(String extension, SchemaDocumentDTO.Options opts, boolean includeDeleted) throws OperationException, ExtensionNotFoundException {
+        List<SchemaDocumentDTO> docs;
+        if (opts.isBinary()) {
+            // Active bundles are the hot path of the validators
+            List<SchemaETY> entities = includeDeleted ? repository.findDocsByExtensionId(extension, true) : cache.getActiveDocs(extension);
+            docs = entities.stream().map(this::toDTO).collect(Collectors.toList());
+        } else {
+            // Skip both the binary transfer and its encoding
+            docs = repository.findDocsMetadataByExtensionId(extension, includeDeleted).stream().map(SchemaDocumentDTO::fromMetadata).collect(Collectors.toList());
+        }
         if (CollectionUtils.isEmpty(docs)) {
             throw new ExtensionNotFoundException(ERR_SRV_EXT_NOT_FOUND);
         }
-        return docs.stream().map(SchemaDocumentDTO::fromEntity).collect(Collectors.toList());
+        return docs;
     }
 
     /**
@@ -85,7 +169,7 @@ public class DocumentSRV implements IDocumentSRV {
      */
     @Override
     public int insertDocsByExtensionId(String root, String extension, MultipartFile[] files)
-        throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, SchemaValidatorException {
+        throws OperationException, ExtensionAlreadyExistsException, DataProcessingException, RootNotValidException, SchemaValidatorException, ValidationUnavailableException {
 
         List<String> filenames = Stream.of(files).map(MultipartFile::getOriginalFilename).collect(Collectors.toList());
         Optional<String> rootName = filenames.stream().filter(root::equals).findFirst();
@@ -98,7 +182,7 @@ public class DocumentSRV implements IDocumentSRV {
             throw new ExtensionAlreadyExistsException(ERR_SRV_EXT_ALREADY_ESISTS);
         }
 
-        new SchemaValidator(root).verify(files);
+        validator.verify(root, files);
 
         List<SchemaETY> entities = new ArrayList<>();
         for (MultipartFile f : files) {
@@ -106,7 +190,14 @@ public class DocumentSRV implements IDocumentSRV {
             entities.add(SchemaETY.fromMultipart(f, extension, isRoot));
         }
 
-        List<SchemaETY> inserted = repository.insertDocsByExtensionId(entities);
+        List<SchemaETY> inserted;
+        try {
+            inserted = repository.insertDocsByExtensionId(entities);
+        } finally {
+            etags.invalidate(extension);
+            cache.invalidate(extension);
+        }
+        publish(inserted, Collections.emptyList());
         return inserted != null ? inserted.size() : 0;
     }
 
@@ -115,14 +206,14 @@ public class DocumentSRV implements IDocumentSRV {
      * @param root The root identifier of schema
      * @param extension The extension id
      * @param files   The documents to use as replacement of the old ones
-     * @return Number of schema updated.
+     * @return Number of schema updated and the files identical to the active ones, which are left untouched
      * @throws OperationException        If a data-layer error occurs
      * @throws ExtensionNotFoundException  If no documents matching the extension are found
      * @throws DocumentNotFoundException If at least one document to be replaced is not found inside the collection
      * @throws DataProcessingException If unable to convert the input raw data into a binary representation
      */
     @Override
-    public int updateDocsByExtensionId(String root, String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DataProcessingException, DataIntegrityException, RootNotValidException, SchemaValidatorException {
+    public SchemaUpdateDTO updateDocsByExtensionId(String root, String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DataProcessingException, DataIntegrityException, RootNotValidException, SchemaValidatorException, ValidationUnavailableException {
         List<String> filenames = Stream.of(files).map(MultipartFile::getOriginalFilename).collect(Collectors.toList());
         Optional<String> rootName = filenames.stream().filter(root::equals).findFirst();
 
@@ -130,27 +221,51 @@ public class DocumentSRV implements IDocumentSRV {
             throw new RootNotValidException(String.format(ERR_SRV_ROOT_NOT_FOUND, root, filenames), Fields.ROOT);
         }
 
-        if (!repository.isExtensionInserted(extension)) {
+        // Digests are enough to spot the unchanged files
+        List<SchemaMetadataETY> docs = repository.findDocsMetadataByExtensionId(extension, false);
+        if (CollectionUtils.isEmpty(docs)) {
             throw new ExtensionNotFoundException(ERR_SRV_EXT_NOT_FOUND);
         }
         // Verify files
-        new SchemaValidator(root).verify(files);
+        validator.verify(root, files);
 
+        // Duplicated active rows left by concurrent writes are not kept, so the replace retires them
+        Map<String, SchemaMetadataETY> current = docs.stream().collect(Collectors.toMap(SchemaMetadataETY::getNameSchema, entity -> entity, (a, b) -> a));
+        List<String> kept = new ArrayList<>();
+        List<String> unchanged = new ArrayList<>();
         List<SchemaETY> toInsert = new ArrayList<>();
 
         for (MultipartFile f : files) {
             boolean isRoot = root.equals(f.getOriginalFilename());
             SchemaETY newest = SchemaETY.fromMultipart(f, extension, isRoot);
-            toInsert.add(newest);
+            SchemaMetadataETY old = current.get(newest.getNameSchema());
+            // Same bytes and same role, keep the active version
+            if (old != null && newest.getContentHash().equals(old.getContentHash()) && Objects.equals(isRoot, old.getRootSchema())) {
+                kept.add(old.getId());
+                unchanged.add(newest.getNameSchema());
+            } else {
+                toInsert.add(newest);
+            }
         }
 
-
-        List<SchemaETY> updatedSchema = repository.deleteDocsByExtensionId(extension);
-        if (!CollectionUtils.isEmpty(updatedSchema)) {
-            log.debug("Number of deleted schema: {}", updatedSchema.size());
+        // Nothing to insert and nothing to remove
+        if (toInsert.isEmpty() && kept.size() == docs.size()) {
+            return new SchemaUpdateDTO(0, unchanged);
         }
-        List<SchemaETY> inserted = repository.insertDocsByExtensionId(toInsert);
-        return inserted != null ? inserted.size() : 0;
+        // Soft-delete the current files and insert the new ones atomically
+        List<SchemaETY> inserted;
+        try {
+            inserted = repository.replaceDocsByExtensionId(extension, kept, toInsert);
+        } finally {
+            etags.invalidate(extension);
+            cache.invalidate(extension);
+        }
+        // Every active file has been soft-deleted, except the unchanged ones
+        publish(inserted, current.values().stream()
+            .filter(old -> !kept.contains(old.getId()))
+            .map(MiscUtility::toChangeset)
+            .collect(Collectors.toList()));
+        return new SchemaUpdateDTO(inserted != null ? inserted.size() : 0, unchanged);
     }
 
     /**
@@ -165,7 +280,14 @@ public class DocumentSRV implements IDocumentSRV {
         // Verify we are trying to delete something that exists
         if(repository.isExtensionInserted(extension)) {
             // Let's remove all the documents matching the version
-            List<SchemaETY> removed = repository.deleteDocsByExtensionId(extension);
+            List<SchemaETY> removed;
+            try {
+                removed = repository.deleteDocsByExtensionId(extension);
+            } finally {
+                etags.invalidate(extension);
+                cache.invalidate(extension);
+            }
+            publish(Collections.emptyList(), toChangeset(removed));
             return removed != null ? removed.size() : 0;
         } else{
             // Let the caller know about it
@@ -173,49 +295,184 @@ public class DocumentSRV implements IDocumentSRV {
         }
     }
 
+    /**
+     * Replace or add the given documents to the extension, the active bundle is read once
+     * and the changes are applied with a single bulk write
+     * @param extension The extension id
+     * @param files The documents to add or to use as replacement of the old ones
+     * @return Number of documents inserted and the files identical to the active ones, which are left untouched
+     * @throws OperationException If a data-layer error occurs
+     * @throws ExtensionNotFoundException If no documents matching the extension are found
+     * @throws DocumentNotFoundException If the root document of the extension cannot be found
+     * @throws DataIntegrityException If the number of documents replaced does not match the expected ones
+     */
     @Override
-    public int patchDocsByExtensionId(String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException, DataIntegrityException, SchemaValidatorException {
-        if (!repository.isExtensionInserted(extension)) {
+    public SchemaUpdateDTO patchDocsByExtensionId(String extension, MultipartFile[] files) throws OperationException, ExtensionNotFoundException, DocumentNotFoundException, DataProcessingException, DataIntegrityException, SchemaValidatorException, ValidationUnavailableException {
+        // Get current docs, an empty bundle means the extension does not exist
+        long started = System.nanoTime();
+        List<SchemaETY> docs = repository.getInsertedDocumentsByExtension(extension);
+        record(readTimer, started);
+        if (CollectionUtils.isEmpty(docs)) {
             throw new ExtensionNotFoundException(ERR_SRV_EXT_NOT_FOUND);
         }
-        // Get current docs
-        List<SchemaETY> docs = repository.getInsertedDocumentsByExtension(extension);
         // Get root entity
         Optional<String> root = docs.stream().filter(SchemaETY::getRootSchema).map(SchemaETY::getNameSchema).findFirst();
         if(!root.isPresent()) throw new DocumentNotFoundException(ERR_SRV_ROOT_DOC_NOT_FOUND);
         // Now convert to map <filename, byte-data>
-        Map<String, byte[]> map = docs.stream().collect(Collectors.toMap(SchemaETY::getNameSchema, entity -> entity.getContentSchema().getData()));
+        Map<String, byte[]> map = new HashMap<>();
+        for (SchemaETY entity : docs) {
+            map.put(entity.getNameSchema(), entity.isOffloaded() ? entity.decode(content.read(entity.getContentRef())) : entity.content());
+        }
         // Now verify
-        new SchemaValidator(root.get()).verify(map, files);
-
-        List<String> filenames = Arrays.stream(files).map(MultipartFile::getOriginalFilename).collect(Collectors.toList());
-        List<SchemaETY> deletedFromDB = repository.deleteDocsByExtensionIdAndFilenames(extension, filenames);
-        Map<String, SchemaETY> toReplaceFromDB = deletedFromDB.stream().collect(Collectors.toMap(SchemaETY::getNameSchema, entity -> entity));
-
-        // Merge old and new files
-        int replacedNumber = 0;
-        log.debug("Old files n.: {}", toReplaceFromDB.size());
-        log.debug("Received files: n.: {}", files.length);
+        started = System.nanoTime();
+        try {
+            validator.verify(root.get(), map, files);
+        } finally {
+            record(validateTimer, started);
+        }
+        // Compute the diff against the bundle already in memory
+        started = System.nanoTime();
+        Map<String, List<SchemaETY>> current = docs.stream().collect(Collectors.groupingBy(SchemaETY::getNameSchema));
+        List<SchemaETY> replaced = new ArrayList<>();
+        List<SchemaETY> toInsert = new ArrayList<>();
+        List<String> unchanged = new ArrayList<>();
+        int updated = 0;
         for (MultipartFile f : files) {
-            String filename = f.getOriginalFilename();
-            if (toReplaceFromDB.containsKey(filename)) {
-                SchemaETY old = toReplaceFromDB.get(filename);
+            List<SchemaETY> versions = current.get(f.getOriginalFilename());
+            if (versions != null) {
+                SchemaETY old = versions.get(0);
                 SchemaETY newest = SchemaETY.fromMultipart(f, extension, old.getRootSchema());
-                toReplaceFromDB.put(old.getNameSchema(), newest);
-                replacedNumber++;
+                // Same bytes, keep the active version unless concurrent writes left duplicates behind
+                if (versions.size() == 1 && newest.getContentHash().equals(old.digest())) {
+                    unchanged.add(newest.getNameSchema());
+                } else {
+                    replaced.addAll(versions);
+                    toInsert.add(newest);
+                    updated++;
+                }
             } else {
-                SchemaETY newest = SchemaETY.fromMultipart(f, extension, false);
-                toReplaceFromDB.put(filename, newest);
+                toInsert.add(SchemaETY.fromMultipart(f, extension, false));
             }
         }
-        log.debug("Final n. {}, initialDB: {}, replaced: {}", toReplaceFromDB.size(), toReplaceFromDB.size(), replacedNumber);
-
-        List<SchemaETY> replacedSchema = repository.insertDocsByExtensionId(new ArrayList<>(toReplaceFromDB.values()));
-        return replacedSchema != null ? replacedSchema.size() : 0;
+        record(diffTimer, started);
+        log.debug("Received files n.: {}, replaced: {}, added: {}, unchanged: {}", files.length, updated, toInsert.size() - updated, unchanged.size());
+        // Nothing to write
+        if (toInsert.isEmpty()) {
+            return new SchemaUpdateDTO(0, unchanged);
+        }
+        // Apply soft-deletes and inserts at once
+        started = System.nanoTime();
+        List<SchemaETY> inserted;
+        try {
+            inserted = repository.patchDocsByExtensionId(replaced, toInsert);
+        } finally {
+            etags.invalidate(extension);
+            cache.invalidate(extension);
+            record(writeTimer, started);
+        }
+        publish(inserted, toChangeset(replaced));
+        return new SchemaUpdateDTO(inserted != null ? inserted.size() : 0, unchanged);
     }
 
     @Override
     public List<SchemaDTO> getExtensions(SchemaDocumentDTO.Options opts, boolean deleted) throws OperationException {
-        return repository.groupByExtension(deleted).stream().map(e -> SchemaDTO.fromExtension(e, opts)).collect(Collectors.toList());
+        if (!opts.isBinary()) {
+            // Skip both the binary transfer and its encoding
+            return repository.groupMetadataByExtension(deleted).stream().map(e -> SchemaDTO.fromMetadata(e, opts)).collect(Collectors.toList());
+        }
+        return repository.groupByExtension(deleted).stream().map(e -> SchemaDTO.fromExtension(e, this::toDTO, opts)).collect(Collectors.toList());
+    }
+
+    /**
+     * Maps the entity, contents stored on GridFS are opened only when serialized
+     * @param e The entity
+     * @return The document
+     */
+    private SchemaDocumentDTO toDTO(SchemaETY e) {
+        return SchemaDocumentDTO.fromEntity(e, toContent(e));
+    }
+
+    /**
+     * Looks up the document among the cached ones first, deleted documents are never cached
+     * @param id The document id
+     * @return The document or {@code null} if it does not exist
+     * @throws OperationException If a data-layer error occurs
+     */
+    private SchemaETY findDoc(String id) throws OperationException {
+        SchemaETY doc = cache.getActiveDoc(id);
+        return doc != null ? doc : repository.findDocById(id);
+    }
+
+    /**
+     * Wraps the entity content, stored contents are opened and inflated only when written
+     * @param e The entity
+     * @return The content
+     */
+    private SchemaContentDTO toContent(SchemaETY e) {
+        if (!e.isOffloaded()) {
+            if (e.getContentSchema() != null) return SchemaContentDTO.inline(e);
+            // Cached entity, the content is kept off-heap
+            SchemaContentDTO resident = cache.getContent(e);
+            if (resident != null) return resident;
+            // Evicted in the meantime
+            String id = e.getId();
+            return SchemaContentDTO.of(() -> reload(id));
+        }
+        String ref = e.getContentRef();
+        return SchemaContentDTO.of(() -> {
+            InputStream in;
+            try {
+                in = content.open(ref);
+            } catch (OperationException ex) {
+                throw new DataProcessingException(String.format(ERR_REP_CONTENT_OPEN, ref), ex);
+            }
+            try {
+                return e.decode(in);
+            } catch (DataProcessingException ex) {
+                in.close();
+                throw ex;
+            }
+        });
+    }
+
+    /**
+     * Reads the content of an evicted document again from the database
+     * @param id The document id
+     * @return The content stream
+     * @throws IOException If the document does not exist anymore or cannot be read
+     */
+    private InputStream reload(String id) throws IOException {
+        SchemaETY doc;
+        try {
+            doc = repository.findDocById(id);
+        } catch (OperationException ex) {
+            throw new DataProcessingException(ERR_SRV_DOC_RELOAD, ex);
+        }
+        if (doc == null) {
+            throw new DataProcessingException(ERR_SRV_DOC_RELOAD, new DocumentNotFoundException(ERR_SRV_DOC_NOT_FOUND));
+        }
+        return toContent(doc).open();
+    }
+
+    /**
+     * Pushes the committed changes to the changeset subscribers
+     * @param inserted The inserted documents, if any
+     * @param deletions The soft-deleted documents
+     */
+    private void publish(List<SchemaETY> inserted, List<ChangeSetDTO> deletions) {
+        events.publish(toChangeset(inserted), deletions);
+    }
+
+    private static List<ChangeSetDTO> toChangeset(List<SchemaETY> entities) {
+        if (entities == null) return Collections.emptyList();
+        return entities.stream().map(MiscUtility::toChangeset).collect(Collectors.toList());
+    }
+
+    private Timer timer(String phase) {
+        return Timer.builder(METRIC_PATCH).tag(TAG_PHASE, phase).register(registry);
+    }
+
+    private static void record(Timer timer, long started) {
+        timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
     }
 }
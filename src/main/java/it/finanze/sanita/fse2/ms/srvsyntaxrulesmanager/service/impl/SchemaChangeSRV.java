@@ -0,0 +1,239 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.mongo.MongoChangeStreamCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaChangeRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IActiveDocsCacheSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetEventsSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaChangeSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_FILENAME;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_ID;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_TYPE_ID_EXT;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.FIELD_DELETED;
+
+/**
+ * Listens to the changes of the schema collection and drops the affected extensions from the local caches,
+ * so the writes of other replicas are seen within the stream latency.
+ * Inserted and soft-deleted documents are published to the changeset subscribers as well, one event for each batch.
+ * The resume token is kept in memory only: the caches start empty with the process,
+ * so a reconnection is the only case where the missed changes matter
+ */
+@Slf4j
+@Service
+public class SchemaChangeSRV implements ISchemaChangeSRV, SmartLifecycle {
+
+    /**
+     * Change streams require a replica set or a sharded cluster
+     */
+    private static final int ERR_NOT_REPLICA_SET = 40573;
+    /**
+     * The resume token is not in the oplog anymore
+     */
+    private static final int ERR_HISTORY_LOST = 286;
+    private static final int ERR_STREAM_FATAL = 280;
+
+    private final ISchemaChangeRepo repository;
+    private final IActiveDocsCacheSRV cache;
+    private final ISchemaETagSRV etags;
+    private final IChangeSetEventsSRV events;
+    private final MongoChangeStreamCFG cfg;
+
+    private volatile boolean running;
+    private volatile boolean active;
+    private Thread listener;
+    /**
+     * Accessed by the listener thread only
+     */
+    private BsonDocument token;
+    /**
+     * Changes of the current batch, accessed by the listener thread only
+     */
+    private final List<ChangeSetDTO> insertions = new ArrayList<>();
+    private final List<ChangeSetDTO> deletions = new ArrayList<>();
+
+    @Autowired
+    public SchemaChangeSRV(ISchemaChangeRepo repository, IActiveDocsCacheSRV cache, ISchemaETagSRV etags, IChangeSetEventsSRV events, MongoChangeStreamCFG cfg) {
+        this.repository = repository;
+        this.cache = cache;
+        this.etags = etags;
+        this.events = events;
+        this.cfg = cfg;
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!cfg.isEnabled() || running) return;
+        running = true;
+        listener = new Thread(this::listen, "schema-change-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+            listener = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = repository.watch(token)) {
+                // Nothing to resume from, whatever happened before is unknown
+                if (token == null) drop();
+                active = true;
+                log.info("Listening to schema changes");
+                boolean open = true;
+                while (running && open) {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null) open = apply(change);
+                    // Nothing left in the batch, a write of many documents becomes a single event
+                    else publish();
+                    // Advanced on idle batches as well, resuming never rescans the oplog
+                    if (open && cursor.getResumeToken() != null) token = cursor.getResumeToken();
+                }
+            } catch (OperationException e) {
+                if (!recover(e.getCause())) return;
+            } catch (MongoException e) {
+                if (!recover(e)) return;
+            } finally {
+                active = false;
+                // Committed anyway
+                publish();
+            }
+            pause();
+        }
+    }
+
+    /**
+     * Invalidates the caches according to the change
+     * @param change The change
+     * @return false if the stream has been invalidated and must be reopened
+     */
+    private boolean apply(ChangeStreamDocument<Document> change) {
+        switch (change.getOperationType()) {
+            case INSERT:
+            case UPDATE:
+            case REPLACE:
+                Document doc = change.getFullDocument();
+                String extension = doc != null ? doc.getString(FIELD_TYPE_ID_EXT) : null;
+                log.debug("Schema change {} on extension {}", change.getOperationType(), extension);
+                if (extension != null) {
+                    cache.invalidate(extension);
+                    etags.invalidate(extension);
+                    track(change, doc);
+                } else {
+                    // Already gone when looked up
+                    drop();
+                }
+                return true;
+            case DELETE:
+                // Only deleted documents are purged, active ones are not affected
+                etags.invalidateAll();
+                return true;
+            default:
+                // Dropped or renamed collection, the stream is over
+                log.warn("Schema change stream invalidated by {}", change.getOperationType());
+                drop();
+                token = null;
+                return false;
+        }
+    }
+
+    /**
+     * Collects the inserted documents and the soft-deleted ones, other updates are not part of the changeset
+     */
+    private void track(ChangeStreamDocument<Document> change, Document doc) {
+        BsonValue id = change.getDocumentKey() != null ? change.getDocumentKey().get(FIELD_ID) : null;
+        if (id == null || !id.isObjectId()) return;
+        ChangeSetDTO item = new ChangeSetDTO(
+            id.asObjectId().getValue().toHexString(),
+            new ChangeSetDTO.Payload(doc.getString(FIELD_TYPE_ID_EXT), doc.getString(FIELD_FILENAME))
+        );
+        if (change.getOperationType() == OperationType.INSERT) {
+            insertions.add(item);
+        } else if (Boolean.TRUE.equals(doc.getBoolean(FIELD_DELETED))) {
+            deletions.add(item);
+        }
+    }
+
+    private void publish() {
+        if (insertions.isEmpty() && deletions.isEmpty()) return;
+        events.publish(new ArrayList<>(insertions), new ArrayList<>(deletions));
+        insertions.clear();
+        deletions.clear();
+    }
+
+    /**
+     * @param e The stream failure
+     * @return false if change streams are not supported and polling must be used instead
+     */
+    private boolean recover(Throwable e) {
+        int code = e instanceof MongoException ? ((MongoException) e).getCode() : -1;
+        if (code == ERR_NOT_REPLICA_SET) {
+            log.warn("Change streams are not supported by the deployment, falling back to polling");
+            running = false;
+            return false;
+        }
+        if (code == ERR_HISTORY_LOST || code == ERR_STREAM_FATAL) {
+            // Reopened from now, dropping everything
+            token = null;
+        }
+        log.error("Schema change stream interrupted, reopening in {} ms", cfg.getRetryDelay(), e);
+        return true;
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(cfg.getRetryDelay());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void drop() {
+        cache.invalidateAll();
+        etags.invalidateAll();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.SchemaETagCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.ExtensionMetadataETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility.computeHash;
+
+/**
+ * Keeps the entity tags of the documents in memory, they are computed on metadata only
+ * and dropped by the write paths, so polling clients are answered without touching any binary.
+ * The writes of the other replicas are caught up by {@link #reconcile()}
+ */
+@Slf4j
+@Service
+public class SchemaETagSRV implements ISchemaETagSRV {
+
+    private static final String KEY_EXTENSION = "ext:";
+    private static final String KEY_LISTING = "all:";
+    private static final String VARIANT_BINARY = "-b";
+
+    private final IDocumentRepo repository;
+    private final SchemaETagCFG cfg;
+    private final Map<String, String> tags = new ConcurrentHashMap<>();
+    /**
+     * Bumped on every invalidation, tags computed across an invalidation are not cached
+     */
+    private long generation;
+    /**
+     * Last update date of the collection seen by the previous reconciliation
+     */
+    private Date watermark;
+
+    @Autowired
+    public SchemaETagSRV(IDocumentRepo repository, SchemaETagCFG cfg) {
+        this.repository = repository;
+        this.cfg = cfg;
+    }
+
+    @Override
+    public String getExtensionTag(String extension, boolean deleted, boolean binary) throws OperationException {
+        String key = KEY_EXTENSION + deleted + ":" + extension;
+        String tag = tags.get(key);
+        if (tag == null) {
+            long started = generation();
+            List<SchemaMetadataETY> docs = repository.findDocsMetadataByExtensionId(extension, deleted);
+            // Not found is answered by the regular flow
+            if (docs.isEmpty()) return null;
+            tag = fingerprint(docs);
+            cache(key, tag, started);
+        }
+        return variant(tag, binary);
+    }
+
+    @Override
+    public String getListingTag(boolean deleted, boolean binary) throws OperationException {
+        String key = KEY_LISTING + deleted;
+        String tag = tags.get(key);
+        if (tag == null) {
+            long started = generation();
+            List<SchemaMetadataETY> docs = repository.groupMetadataByExtension(deleted).stream()
+                .map(ExtensionMetadataETY::getItems)
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+            tag = fingerprint(docs);
+            cache(key, tag, started);
+        }
+        return variant(tag, binary);
+    }
+
+    @Override
+    public synchronized void invalidate(String extension) {
+        generation++;
+        tags.remove(KEY_EXTENSION + true + ":" + extension);
+        tags.remove(KEY_EXTENSION + false + ":" + extension);
+        tags.remove(KEY_LISTING + true);
+        tags.remove(KEY_LISTING + false);
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        generation++;
+        tags.clear();
+    }
+
+    @Override
+    public int reconcile() throws OperationException {
+        Date last = repository.findLastUpdateDate();
+        if (last == null) return 0;
+        Date seen = watermark();
+        // Same overlap of the documents cache, a write stamped before the watermark may become visible later
+        Date since = seen != null ? new Date(Math.min(seen.getTime(), System.currentTimeMillis() - cfg.getPollInterval() - cfg.getClockSkew())) : null;
+        if (since != null && !last.after(since)) return 0;
+        int dropped;
+        if (since == null) {
+            // Nothing to compare with, whatever was computed before the first check is dropped
+            dropped = tags.size();
+            invalidateAll();
+        } else {
+            List<String> updated = repository.findExtensionsUpdatedAfter(since);
+            for (String extension : updated) invalidate(extension);
+            dropped = updated.size();
+        }
+        if (seen == null || last.after(seen)) watermark(last);
+        log.debug("Reconciled entity tags up to {}, dropped extensions n.: {}", last, dropped);
+        return dropped;
+    }
+
+    private synchronized Date watermark() {
+        return watermark;
+    }
+
+    private synchronized void watermark(Date last) {
+        watermark = last;
+    }
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    private synchronized void cache(String key, String tag, long started) {
+        if (generation == started) tags.put(key, tag);
+    }
+
+    private static String fingerprint(List<SchemaMetadataETY> docs) {
+        StringBuilder sb = new StringBuilder();
+        docs.stream().sorted(Comparator.comparing(SchemaMetadataETY::getId)).forEach(d ->
+            sb.append(d.getId()).append(':').append(d.getLastUpdateDate().getTime()).append(';')
+        );
+        return computeHash(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String variant(String tag, boolean binary) {
+        return binary ? tag + VARIANT_BINARY : tag;
+    }
+}
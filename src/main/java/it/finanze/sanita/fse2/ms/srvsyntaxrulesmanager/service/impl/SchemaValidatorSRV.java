@@ -0,0 +1,122 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.ValidationExecutorCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SchemaValidatorException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.ValidationUnavailableException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaValidatorSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaCache;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaValidator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.*;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.ValidationExecutorCFG.VALIDATION_EXECUTOR;
+
+@Slf4j
+@Service
+public class SchemaValidatorSRV implements ISchemaValidatorSRV {
+
+    public static final String METRIC_VALIDATION_WAIT = "schema.validation.wait";
+    public static final String METRIC_VALIDATION_COMPILE = "schema.validation.compile";
+
+    /**
+     * Validation operation
+     */
+    @FunctionalInterface
+    private interface Task {
+        void run(SchemaValidator validator) throws SchemaValidatorException;
+    }
+
+    private final SchemaCache cache;
+    private final ExecutorService executor;
+    private final long retryAfter;
+
+    private final Timer wait;
+    private final Timer compile;
+
+    @Autowired
+    public SchemaValidatorSRV(
+        SchemaCache cache,
+        @Qualifier(VALIDATION_EXECUTOR) ExecutorService executor,
+        ValidationExecutorCFG cfg,
+        MeterRegistry registry
+    ) {
+        this.cache = cache;
+        this.executor = executor;
+        this.retryAfter = cfg.getRetryAfter();
+        this.wait = Timer.builder(METRIC_VALIDATION_WAIT).register(registry);
+        this.compile = Timer.builder(METRIC_VALIDATION_COMPILE).register(registry);
+    }
+
+    @Override
+    public void verify(String root, MultipartFile[] files) throws SchemaValidatorException, ValidationUnavailableException {
+        submit(root, validator -> validator.verify(files));
+    }
+
+    @Override
+    public void verify(String root, Map<String, byte[]> current, MultipartFile[] newest) throws SchemaValidatorException, ValidationUnavailableException {
+        submit(root, validator -> validator.verify(current, newest));
+    }
+
+    private void submit(String root, Task task) throws SchemaValidatorException, ValidationUnavailableException {
+        // Working var
+        Future<Void> future;
+        long submitted = System.nanoTime();
+        // Enqueue compilation
+        try {
+            future = executor.submit(() -> {
+                long started = System.nanoTime();
+                wait.record(started - submitted, TimeUnit.NANOSECONDS);
+                try {
+                    task.run(new SchemaValidator(root, cache));
+                } finally {
+                    compile.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            throw new ValidationUnavailableException(ERR_SRV_VALIDATION_BUSY, retryAfter, e);
+        }
+        // Wait for the outcome
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            // Compilation failures only, anything else is a server error and not an invalid schema
+            if (e.getCause() instanceof SchemaValidatorException) {
+                throw (SchemaValidatorException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(ERR_SRV_VALIDATION_FAILURE, e.getCause());
+        } catch (InterruptedException e) {
+            // The request thread is going away, no reason to keep compiling
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ValidationUnavailableException(ERR_SRV_VALIDATION_BUSY, retryAfter, e);
+        }
+    }
+}
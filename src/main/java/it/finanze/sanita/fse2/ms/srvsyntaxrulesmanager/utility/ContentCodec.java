@@ -0,0 +1,137 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataProcessingException;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_ETY_CONTENT_DECODE;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_ETY_CONTENT_ENCODING;
+
+/**
+ * Compression of the schema content at rest. Raw deflate primed with a dictionary
+ * of the markup shared by every XSD, the format is stored beside the content
+ * so that a new format can be introduced without rewriting the old documents.
+ */
+public final class ContentCodec {
+
+    /**
+     * Private constructor to disallow to access from other classes
+     */
+    private ContentCodec() {}
+
+    /**
+     * Raw deflate with the first version of the dictionary, never change the dictionary
+     * without introducing a new format
+     */
+    public static final String FORMAT_DEFLATE_XSD_V1 = "deflate-xsd-1";
+
+    /**
+     * Most frequent tokens of the CDA schema set, the most used ones last
+     * since deflate encodes closer matches with fewer bits
+     */
+    private static final byte[] DICTIONARY_V1 = (
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<xs:schema targetNamespace=\"urn:hl7-org:v3\" xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" " +
+        "xmlns=\"urn:hl7-org:v3\" xmlns:mif=\"urn:hl7-org:v3/mif\" elementFormDefault=\"qualified\">" +
+        "<xs:include schemaLocation=\"\"/><xs:import namespace=\"\"/><xs:pattern value=\"\"/>" +
+        "<xs:list itemType=\"\"/><xs:union memberTypes=\"\"/><xs:choice></xs:choice>" +
+        "<xs:appinfo></xs:appinfo><xs:group ref=\"\"/><xs:attributeGroup ref=\"\"/>" +
+        "abstract=\"true\" mixed=\"true\" default=\"\" fixed=\"\" " +
+        "<xs:complexContent><xs:extension base=\"\"></xs:extension></xs:complexContent>" +
+        "<xs:complexType name=\"\"><xs:sequence></xs:sequence></xs:complexType>" +
+        "<xs:annotation><xs:documentation></xs:documentation></xs:annotation>" +
+        "<xs:attribute name=\"\" type=\"\" use=\"optional\"/><xs:attribute name=\"\" type=\"\" use=\"required\"/>" +
+        "<xs:element name=\"\" type=\"\" minOccurs=\"0\" maxOccurs=\"unbounded\"/>" +
+        "<xs:element name=\"\" type=\"\" minOccurs=\"0\" maxOccurs=\"1\"/>" +
+        "<xs:simpleType name=\"\"><xs:restriction base=\"cs\"></xs:restriction></xs:simpleType>" +
+        "<xs:enumeration value=\"\"/><xs:enumeration value=\"\"/>"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Compress the content with the current format.
+     *
+     * @param input	The plain content.
+     * @return		The compressed content.
+     */
+    public static byte[] encode(final byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(DICTIONARY_V1);
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 64);
+            byte[] buffer = new byte[StreamUtils.BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompress the content according to its format.
+     *
+     * @param format	The stored format, null if the content is plain.
+     * @param input		The stored content.
+     * @return			The plain content.
+     * @throws DataProcessingException If the format is unknown or the content is corrupted.
+     */
+    public static byte[] decode(final String format, final byte[] input) throws DataProcessingException {
+        if (format == null) return input;
+        try (InputStream in = decode(format, new ByteArrayInputStream(input))) {
+            return StreamUtils.copyToByteArray(in);
+        } catch (IOException e) {
+            throw new DataProcessingException(ERR_ETY_CONTENT_DECODE, e);
+        }
+    }
+
+    /**
+     * Wraps the stored content stream to decompress it on the fly according to its format.
+     *
+     * @param format	The stored format, null if the content is plain.
+     * @param input		The stored content stream.
+     * @return			The plain content stream.
+     * @throws DataProcessingException If the format is unknown.
+     */
+    public static InputStream decode(final String format, final InputStream input) throws DataProcessingException {
+        if (format == null) return input;
+        if (!FORMAT_DEFLATE_XSD_V1.equals(format)) {
+            throw new DataProcessingException(String.format(ERR_ETY_CONTENT_ENCODING, format), new IllegalArgumentException(format));
+        }
+        Inflater inflater = new Inflater(true);
+        inflater.setDictionary(DICTIONARY_V1);
+        return new InflaterInputStream(input, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // Not released by the stream when provided from outside
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
@@ -13,8 +13,12 @@ package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility;
 
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 
 import javax.validation.Path;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
@@ -28,6 +32,9 @@ public final class MiscUtility {
      */
     private MiscUtility() {}
 
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
     public static OffsetDateTime convertToOffsetDateTime(Date dateToConvert) {
         return dateToConvert.toInstant().atOffset(ZoneOffset.UTC);
     }
@@ -36,6 +43,10 @@ public final class MiscUtility {
         return Date.from(LocalDateTime.now().minusDays(1).toInstant(ZoneOffset.UTC));
     }
 
+    public static ChangeSetDTO toChangeset(SchemaMetadataETY entity) {
+        return new ChangeSetDTO(entity.getId(), new ChangeSetDTO.Payload(entity.getTypeIdExtension(), entity.getNameSchema()));
+    }
+
     public static ChangeSetDTO toChangeset(SchemaETY entity) {
         return new ChangeSetDTO(entity.getId(), new ChangeSetDTO.Payload(entity.getTypeIdExtension(), entity.getNameSchema()));
     }
@@ -55,4 +66,38 @@ public final class MiscUtility {
     public static String encodeBase64(final byte[] input) {
         return Base64.getEncoder().encodeToString(input);
     }
+
+    /**
+     * Compute the SHA-256 digest of the byte array passed as parameter.
+     *
+     * @param input	The byte array to digest.
+     * @return		The hex representation of the digest.
+     */
+    public static String computeHash(final byte[] input) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM implementation is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(input);
+        byte[] hex = new byte[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0x0F];
+        }
+        return new String(hex, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Mark the tag as weak, the response body may be re-encoded by the container compression
+     * and a strong validator would prevent it.
+     *
+     * @param tag	The opaque tag value.
+     * @return		The quoted weak entity tag.
+     */
+    public static String toWeakETag(final String tag) {
+        return "W/\"" + tag + "\"";
+    }
 }
@@ -21,12 +21,21 @@ public final class RoutesUtility {
     public static final String API_VERSION = "v1";
     public static final String API_CHANGESET = "changeset";
     public static final String API_QP_LAST_UPDATE = "lastUpdate";
+    public static final String API_QP_LIMIT = "limit";
+    public static final String API_QP_PAGE_TOKEN = "pageToken";
     public static final String API_STATUS = "status";
+    public static final String API_STREAM = "stream";
+    public static final String API_EVENTS = "events";
     public static final String API_SCHEMA = "schema";
     public static final String API_ID = "id";
+    public static final String API_CONTENT = "content";
+    public static final String API_BUNDLE = "bundle";
+    public static final String API_ZIP_MEDIA_TYPE = "application/zip";
     public static final String API_DOCUMENT_MAPPER = "/" + API_VERSION + "/" + API_SCHEMA;
 
     public static final String API_CHANGESET_STATUS = "/" + API_VERSION + "/" + API_CHANGESET + "/" + API_SCHEMA + "/" + API_STATUS ;
+    public static final String API_CHANGESET_STATUS_STREAM = API_CHANGESET_STATUS + "/" + API_STREAM;
+    public static final String API_CHANGESET_STATUS_EVENTS = API_CHANGESET_STATUS + "/" + API_EVENTS;
     public static final String API_PARAM_ROOT = "root";
     public static final String API_PARAM_FILES = "files";
     public static final String API_PATH_ID_VAR = "id";
@@ -39,6 +48,10 @@ public final class RoutesUtility {
     public static final String API_DELETE_BY_EXTS = API_PATH_EXTS;
     public static final String API_GET_ONE_BY_ID = API_ID + API_ID_EXTS;
     public static final String API_GET_ONE_BY_ID_FULL = API_DOCUMENT_MAPPER + "/" + API_GET_ONE_BY_ID;
+    public static final String API_GET_CONTENT_BY_ID = API_GET_ONE_BY_ID + "/" + API_CONTENT;
+    public static final String API_GET_CONTENT_BY_ID_FULL = API_DOCUMENT_MAPPER + "/" + API_GET_CONTENT_BY_ID;
+    public static final String API_BUNDLE_BY_EXTS = API_PATH_EXTS + "/" + API_BUNDLE;
+    public static final String API_BUNDLE_BY_EXTS_FULL = API_DOCUMENT_MAPPER + API_BUNDLE_BY_EXTS;
     public static final String API_GET_BY_EXTS_FULL = API_DOCUMENT_MAPPER + API_GET_BY_EXTS;
     public static final String API_DELETE_BY_EXTS_FULL = API_DOCUMENT_MAPPER + API_DELETE_BY_EXTS;
     public static final String API_CHANGESET_TAG = "ChangeSet";
@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.SchemaCacheCFG;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.xml.validation.Schema;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility.computeHash;
+
+/**
+ * Bounded LRU cache holding the compiled {@link Schema} instances.
+ * Entries are content-addressed: each one is identified by the root filename and the digest
+ * of every file actually resolved while compiling it (the include/import closure).
+ * Identical bundles are therefore compiled once per JVM, even if they belong to different extensions,
+ * and files not reachable from the root do not invalidate the compiled schema.
+ * Any change to a file of the closure, a single leaf included, changes the key:
+ * the whole bundle is compiled again, so patching one leaf is not faster than uploading the bundle.
+ */
+@Slf4j
+@Component
+public class SchemaCache {
+
+    public static final String METRIC_CACHE_GETS = "schema.cache.gets";
+    public static final String METRIC_CACHE_EVICTIONS = "schema.cache.evictions";
+    public static final String METRIC_CACHE_SIZE = "schema.cache.size";
+
+    private final int capacity;
+    private final Map<Key, Schema> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    @Autowired
+    public SchemaCache(SchemaCacheCFG cfg, MeterRegistry registry) {
+        this.capacity = cfg.getMaxSize();
+        // Access-order is required to evict the least recently used schema
+        this.entries = new LinkedHashMap<Key, Schema>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Schema> eldest) {
+                boolean evict = size() > capacity;
+                if (evict) {
+                    log.debug("Evicting compiled schema for root {}", eldest.getKey().getRoot());
+                    evictions.increment();
+                }
+                return evict;
+            }
+        };
+        this.hits = Counter.builder(METRIC_CACHE_GETS).tag("result", "hit").register(registry);
+        this.misses = Counter.builder(METRIC_CACHE_GETS).tag("result", "miss").register(registry);
+        this.evictions = Counter.builder(METRIC_CACHE_EVICTIONS).register(registry);
+        Gauge.builder(METRIC_CACHE_SIZE, this, SchemaCache::size).register(registry);
+    }
+
+    /**
+     * Retrieves the compiled schema whose closure matches the given files
+     * @param root The root filename
+     * @param digests The digest of each available file, by filename
+     * @return The compiled schema or {@code null} if it has never been compiled (or it has been evicted)
+     */
+    public synchronized Schema get(String root, Map<String, String> digests) {
+        Schema schema = null;
+        for (Key key : entries.keySet()) {
+            if (key.matches(root, digests)) {
+                // Lookup again to refresh the access-order
+                schema = entries.get(key);
+                break;
+            }
+        }
+        if (schema != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return schema;
+    }
+
+    /**
+     * Stores the compiled schema, evicting the least recently used one if the capacity is exceeded
+     * @param root The root filename
+     * @param digests The digest of each available file, by filename
+     * @param resolved The filenames resolved while compiling the root (excluding the root itself)
+     * @param schema The compiled schema
+     */
+    public synchronized void put(String root, Map<String, String> digests, Set<String> resolved, Schema schema) {
+        Map<String, String> closure = new TreeMap<>();
+        closure.put(root, digests.get(root));
+        resolved.forEach(name -> closure.put(name, digests.get(name)));
+        entries.put(new Key(root, closure), schema);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Computes the digest of each file
+     * @param files The files content, by filename
+     * @return The files digest, by filename
+     */
+    public static Map<String, String> digest(Map<String, byte[]> files) {
+        Map<String, String> digests = new HashMap<>();
+        files.forEach((name, data) -> digests.put(name, computeHash(data)));
+        return digests;
+    }
+
+    /**
+     * Identifies a compiled schema by its root filename and the digest of each file in its closure
+     */
+    @Value
+    static class Key {
+        String root;
+        Map<String, String> closure;
+
+        boolean matches(String root, Map<String, String> digests) {
+            if (!this.root.equals(root)) return false;
+            for (Map.Entry<String, String> file : closure.entrySet()) {
+                if (!file.getValue().equals(digests.get(file.getKey()))) return false;
+            }
+            return true;
+        }
+    }
+}
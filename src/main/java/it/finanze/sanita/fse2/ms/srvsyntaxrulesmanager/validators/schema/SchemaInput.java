@@ -0,0 +1,54 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.w3c.dom.ls.LSInput;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Lightweight {@link LSInput} backed by the in-memory schema content.
+ * It replaces the one provided by the DOM registry, which requires a service lookup
+ * on every resolved include/import.
+ */
+@Getter
+@Setter
+public class SchemaInput implements LSInput {
+
+    private String publicId;
+    private String systemId;
+    private String baseURI;
+    private InputStream byteStream;
+    /**
+     * Never set by the resolver, the content is always provided as byte-stream
+     */
+    private Reader characterStream;
+    private String stringData;
+    private String encoding;
+    private boolean certifiedText;
+
+    public SchemaInput(String publicId, String systemId, String baseURI, byte[] data) {
+        this.publicId = publicId;
+        this.systemId = systemId;
+        this.baseURI = baseURI;
+        this.byteStream = new ByteArrayInputStream(data);
+    }
+
+    @Override
+    public boolean getCertifiedText() {
+        return certifiedText;
+    }
+}
@@ -15,34 +15,49 @@ import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.RootNotValidEx
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SchemaValidatorException;
 import org.apache.commons.io.FilenameUtils;
 import org.springframework.web.multipart.MultipartFile;
-import org.w3c.dom.bootstrap.DOMImplementationRegistry;
-import org.w3c.dom.ls.DOMImplementationLS;
 import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSResourceResolver;
 import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.*;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.error.ErrorInstance.Fields.ROOT;
 
 public class SchemaValidator implements LSResourceResolver {
 
-    private static final String LS_FEATURE = "LS";
+    /**
+     * Factories are not thread-safe but they can be reused,
+     * so we keep one per thread instead of looking up the implementation on every compilation
+     */
+    private static final ThreadLocal<SchemaFactory> FACTORIES = ThreadLocal.withInitial(
+        () -> SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+    );
 
     private final String root;
+    private final SchemaCache cache;
+    private final Set<String> resolved;
     private Map<String, byte[]> mapping;
 
     public SchemaValidator(String root) {
+        this(root, null);
+    }
+
+    public SchemaValidator(String root, SchemaCache cache) {
         this.root = root;
+        this.cache = cache;
+        this.resolved = new HashSet<>();
         this.mapping = new HashMap<>();
     }
 
@@ -77,21 +92,32 @@ public class SchemaValidator implements LSResourceResolver {
     }
 
     private void validate() throws SchemaValidatorException {
-        // Create XML schema validator
-        SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        // Skip compilation if the same closure has already been compiled
+        Map<String, String> digests = null;
+        if (cache != null) {
+            digests = SchemaCache.digest(mapping);
+            if (cache.get(root, digests) != null) return;
+        }
+        // Retrieve XML schema validator
+        SchemaFactory factory = FACTORIES.get();
         // Create handler
         factory.setResourceResolver(this);
         // For some reason it emits just a warning for a missing include file
         factory.setErrorHandler(new SchemaErrorHandler());
         // Compile & resolve
         try {
-            factory.newSchema(getRoot());
+            Schema schema = factory.newSchema(getRoot());
+            if (digests != null) cache.put(root, digests, resolved, schema);
         } catch (SAXException | RootNotValidException e) {
             throw new SchemaValidatorException(
                 String.format(
                     ERR_VAL_INVALID_SCHEMA,
                     e.getMessage()
                 ), e);
+        } finally {
+            // Do not keep this instance (and its content) reachable from the thread
+            factory.setResourceResolver(null);
+            factory.setErrorHandler(null);
         }
     }
 
@@ -109,12 +135,6 @@ public class SchemaValidator implements LSResourceResolver {
         return new StreamSource(new ByteArrayInputStream(mapping.get(root)));
     }
 
-    private LSInput createResource() throws ClassNotFoundException, InstantiationException, IllegalAccessException {
-        DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
-        DOMImplementationLS impl = (DOMImplementationLS)registry.getDOMImplementation(LS_FEATURE);
-        return impl.createLSInput();
-    }
-
     @Override
     public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
         // It is an ACCEPTED value, default implementation returns 'null'
@@ -122,23 +142,12 @@ public class SchemaValidator implements LSResourceResolver {
         // Retrieve systemId identifier (base-name)
         String identifier = FilenameUtils.getName(FilenameUtils.getName(systemId));
         // Uses it as a key
-        if(mapping.containsKey(identifier)) {
-            try {
-                // Invoke XML registry to find the default implementation to generate an LSInput node
-                resource = createResource();
-                // Open data stream
-                resource.setByteStream(new ByteArrayInputStream(mapping.get(identifier)));
-                // SystemId must be the same on every reference (unique-key)
-                resource.setPublicId(publicId);
-                resource.setBaseURI(baseURI);
-                resource.setSystemId(identifier);
-            } catch (
-                ClassNotFoundException |
-                InstantiationException |
-                IllegalAccessException e
-            ) {
-                // Maybe log
-            }
+        byte[] data = mapping.get(identifier);
+        if(data != null) {
+            // Keep track of the closure
+            resolved.add(identifier);
+            // SystemId must be the same on every reference (unique-key)
+            resource = new SchemaInput(publicId, identifier, baseURI, data);
         }
         return resource;
     }
@@ -11,6 +11,7 @@
  */package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base;
 
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -132,6 +133,10 @@ public abstract class AbstractEntityHandler {
         return new ArrayList<>(entities.get(SCHEMA_TEST_EXTS_D).values());
     }
 
+    protected List<SchemaMetadataETY> getMetadataToUpload() {
+        return getEntitiesToUpload().stream().map(SchemaMetadataETY::fromEntity).collect(Collectors.toList());
+    }
+
     protected Map<String, SchemaETY> getEntitiesToUseAsReplacement() {
         return new HashMap<>(replacement);
     }
@@ -18,6 +18,7 @@ import org.springframework.mock.web.MockPart;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -27,10 +28,14 @@ import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractEntityHandler.SCHEMA_MOD_SAMPLE_FILES;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractEntityHandler.SCHEMA_SAMPLE_FILES;
@@ -47,8 +52,27 @@ public final class MockRequests {
     private MockRequests() {}
 
     public static MockHttpServletRequestBuilder getStatusReq(Date lastUpdate) {
+        return getStatusReq(API_CHANGESET_STATUS, lastUpdate);
+    }
+
+    public static MockHttpServletRequestBuilder getStatusStreamReq(Date lastUpdate) {
+        return getStatusReq(API_CHANGESET_STATUS_STREAM, lastUpdate);
+    }
+
+    public static MockHttpServletRequestBuilder getStatusPageReq(Date lastUpdate, Integer limit, String pageToken) {
+        MockHttpServletRequestBuilder req = getStatusReq(API_CHANGESET_STATUS, lastUpdate);
+        if(limit != null) req.queryParam(API_QP_LIMIT, String.valueOf(limit));
+        if(pageToken != null) req.queryParam(API_QP_PAGE_TOKEN, pageToken);
+        return req;
+    }
+
+    public static MockHttpServletRequestBuilder getStatusEventsReq() {
+        return get(API_CHANGESET_STATUS_EVENTS);
+    }
+
+    private static MockHttpServletRequestBuilder getStatusReq(String path, Date lastUpdate) {
         // Default GET without parameter
-        MockHttpServletRequestBuilder req = get(API_CHANGESET_STATUS);
+        MockHttpServletRequestBuilder req = get(path);
         // Add last update
         if(lastUpdate != null) {
             // Set timezone
@@ -67,6 +91,21 @@ public final class MockRequests {
         return get(API_GET_ONE_BY_ID_FULL, id).contentType(MediaType.APPLICATION_JSON_VALUE);
     }
 
+    public static MockHttpServletRequestBuilder getDocContentByIdReq(String id) {
+        return get(API_GET_CONTENT_BY_ID_FULL, id);
+    }
+
+    public static MockHttpServletRequestBuilder getBundleReq(String extension) {
+        return get(API_BUNDLE_BY_EXTS_FULL, extension);
+    }
+
+    public static MockHttpServletRequestBuilder postBundleReq(String root, String extension, byte[] bundle) {
+        return post(API_BUNDLE_BY_EXTS_FULL, extension)
+            .param(API_PARAM_ROOT, root)
+            .contentType(API_ZIP_MEDIA_TYPE)
+            .content(bundle);
+    }
+
     public static MockHttpServletRequestBuilder findDocsByExtensionIdReq(String extension) {
         return get(API_GET_BY_EXTS_FULL, extension)
             .contentType(MediaType.APPLICATION_JSON_VALUE);
@@ -144,6 +183,19 @@ public final class MockRequests {
         return retrieveSchemaFromResource(field, SCHEMA_MOD_SAMPLE_FILES).toArray(new MockMultipartFile[0]);
     }
 
+    public static MockMultipartFile[] createModifiedSchemaFromResource(String field) throws IOException {
+        // Standard files by name
+        Map<String, MockMultipartFile> mocks = new LinkedHashMap<>();
+        for (MockMultipartFile f : retrieveSchemaFromResource(field, SCHEMA_SAMPLE_FILES)) {
+            mocks.put(f.getOriginalFilename(), f);
+        }
+        // Override with the modified ones
+        for (MockMultipartFile f : retrieveSchemaFromResource(field, SCHEMA_MOD_SAMPLE_FILES)) {
+            mocks.put(f.getOriginalFilename(), f);
+        }
+        return mocks.values().toArray(new MockMultipartFile[0]);
+    }
+
     public static MockMultipartFile[] createSchemaFromResource(String field, boolean isValid) throws IOException {
         // Get as array
         ArrayDeque<MockMultipartFile> mocks = new ArrayDeque<>(
@@ -154,6 +206,18 @@ public final class MockRequests {
         return mocks.toArray(new MockMultipartFile[0]);
     }
 
+    public static byte[] createZipFromResource() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (MockMultipartFile file : retrieveSchemaFromResource(API_PARAM_FILES, SCHEMA_SAMPLE_FILES)) {
+                zip.putNextEntry(new ZipEntry(file.getOriginalFilename()));
+                zip.write(file.getBytes());
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
     private static Queue<MockMultipartFile> retrieveSchemaFromResource(String field,Path p) throws IOException {
         // Working var
         Queue<MockMultipartFile> mocks = new ArrayDeque<>();
@@ -0,0 +1,65 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataProcessingException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractEntityHandler.SCHEMA_SAMPLE_FILES;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractEntityHandler.SCHEMA_TEST_ROOT;
+
+/**
+ * Shared inputs for the benchmarks, built on the bundled CDA files
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {}
+
+    static List<Path> getStandardPaths() throws IOException {
+        try (Stream<Path> paths = Files.list(SCHEMA_SAMPLE_FILES)) {
+            return paths.sorted().collect(Collectors.toList());
+        }
+    }
+
+    static Map<String, byte[]> getStandardFiles() throws IOException {
+        Map<String, byte[]> files = new HashMap<>();
+        for (Path path : getStandardPaths()) {
+            files.put(path.getFileName().toString(), Files.readAllBytes(path));
+        }
+        return files;
+    }
+
+    static List<SchemaETY> createExtension(String extension) throws IOException, DataProcessingException {
+        List<SchemaETY> entities = new ArrayList<>();
+        for (Path path : getStandardPaths()) {
+            boolean root = path.getFileName().toString().equals(SCHEMA_TEST_ROOT);
+            SchemaETY entity = SchemaETY.fromPath(path, extension, root);
+            entity.setId(extension + "-" + entity.getNameSchema());
+            entities.add(entity);
+        }
+        return entities;
+    }
+
+    static String getExtension(int index) {
+        return String.format("2.16.840.1.113883.2.9.10.1.%d", index);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDocumentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataProcessingException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark.BenchmarkFixtures.createExtension;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark.BenchmarkFixtures.getExtension;
+
+/**
+ * Entity to DTO conversions performed on every read, measured on one bundled CDA extension
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+    private static final SchemaDocumentDTO.Options BINARY = new SchemaDocumentDTO.Options(true);
+
+    private String extension;
+    private List<SchemaETY> entities;
+    private List<SchemaDocumentDTO> documents;
+    private List<SchemaMetadataETY> metadata;
+
+    @Setup
+    public void setup() throws IOException, DataProcessingException {
+        extension = getExtension(0);
+        entities = createExtension(extension);
+        documents = entities.stream().map(SchemaDocumentDTO::fromEntity).collect(Collectors.toList());
+        metadata = entities.stream().map(SchemaMetadataETY::fromEntity).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void fromEntity(Blackhole bh) {
+        for (SchemaETY entity : entities) bh.consume(SchemaDocumentDTO.fromEntity(entity));
+    }
+
+    @Benchmark
+    public SchemaDTO fromItems() {
+        // Items are sorted in-place, work on a copy
+        return SchemaDTO.fromItems(extension, new ArrayList<>(documents), BINARY);
+    }
+
+    @Benchmark
+    public void toChangeset(Blackhole bh) {
+        for (SchemaMetadataETY entity : metadata) bh.consume(MiscUtility.toChangeset(entity));
+    }
+
+}
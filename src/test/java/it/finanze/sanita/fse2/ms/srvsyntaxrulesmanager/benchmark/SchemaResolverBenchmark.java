@@ -0,0 +1,92 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.multipart.MultipartFile;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSInput;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractEntityHandler.SCHEMA_TEST_ROOT;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark.BenchmarkFixtures.getStandardFiles;
+import static javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI;
+
+/**
+ * Compares include resolution on the standard CDA closure:
+ * the former registry lookup + createLSInput() against the in-memory input
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaResolverBenchmark {
+
+    private static final String LS_FEATURE = "LS";
+
+    private Map<String, byte[]> files;
+    private SchemaValidator validator;
+
+    @Setup
+    public void setup() throws Exception {
+        files = getStandardFiles();
+        validator = new SchemaValidator(SCHEMA_TEST_ROOT);
+        // Populate the validator mapping
+        validator.verify(new HashMap<>(files), new MultipartFile[0]);
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) throws Exception {
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            // Former behaviour: registry bootstrap on every include
+            DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
+            DOMImplementationLS ls = (DOMImplementationLS) registry.getDOMImplementation(LS_FEATURE);
+            LSInput input = ls.createLSInput();
+            input.setPublicId(null);
+            input.setSystemId(file.getKey());
+            input.setByteStream(new ByteArrayInputStream(file.getValue()));
+            bh.consume(input);
+        }
+    }
+
+    @Benchmark
+    public void current(Blackhole bh) {
+        for (String filename : files.keySet()) {
+            bh.consume(validator.resolveResource(W3C_XML_SCHEMA_NS_URI, null, null, filename, null));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SchemaResolverBenchmark.class.getSimpleName()).build()).run();
+    }
+}
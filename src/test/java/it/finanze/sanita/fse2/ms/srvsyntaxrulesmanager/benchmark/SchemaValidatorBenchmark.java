@@ -0,0 +1,75 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.SchemaCacheCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SchemaValidatorException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaCache;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractEntityHandler.SCHEMA_TEST_ROOT;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark.BenchmarkFixtures.getStandardFiles;
+
+/**
+ * Compilation of the bundled CDA closure, with and without the compiled schema cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaValidatorBenchmark {
+
+    private static final MultipartFile[] NONE = new MultipartFile[0];
+
+    private Map<String, byte[]> files;
+    private SchemaCache cache;
+
+    @Setup
+    public void setup() throws IOException {
+        files = getStandardFiles();
+        cache = new SchemaCache(new SchemaCacheCFG() {
+            @Override
+            public int getMaxSize() {
+                return 1;
+            }
+        }, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public void verify() throws SchemaValidatorException {
+        new SchemaValidator(SCHEMA_TEST_ROOT).verify(files, NONE);
+    }
+
+    @Benchmark
+    public void verifyCached() throws SchemaValidatorException {
+        new SchemaValidator(SCHEMA_TEST_ROOT, cache).verify(files, NONE);
+    }
+
+}
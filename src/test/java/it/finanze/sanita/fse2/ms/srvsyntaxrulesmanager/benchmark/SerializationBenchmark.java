@@ -0,0 +1,110 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDocumentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetResDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.crud.GetDocsResDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.log.LogTraceInfoDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataProcessingException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark.BenchmarkFixtures.createExtension;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.benchmark.BenchmarkFixtures.getExtension;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility.toChangeset;
+
+/**
+ * JSON output of the listing and changeset responses as the number of extensions grows.
+ * Every extension carries the bundled CDA files; the binary param mirrors the includeBinary flag.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int extensions;
+
+    @Param({"false", "true"})
+    private boolean binary;
+
+    private ObjectMapper mapper;
+    private GetDocsResDTO documents;
+    private ChangeSetResDTO changeset;
+
+    @Setup
+    public void setup() throws IOException, DataProcessingException {
+        // Same inclusion policy as spring.jackson.default-property-inclusion
+        mapper = Jackson2ObjectMapperBuilder.json().serializationInclusion(JsonInclude.Include.NON_NULL).build();
+
+        LogTraceInfoDTO trace = new LogTraceInfoDTO(null, null);
+        SchemaDocumentDTO.Options options = new SchemaDocumentDTO.Options(binary);
+        List<SchemaDTO> schemas = new ArrayList<>();
+        List<ChangeSetDTO> insertions = new ArrayList<>();
+
+        for (int i = 0; i < extensions; ++i) {
+            String extension = getExtension(i);
+            List<SchemaETY> entities = createExtension(extension);
+            schemas.add(SchemaDTO.fromItems(
+                extension,
+                entities.stream().map(SchemaDocumentDTO::fromEntity).collect(Collectors.toList()),
+                options
+            ));
+            entities.forEach(e -> insertions.add(toChangeset(SchemaMetadataETY.fromEntity(e))));
+        }
+
+        Date now = new Date();
+        documents = new GetDocsResDTO(trace, schemas);
+        changeset = new ChangeSetResDTO(
+            null, null, null, now, insertions, new ArrayList<>(), insertions.size(), insertions.size(), null
+        );
+    }
+
+    @Benchmark
+    public void getDocs() throws IOException {
+        mapper.writeValue(NullOutputStream.NULL_OUTPUT_STREAM, documents);
+    }
+
+    @Benchmark
+    public void changeset() throws IOException {
+        mapper.writeValue(NullOutputStream.NULL_OUTPUT_STREAM, changeset);
+    }
+
+}
@@ -14,23 +14,50 @@ package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.changeset;
 
 import brave.Tracer;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.IChangeSetCTL;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.ChangeSetPageDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.InvalidPageTokenException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SubscriptionUnavailableException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetEventsSRV;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetSRV;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
 
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.getStatusEventsReq;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.getStatusPageReq;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.getStatusReq;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.getStatusStreamReq;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.error.ErrorInstance.Fields.PAGE_TOKEN;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.OAUtility.OA_ARRAY_CHANGESET_MAX;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
 import static org.springframework.http.MediaType.APPLICATION_PROBLEM_JSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(IChangeSetCTL.class)
@@ -41,6 +68,8 @@ class ChangeSetCTLTest {
     private Tracer tracer;
     @MockBean
     private IChangeSetSRV service;
+    @MockBean
+    private IChangeSetEventsSRV events;
     @Test
     void getStatus() throws Exception {
         // Providing mock knowledge
@@ -71,6 +100,131 @@ class ChangeSetCTLTest {
         );
     }
 
+    @Test
+    void getStatusStream() throws Exception {
+        // Providing mock knowledge
+        doAnswer(inv -> {
+            Consumer<ChangeSetDTO> consumer = inv.getArgument(1);
+            consumer.accept(new ChangeSetDTO("1", new ChangeSetDTO.Payload("ext", "a.xsd")));
+            consumer.accept(new ChangeSetDTO("2", new ChangeSetDTO.Payload("ext", "b.xsd")));
+            return null;
+        }).when(service).streamInsertions(any(), any());
+        doAnswer(inv -> {
+            Consumer<ChangeSetDTO> consumer = inv.getArgument(1);
+            consumer.accept(new ChangeSetDTO("3", new ChangeSetDTO.Payload("ext", "c.xsd")));
+            return null;
+        }).when(service).streamDeletions(any(), any());
+        when(service.getCollectionSize()).thenReturn(2L);
+        // Execute request
+        String body = mvc.perform(
+            getStatusStreamReq(new Date())
+        ).andExpectAll(
+            status().is2xxSuccessful(),
+            content().contentType(APPLICATION_NDJSON_VALUE)
+        ).andReturn().getResponse().getContentAsString();
+        // One line per item plus the summary
+        String[] lines = body.split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("{\"insertion\""));
+        assertTrue(lines[2].startsWith("{\"deletion\""));
+        assertTrue(lines[3].contains("\"totalNumberOfElements\":3"));
+    }
+
+    @Test
+    void getStatusEvents() throws Exception {
+        // Providing mock knowledge
+        SseEmitter emitter = new SseEmitter();
+        when(events.subscribe()).thenReturn(emitter);
+        // Execute request
+        MvcResult result = mvc.perform(
+            getStatusEventsReq()
+        ).andExpect(
+            request().asyncStarted()
+        ).andReturn();
+        // Events are written as soon as they are sent
+        emitter.send(SseEmitter.event().id("1").name("changeset").data("{}"));
+        assertTrue(result.getResponse().getContentAsString().contains("event:changeset"));
+        emitter.complete();
+        mvc.perform(asyncDispatch(result)).andExpectAll(
+            status().is2xxSuccessful(),
+            content().contentTypeCompatibleWith(TEXT_EVENT_STREAM)
+        );
+    }
+
+    @Test
+    void getStatusEventsUnavailable() throws Exception {
+        // Providing mock knowledge
+        when(events.subscribe()).thenThrow(new SubscriptionUnavailableException("Too many subscribers", 30));
+        // Execute request
+        mvc.perform(
+            getStatusEventsReq()
+        ).andExpectAll(
+            status().isServiceUnavailable(),
+            header().string(RETRY_AFTER, "30"),
+            content().contentType(APPLICATION_PROBLEM_JSON)
+        );
+    }
+
+    @Test
+    void getStatusPage() throws Exception {
+        // Providing mock knowledge
+        Date snapshot = new Date();
+        List<ChangeSetDTO> insertions = Collections.singletonList(new ChangeSetDTO("1", new ChangeSetDTO.Payload("ext", "a.xsd")));
+        when(service.getPage(null, 1, null)).thenReturn(
+            new ChangeSetPageDTO(null, snapshot, insertions, Collections.emptyList(), 2, "next")
+        );
+        when(service.getPage(null, OA_ARRAY_CHANGESET_MAX, "next")).thenReturn(
+            new ChangeSetPageDTO(null, snapshot, Collections.emptyList(), insertions, 2, null)
+        );
+        // First page
+        mvc.perform(
+            getStatusPageReq(null, 1, null)
+        ).andExpectAll(
+            status().is2xxSuccessful(),
+            jsonPath("$.insertions.length()").value(1),
+            jsonPath("$.totalNumberOfElements").value(1),
+            jsonPath("$.collectionSize").value(2),
+            jsonPath("$.nextPageToken").value("next")
+        );
+        // Last page, with the default limit
+        mvc.perform(
+            getStatusPageReq(null, null, "next")
+        ).andExpectAll(
+            status().is2xxSuccessful(),
+            jsonPath("$.deletions.length()").value(1),
+            jsonPath("$.nextPageToken").doesNotExist()
+        );
+        // Unbounded snapshot when not paging
+        when(service.getInsertions(any())).thenReturn(new ArrayList<>());
+        when(service.getDeletions(any())).thenReturn(new ArrayList<>());
+        mvc.perform(getStatusReq(null)).andExpect(status().is2xxSuccessful());
+        verify(service, times(2)).getPage(any(), anyInt(), any());
+    }
+
+    @Test
+    void getStatusPageInvalid() throws Exception {
+        // Providing mock knowledge
+        when(service.getPage(any(), anyInt(), eq("invalid"))).thenThrow(new InvalidPageTokenException("Invalid token"));
+        // Execute requests
+        mvc.perform(
+            getStatusPageReq(null, 0, null)
+        ).andExpectAll(
+            status().isBadRequest(),
+            content().contentType(APPLICATION_PROBLEM_JSON)
+        );
+        mvc.perform(
+            getStatusPageReq(null, OA_ARRAY_CHANGESET_MAX + 1, null)
+        ).andExpect(
+            status().isBadRequest()
+        );
+        mvc.perform(
+            getStatusPageReq(null, 10, "invalid")
+        ).andExpectAll(
+            status().isBadRequest(),
+            jsonPath("$.instance").value(containsString(PAGE_TOKEN))
+        );
+    }
+
     @Test
     void getFutureStatus() throws Exception {
         // Execute request
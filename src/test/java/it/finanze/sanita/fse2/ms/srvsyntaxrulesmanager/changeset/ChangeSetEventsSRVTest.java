@@ -0,0 +1,137 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.changeset;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.ChangeSetEventsCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SubscriptionUnavailableException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.ChangeSetEventsSRV;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.ChangeSetEventsSRV.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ChangeSetEventsSRVTest {
+
+    private static final List<ChangeSetDTO> CHANGES = Collections.singletonList(
+        new ChangeSetDTO("1", new ChangeSetDTO.Payload("ext", "a.xsd"))
+    );
+
+    private ExecutorService executor;
+    private IChangeSetRepo<SchemaMetadataETY> changes;
+    private ObjectMapper mapper;
+    private MeterRegistry registry;
+    private ChangeSetEventsSRV service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        // Never drained, the events stay in the subscriber queues
+        executor = mock(ExecutorService.class);
+        changes = mock(IChangeSetRepo.class);
+        mapper = spy(new ObjectMapper());
+        registry = new SimpleMeterRegistry();
+        ChangeSetEventsCFG cfg = mock(ChangeSetEventsCFG.class);
+        when(cfg.getMaxSubscribers()).thenReturn(2);
+        when(cfg.getQueueSize()).thenReturn(3);
+        when(cfg.getTimeout()).thenReturn(60000L);
+        when(cfg.getRetryAfter()).thenReturn(30L);
+        when(cfg.getPollInterval()).thenReturn(5000L);
+        when(cfg.getClockSkew()).thenReturn(5000L);
+        service = new ChangeSetEventsSRV(executor, changes, mapper, cfg, registry);
+    }
+
+    @Test
+    void rejectAboveLimit() throws SubscriptionUnavailableException {
+        assertNotNull(service.subscribe());
+        assertNotNull(service.subscribe());
+        SubscriptionUnavailableException ex = assertThrows(SubscriptionUnavailableException.class, () -> service.subscribe());
+        assertEquals(30L, ex.getRetryAfter());
+        assertEquals(2, service.subscribers());
+        assertEquals(2, registry.get(METRIC_EVENTS_SUBSCRIBERS).gauge().value());
+        assertEquals(1, registry.get(METRIC_EVENTS_REJECTED).counter().count());
+    }
+
+    @Test
+    void dropSlowSubscriber() throws Exception {
+        service.subscribe();
+        // Ready event plus two changes fill the queue
+        service.publish(CHANGES, Collections.emptyList());
+        service.heartbeat();
+        assertEquals(1, service.subscribers());
+        // One drain at a time for each subscriber
+        verify(executor, times(1)).execute(any());
+        service.publish(Collections.emptyList(), CHANGES);
+        assertEquals(0, service.subscribers());
+        assertEquals(1, registry.get(METRIC_EVENTS_DROPPED).counter().count());
+        // The slot is available again
+        assertNotNull(service.subscribe());
+        // Serialized once per write, whatever the number of subscribers
+        verify(mapper, times(2)).writeValueAsString(any());
+    }
+
+    @Test
+    void skipWithoutSubscribers() throws Exception {
+        service.publish(CHANGES, CHANGES);
+        service.subscribe();
+        service.publish(Collections.emptyList(), Collections.emptyList());
+        verify(mapper, never()).writeValueAsString(any());
+    }
+
+    @Test
+    void publishOnce() throws Exception {
+        service.subscribe();
+        // Local write first, then the same change from the change stream
+        service.publish(CHANGES, Collections.emptyList());
+        service.publish(CHANGES, Collections.emptyList());
+        verify(mapper, times(1)).writeValueAsString(any());
+        // The deletion of the same document is another change
+        service.publish(Collections.emptyList(), CHANGES);
+        verify(mapper, times(2)).writeValueAsString(any());
+    }
+
+    @Test
+    void reconcile() throws Exception {
+        // Nobody to publish to
+        assertEquals(0, service.reconcile());
+        verify(changes, never()).getInsertions(any());
+        service.subscribe();
+        SchemaMetadataETY doc = new SchemaMetadataETY();
+        doc.setId("1");
+        doc.setTypeIdExtension("ext");
+        doc.setNameSchema("a.xsd");
+        when(changes.getInsertions(any())).thenReturn(Collections.singletonList(doc));
+        when(changes.getDeletions(any())).thenReturn(Collections.emptyList());
+        // Written by another replica
+        assertEquals(1, service.reconcile());
+        // Read again within the skew, already published
+        assertEquals(0, service.reconcile());
+        ArgumentCaptor<Date> since = ArgumentCaptor.forClass(Date.class);
+        verify(changes, times(2)).getInsertions(since.capture());
+        assertTrue(since.getValue().getTime() <= System.currentTimeMillis() - 5000L);
+        verify(mapper, times(1)).writeValueAsString(any());
+    }
+}
@@ -17,6 +17,7 @@ import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataIntegrityException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility;
@@ -33,6 +34,7 @@ import java.io.IOException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.ComponentScan.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -53,7 +55,7 @@ class ChangeSetRepoTest extends AbstractDatabaseHandler {
     @SpyBean
     private MongoTemplate mongo;
     @Autowired
-    private IChangeSetRepo<SchemaETY> repository;
+    private IChangeSetRepo<SchemaMetadataETY> repository;
     @Autowired
     private IDocumentRepo documents;
     private Date lastUpdate;
@@ -67,7 +69,7 @@ class ChangeSetRepoTest extends AbstractDatabaseHandler {
     @Test
     void getInsertionsWithTimestamp() throws OperationException {
         // Retrieve documents with yesterday date
-        List<SchemaETY> insertions = repository.getInsertions(MiscUtility.getYesterday());
+        List<SchemaMetadataETY> insertions = repository.getInsertions(MiscUtility.getYesterday());
         // Expect full match
         assertEquals(SCHEMA_INTO_DB, insertions.size());
     }
@@ -75,7 +77,7 @@ class ChangeSetRepoTest extends AbstractDatabaseHandler {
     @Test
     void getInsertionsExceptions() {
         // Provide knowledge
-        doThrow(new MongoException("Test")).when(mongo).find(any(), eq(SchemaETY.class));
+        doThrow(new MongoException("Test")).when(mongo).find(any(), eq(SchemaMetadataETY.class));
         // Expect error
         assertThrows(OperationException.class, () -> repository.getInsertions(new Date()));
     }
@@ -106,17 +108,36 @@ class ChangeSetRepoTest extends AbstractDatabaseHandler {
         // Replace test entities content
         documents.updateDocsByExtensionId(entities);
         // Retrieve documents with last update
-        List<SchemaETY> insertions = repository.getInsertions(lastUpdate);
-        List<SchemaETY> deletions = repository.getDeletions(lastUpdate);
+        List<SchemaMetadataETY> insertions = repository.getInsertions(lastUpdate);
+        List<SchemaMetadataETY> deletions = repository.getDeletions(lastUpdate);
         // Expect size match
         assertEquals(getEntitiesToUseAsReplacement().values().size(), insertions.size());
         assertEquals(getEntitiesToUseAsReplacement().values().size(), deletions.size());
     }
 
+    @Test
+    void getChangesPages() throws OperationException {
+        Date snapshot = new Date();
+        // Walk the full alignment two items at a time
+        List<SchemaMetadataETY> items = new ArrayList<>();
+        List<SchemaMetadataETY> page = repository.getChangesPage(null, snapshot, null, null, 2);
+        while (!page.isEmpty()) {
+            items.addAll(page);
+            SchemaMetadataETY last = page.get(page.size() - 1);
+            page = repository.getChangesPage(null, snapshot, last.getLastUpdateDate(), last.getId(), 2);
+        }
+        // Every active document exactly once
+        assertEquals(SCHEMA_INTO_DB, items.size());
+        assertEquals(SCHEMA_INTO_DB, items.stream().map(SchemaMetadataETY::getId).distinct().count());
+        assertEquals(SCHEMA_INTO_DB, repository.getActiveDocumentCount(snapshot));
+        // Nothing changed after the snapshot
+        assertTrue(repository.getChangesPage(snapshot, new Date(), null, null, 2).isEmpty());
+    }
+
     @Test
     void getDeletions() throws OperationException {
         // Retrieve documents with current timestamp
-        List<SchemaETY> deletions = repository.getDeletions(new Date());
+        List<SchemaMetadataETY> deletions = repository.getDeletions(new Date());
         // Expect nothing
         assertTrue(deletions.isEmpty());
     }
@@ -127,7 +148,7 @@ class ChangeSetRepoTest extends AbstractDatabaseHandler {
         // Delete one collection
         documents.deleteDocsByExtensionId(SCHEMA_TEST_EXTS_C);
         // Retrieve documents with lastUpdate
-        List<SchemaETY> deletions = repository.getDeletions(lastUpdate);
+        List<SchemaMetadataETY> deletions = repository.getDeletions(lastUpdate);
         // Expect full match
         // We need to sum up the files we modified during this test run
         assertEquals(SCHEMA_TEST_SIZE + getEntitiesToUseAsReplacement().size(), deletions.size());
@@ -136,7 +157,7 @@ class ChangeSetRepoTest extends AbstractDatabaseHandler {
     @Test
     void getDeletionsExceptions() {
         // Provide knowledge
-        doThrow(new MongoException("Test")).when(mongo).find(any(), eq(SchemaETY.class));
+        doThrow(new MongoException("Test")).when(mongo).find(any(), eq(SchemaMetadataETY.class));
         // Expect error
         assertThrows(OperationException.class, () -> repository.getDeletions(new Date()));
     }
@@ -144,7 +165,7 @@ class ChangeSetRepoTest extends AbstractDatabaseHandler {
     @Test
     void getEveryActiveDocument() throws OperationException {
         // Retrieve documents with lastUpdate
-        List<SchemaETY> documents = repository.getEveryActiveDocument();
+        List<SchemaMetadataETY> documents = repository.getEveryActiveDocument();
         // We could calculate it, but I am leaving it on the empty check
         // due to getDeletionsTest could run before or after it
         // Expect not blank
@@ -154,11 +175,28 @@ class ChangeSetRepoTest extends AbstractDatabaseHandler {
     @Test
     void getEveryActiveDocumentExceptions() {
         // Provide knowledge
-        doThrow(new MongoException("Test")).when(mongo).find(any(), eq(SchemaETY.class));
+        doThrow(new MongoException("Test")).when(mongo).find(any(), eq(SchemaMetadataETY.class));
         // Expect error
         assertThrows(OperationException.class, () -> repository.getEveryActiveDocument());
     }
 
+    @Test
+    void streamEveryActiveDocument() throws OperationException {
+        // Count items without collecting them
+        AtomicLong size = new AtomicLong();
+        repository.streamEveryActiveDocument(e -> size.incrementAndGet());
+        // Expect the same result as the buffered query
+        assertEquals(repository.getEveryActiveDocument().size(), size.get());
+    }
+
+    @Test
+    void streamEveryActiveDocumentExceptions() {
+        // Provide knowledge
+        doThrow(new MongoException("Test")).when(mongo).stream(any(), eq(SchemaMetadataETY.class));
+        // Expect error
+        assertThrows(OperationException.class, () -> repository.streamEveryActiveDocument(e -> {}));
+    }
+
     @AfterAll
     public void teardown() {
         this.clearTestRepository();
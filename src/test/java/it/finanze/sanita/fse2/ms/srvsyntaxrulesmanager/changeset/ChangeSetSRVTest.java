@@ -13,10 +13,15 @@ package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.changeset;
 
 import brave.Tracer;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractEntityHandler;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.ChangeSetEventsCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.ChangeSetPageDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.InvalidPageTokenException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
-import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetSRV;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -26,10 +31,21 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @WebMvcTest(IChangeSetSRV.class)
@@ -39,7 +55,9 @@ class ChangeSetSRVTest extends AbstractEntityHandler {
     @MockBean
     private Tracer tracer;
     @MockBean
-    private IChangeSetRepo<SchemaETY> repository;
+    private IChangeSetRepo<SchemaMetadataETY> repository;
+    @MockBean
+    private ChangeSetEventsCFG cfg;
     @Autowired
     private IChangeSetSRV service;
 
@@ -51,13 +69,13 @@ class ChangeSetSRVTest extends AbstractEntityHandler {
     @Test
     void getInsertions() throws OperationException {
         // Providing mock knowledge
-        when(repository.getInsertions(any(Date.class))).thenReturn(getEntitiesToUpload());
+        when(repository.getInsertions(any(Date.class))).thenReturn(getMetadataToUpload());
         // Assertions
         assertDoesNotThrow(() -> {
             assertEquals(getEntitiesToUpload().size(), service.getInsertions(new Date()).size());
         });
         // Providing mock knowledge
-        when(repository.getEveryActiveDocument()).thenReturn(getEntitiesToUpload());
+        when(repository.getEveryActiveDocument()).thenReturn(getMetadataToUpload());
         // Assertions
         assertDoesNotThrow(() -> {
             assertEquals(getEntitiesToUpload().size(), service.getInsertions(null).size());
@@ -67,19 +85,95 @@ class ChangeSetSRVTest extends AbstractEntityHandler {
     @Test
     void getDeletions() throws OperationException {
         // Providing mock knowledge
-        when(repository.getDeletions(any(Date.class))).thenReturn(getEntitiesToUpload());
+        when(repository.getDeletions(any(Date.class))).thenReturn(getMetadataToUpload());
         // Assertions
         assertDoesNotThrow(() -> {
             assertEquals(getEntitiesToUpload().size(), service.getDeletions(new Date()).size());
         });
         // Providing mock knowledge
-        when(repository.getDeletions(any())).thenReturn(getEntitiesToUpload());
+        when(repository.getDeletions(any())).thenReturn(getMetadataToUpload());
         // Assertions
         assertDoesNotThrow(() -> {
             assertTrue(service.getDeletions(null).isEmpty());
         });
     }
 
+    @Test
+    void streamChanges() throws OperationException {
+        // Providing mock knowledge
+        doAnswer(inv -> {
+            Consumer<SchemaMetadataETY> consumer = inv.getArgument(0);
+            getMetadataToUpload().forEach(consumer);
+            return null;
+        }).when(repository).streamEveryActiveDocument(any());
+        // Assertions
+        List<ChangeSetDTO> insertions = new ArrayList<>();
+        assertDoesNotThrow(() -> service.streamInsertions(null, insertions::add));
+        assertEquals(getEntitiesToUpload().size(), insertions.size());
+        // Full alignment never carries deletions
+        List<ChangeSetDTO> deletions = new ArrayList<>();
+        assertDoesNotThrow(() -> service.streamDeletions(null, deletions::add));
+        assertTrue(deletions.isEmpty());
+        verify(repository, never()).streamDeletions(any(), any());
+    }
+
+    @Test
+    void getPages() throws OperationException, InvalidPageTokenException {
+        // Providing mock knowledge
+        Date lastUpdate = new Date(0);
+        List<SchemaMetadataETY> items = new ArrayList<>();
+        for (int i = 0; i < 3; i++) items.add(change(i, i == 1));
+        when(repository.getActiveDocumentCount(any(Date.class))).thenReturn(5L);
+        when(repository.getChangesPage(eq(lastUpdate), any(), isNull(), isNull(), eq(3))).thenReturn(items);
+        when(cfg.getClockSkew()).thenReturn(5000L);
+        long started = System.currentTimeMillis();
+        // First page, one more item than requested
+        ChangeSetPageDTO first = service.getPage(lastUpdate, 2, null);
+        // Pinned the clock skew in the past
+        assertTrue(first.getSnapshot().getTime() >= started - 5000L);
+        assertTrue(first.getSnapshot().getTime() <= System.currentTimeMillis() - 5000L);
+        assertEquals(1, first.getInsertions().size());
+        assertEquals(1, first.getDeletions().size());
+        assertEquals(5L, first.getCollectionSize());
+        assertNotNull(first.getNextPageToken());
+        // Following page, resumed after the last item against the same snapshot
+        SchemaMetadataETY last = items.get(1);
+        when(repository.getChangesPage(lastUpdate, first.getSnapshot(), last.getLastUpdateDate(), last.getId(), 3))
+            .thenReturn(items.subList(2, 3));
+        ChangeSetPageDTO second = service.getPage(null, 2, first.getNextPageToken());
+        assertEquals(lastUpdate, second.getLastUpdate());
+        assertEquals(first.getSnapshot(), second.getSnapshot());
+        assertEquals(5L, second.getCollectionSize());
+        assertEquals(1, second.getInsertions().size());
+        assertNull(second.getNextPageToken());
+        // Counted once for every page
+        verify(repository, times(1)).getActiveDocumentCount(any(Date.class));
+    }
+
+    @Test
+    void getPageWithInvalidToken() throws OperationException {
+        when(repository.getActiveDocumentCount(any(Date.class))).thenReturn(1L);
+        when(repository.getChangesPage(any(), any(), any(), any(), anyInt())).thenReturn(
+            Arrays.asList(change(0, false), change(1, false))
+        );
+        String token = assertDoesNotThrow(() -> service.getPage(new Date(0), 1, null).getNextPageToken());
+        // Issued for another timeframe
+        assertThrows(InvalidPageTokenException.class, () -> service.getPage(new Date(1), 1, token));
+        // Malformed
+        assertThrows(InvalidPageTokenException.class, () -> service.getPage(null, 1, "invalid"));
+        assertThrows(InvalidPageTokenException.class, () -> service.getPage(null, 1, token.substring(2)));
+    }
+
+    private static SchemaMetadataETY change(int i, boolean deleted) {
+        SchemaMetadataETY e = new SchemaMetadataETY();
+        e.setId(new ObjectId().toHexString());
+        e.setNameSchema("schema" + i + ".xsd");
+        e.setTypeIdExtension("ext");
+        e.setLastUpdateDate(new Date(1000L * i));
+        e.setDeleted(deleted);
+        return e;
+    }
+
     @AfterAll
     public void teardown() {
         this.clearTestEntities();
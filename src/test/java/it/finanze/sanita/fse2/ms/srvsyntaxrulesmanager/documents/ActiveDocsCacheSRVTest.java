@@ -0,0 +1,241 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.ActiveDocsCacheCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaContentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.ActiveDocsCacheSRV;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.ActiveDocsCacheSRV.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ActiveDocsCacheSRVTest {
+
+    private static final String EXT_A = "ext_a";
+    private static final String EXT_B = "ext_b";
+    private static final String EXT_C = "ext_c";
+
+    private IDocumentRepo repository;
+    private ActiveDocsCacheCFG cfg;
+    private MeterRegistry registry;
+    private ActiveDocsCacheSRV service;
+
+    @BeforeEach
+    void setup() throws OperationException {
+        repository = mock(IDocumentRepo.class);
+        cfg = mock(ActiveDocsCacheCFG.class);
+        registry = new SimpleMeterRegistry();
+        when(cfg.isEnabled()).thenReturn(true);
+        when(cfg.getMaxEntries()).thenReturn(2);
+        when(cfg.getMaxBytes()).thenReturn(1L << 20);
+        when(repository.findDocsByExtensionId(anyString(), eq(false))).thenAnswer(i -> docs(1024));
+        service = new ActiveDocsCacheSRV(repository, cfg, registry);
+    }
+
+    @Test
+    void readThrough() throws OperationException {
+        service.getActiveDocs(EXT_A);
+        List<SchemaETY> docs = service.getActiveDocs(EXT_A);
+        assertSame(docs, service.getActiveDocs(EXT_A));
+        verify(repository, times(1)).findDocsByExtensionId(EXT_A, false);
+        assertEquals(1, service.size());
+        assertTrue(service.bytes() > 1024);
+        assertEquals(2.0 / 3, registry.get(METRIC_CACHE_HIT_RATIO).gauge().value(), 0.001);
+        // Shared entities, the list cannot be changed by the callers
+        assertThrows(UnsupportedOperationException.class, () -> docs.add(new SchemaETY()));
+        // Write path
+        service.invalidate(EXT_A);
+        assertEquals(0, service.bytes());
+        assertNotSame(docs, service.getActiveDocs(EXT_A));
+        verify(repository, times(2)).findDocsByExtensionId(EXT_A, false);
+    }
+
+    @Test
+    void contentOffHeap() throws OperationException, IOException {
+        List<SchemaETY> read = service.getActiveDocs(EXT_A);
+        byte[] data = read.get(0).content();
+        SchemaETY cached = service.getActiveDocs(EXT_A).get(0);
+        // Only metadata is kept on heap
+        assertNull(cached.getContentSchema());
+        assertEquals(read.get(0).digest(), cached.digest());
+        assertEquals(data.length, cached.size());
+        assertEquals(data.length, registry.get(METRIC_CACHE_OFF_HEAP).gauge().value());
+        // Lookup by id
+        assertSame(cached, service.getActiveDoc(cached.getId()));
+        assertNull(service.getActiveDoc(new ObjectId().toHexString()));
+        SchemaContentDTO content = service.getContent(cached);
+        assertNotNull(content);
+        // Still readable after the eviction
+        service.invalidate(EXT_A);
+        assertEquals(0, registry.get(METRIC_CACHE_OFF_HEAP).gauge().value());
+        assertNull(service.getActiveDoc(cached.getId()));
+        assertNull(service.getContent(cached));
+        for (int i = 0; i < 2; i++) {
+            try (InputStream in = content.open()) {
+                assertArrayEquals(data, StreamUtils.copyToByteArray(in));
+            }
+        }
+    }
+
+    @Test
+    void contentSlicedByDocument() throws OperationException, IOException {
+        // One slab for the whole extension, sliced by document
+        List<SchemaETY> read = new ArrayList<>();
+        for (int size : new int[]{512, 1, 2048}) read.addAll(docs(size));
+        when(repository.findDocsByExtensionId(EXT_A, false)).thenReturn(read);
+        service.getActiveDocs(EXT_A);
+        List<SchemaETY> cached = service.getActiveDocs(EXT_A);
+        assertEquals(read.size(), cached.size());
+        for (int i = 0; i < read.size(); i++) {
+            try (InputStream in = service.getContent(cached.get(i)).open()) {
+                assertArrayEquals(read.get(i).content(), StreamUtils.copyToByteArray(in));
+            }
+        }
+    }
+
+    @Test
+    void compressedContentOffHeap() throws OperationException, IOException {
+        byte[] data = "<xs:schema><xs:element name=\"a\"/><xs:element name=\"b\"/></xs:schema>".getBytes(StandardCharsets.UTF_8);
+        SchemaETY doc = new SchemaETY();
+        doc.setId(new ObjectId().toHexString());
+        doc.setContentSchema(data);
+        assertNotNull(doc.getContentFormat());
+        when(repository.findDocsByExtensionId(EXT_A, false)).thenReturn(new ArrayList<>(Collections.singletonList(doc)));
+        service.getActiveDocs(EXT_A);
+        SchemaETY cached = service.getActiveDocs(EXT_A).get(0);
+        // Stored as compressed, inflated while read
+        try (InputStream in = service.getContent(cached).open()) {
+            assertArrayEquals(data, StreamUtils.copyToByteArray(in));
+        }
+    }
+
+    @Test
+    void missingNotCached() throws OperationException {
+        when(repository.findDocsByExtensionId(EXT_A, false)).thenReturn(new ArrayList<>());
+        assertTrue(service.getActiveDocs(EXT_A).isEmpty());
+        assertTrue(service.getActiveDocs(EXT_A).isEmpty());
+        verify(repository, times(2)).findDocsByExtensionId(EXT_A, false);
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    void boundedByEntries() throws OperationException {
+        service.getActiveDocs(EXT_A);
+        service.getActiveDocs(EXT_B);
+        // Refresh A, B becomes the eldest
+        service.getActiveDocs(EXT_A);
+        service.getActiveDocs(EXT_C);
+        assertEquals(2, service.size());
+        assertEquals(1, registry.get(METRIC_CACHE_EVICTIONS).counter().count());
+        service.getActiveDocs(EXT_A);
+        verify(repository, times(1)).findDocsByExtensionId(EXT_A, false);
+        service.getActiveDocs(EXT_B);
+        verify(repository, times(2)).findDocsByExtensionId(EXT_B, false);
+    }
+
+    @Test
+    void boundedByBytes() throws OperationException {
+        when(cfg.getMaxEntries()).thenReturn(10);
+        when(cfg.getMaxBytes()).thenReturn(4096L);
+        when(repository.findDocsByExtensionId(anyString(), eq(false))).thenAnswer(i -> docs(2048));
+        service.getActiveDocs(EXT_A);
+        service.getActiveDocs(EXT_B);
+        // Both do not fit
+        assertEquals(1, service.size());
+        assertTrue(service.bytes() <= 4096);
+        // Above the whole budget, never cached
+        when(repository.findDocsByExtensionId(EXT_C, false)).thenReturn(docs(8192));
+        service.getActiveDocs(EXT_C);
+        service.getActiveDocs(EXT_C);
+        verify(repository, times(2)).findDocsByExtensionId(EXT_C, false);
+        assertEquals(1, service.size());
+    }
+
+    @Test
+    void reconcile() throws OperationException {
+        service.getActiveDocs(EXT_A);
+        service.getActiveDocs(EXT_B);
+        // First check, nothing to compare with
+        when(repository.findLastUpdateDate()).thenReturn(new Date(1000));
+        assertEquals(2, service.reconcile());
+        service.getActiveDocs(EXT_A);
+        service.getActiveDocs(EXT_B);
+        // Nothing happened
+        assertEquals(0, service.reconcile());
+        verify(repository, never()).findExtensionsUpdatedAfter(any());
+        // Another replica wrote B
+        when(repository.findLastUpdateDate()).thenReturn(new Date(2000));
+        when(repository.findExtensionsUpdatedAfter(new Date(1000))).thenReturn(Collections.singletonList(EXT_B));
+        assertEquals(1, service.reconcile());
+        assertEquals(1, service.size());
+        service.getActiveDocs(EXT_A);
+        verify(repository, times(2)).findDocsByExtensionId(EXT_A, false);
+    }
+
+    @Test
+    void reconcileLateCommit() throws OperationException {
+        when(cfg.getPollInterval()).thenReturn(5000L);
+        when(cfg.getClockSkew()).thenReturn(5000L);
+        Date seen = new Date();
+        when(repository.findLastUpdateDate()).thenReturn(seen);
+        service.reconcile();
+        service.getActiveDocs(EXT_A);
+        // A write stamped before the watermark commits now, the last update date does not move
+        when(repository.findExtensionsUpdatedAfter(any())).thenReturn(Collections.singletonList(EXT_A));
+        assertEquals(1, service.reconcile());
+        ArgumentCaptor<Date> since = ArgumentCaptor.forClass(Date.class);
+        verify(repository).findExtensionsUpdatedAfter(since.capture());
+        assertTrue(since.getValue().before(seen));
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    void disabled() throws OperationException {
+        when(cfg.isEnabled()).thenReturn(false);
+        service.getActiveDocs(EXT_A);
+        service.getActiveDocs(EXT_A);
+        verify(repository, times(2)).findDocsByExtensionId(EXT_A, false);
+        assertEquals(0, service.size());
+    }
+
+    private static List<SchemaETY> docs(int size) {
+        SchemaETY doc = new SchemaETY();
+        doc.setId(new ObjectId().toHexString());
+        doc.setNameSchema("CDA.xsd");
+        // Random bytes are stored as they are
+        byte[] data = new byte[size];
+        new java.util.Random(size).nextBytes(data);
+        doc.setContentSchema(data);
+        return new ArrayList<>(Collections.singletonList(doc));
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.BundleCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.ExtensionNotFoundException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.InvalidContentException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaContentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IBundleSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IDocumentSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.BundleSRV;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.createZipFromResource;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_SRV_BUNDLE_ENTRY_TOO_LARGE;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.Logs.ERR_SRV_BUNDLE_TOO_LARGE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BundleSRVTest {
+
+    private static final String ROOT = "CDA.xsd";
+    private static final String EXTENSION = "ext_a";
+    private static final byte[] DATA = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"/>".getBytes(StandardCharsets.UTF_8);
+
+    private IDocumentRepo repository;
+    private ISchemaContentRepo content;
+    private IDocumentSRV documents;
+    private BundleCFG cfg;
+    private IBundleSRV service;
+
+    @BeforeEach
+    void setup() {
+        repository = mock(IDocumentRepo.class);
+        content = mock(ISchemaContentRepo.class);
+        documents = mock(IDocumentSRV.class);
+        cfg = mock(BundleCFG.class);
+        when(cfg.getMaxEntries()).thenReturn(25);
+        when(cfg.getMaxEntrySize()).thenReturn(DataSize.ofMegabytes(1));
+        when(cfg.getMaxSize()).thenReturn(DataSize.ofMegabytes(10));
+        service = new BundleSRV(repository, content, documents, cfg);
+    }
+
+    @Test
+    void importBundle() throws Exception {
+        byte[] bundle = createZipFromResource();
+        // Providing mock knowledge
+        when(documents.insertDocsByExtensionId(eq(ROOT), eq(EXTENSION), any())).thenAnswer(i -> i.getArgument(2, MultipartFile[].class).length);
+        int inserted = service.importBundle(ROOT, EXTENSION, new ByteArrayInputStream(bundle));
+        // Same entries, same bytes
+        Map<String, byte[]> expected = unzip(bundle);
+        ArgumentCaptor<MultipartFile[]> captor = ArgumentCaptor.forClass(MultipartFile[].class);
+        verify(documents).insertDocsByExtensionId(eq(ROOT), eq(EXTENSION), captor.capture());
+        assertEquals(expected.size(), inserted);
+        for (MultipartFile file : captor.getValue()) {
+            assertArrayEquals(expected.get(file.getOriginalFilename()), file.getBytes());
+        }
+    }
+
+    @Test
+    void importBundleFlattensFolders() throws Exception {
+        byte[] bundle = zip(new String[]{"schema/", "schema/" + ROOT}, DATA);
+        service.importBundle(ROOT, EXTENSION, new ByteArrayInputStream(bundle));
+        ArgumentCaptor<MultipartFile[]> captor = ArgumentCaptor.forClass(MultipartFile[].class);
+        verify(documents).insertDocsByExtensionId(eq(ROOT), eq(EXTENSION), captor.capture());
+        assertEquals(1, captor.getValue().length);
+        assertEquals(ROOT, captor.getValue()[0].getOriginalFilename());
+    }
+
+    @Test
+    void importInvalidBundle() throws Exception {
+        // Not a schema
+        assertThrows(InvalidContentException.class, () -> service.importBundle(ROOT, EXTENSION, stream("readme.txt")));
+        // Same file twice, even if in different folders
+        assertThrows(InvalidContentException.class, () -> service.importBundle(ROOT, EXTENSION, stream(ROOT, "copy/" + ROOT)));
+        // Nothing inside
+        assertThrows(InvalidContentException.class, () -> service.importBundle(ROOT, EXTENSION, stream()));
+        // Not even a zip
+        assertThrows(InvalidContentException.class, () -> service.importBundle(ROOT, EXTENSION, new ByteArrayInputStream(DATA)));
+        // Empty entry
+        byte[] empty = zip(new String[]{ROOT}, new byte[0]);
+        assertThrows(InvalidContentException.class, () -> service.importBundle(ROOT, EXTENSION, new ByteArrayInputStream(empty)));
+        verify(documents, never()).insertDocsByExtensionId(any(), any(), any());
+    }
+
+    @Test
+    void importBundleOverLimits() throws Exception {
+        when(cfg.getMaxEntries()).thenReturn(1);
+        assertThrows(InvalidContentException.class, () -> service.importBundle(ROOT, EXTENSION, stream(ROOT, "POCD_MT000040UV02.xsd")));
+        when(cfg.getMaxEntries()).thenReturn(25);
+        // Whole bundle over the limit, each file is within its own
+        when(cfg.getMaxSize()).thenReturn(DataSize.ofBytes(DATA.length));
+        InvalidContentException total = assertThrows(InvalidContentException.class, () -> service.importBundle(ROOT, EXTENSION, stream(ROOT, "POCD_MT000040UV02.xsd")));
+        assertEquals(String.format(ERR_SRV_BUNDLE_TOO_LARGE, DATA.length), total.getMessage());
+        // Single file over the limit
+        when(cfg.getMaxSize()).thenReturn(DataSize.ofMegabytes(10));
+        when(cfg.getMaxEntrySize()).thenReturn(DataSize.ofBytes(DATA.length - 1));
+        InvalidContentException entry = assertThrows(InvalidContentException.class, () -> service.importBundle(ROOT, EXTENSION, stream(ROOT)));
+        assertEquals(String.format(ERR_SRV_BUNDLE_ENTRY_TOO_LARGE, ROOT, DATA.length - 1), entry.getMessage());
+        verify(documents, never()).insertDocsByExtensionId(any(), any(), any());
+    }
+
+    @Test
+    void exportBundle() throws Exception {
+        SchemaETY inline = entity(ROOT);
+        inline.setContentSchema(DATA);
+        SchemaETY offloaded = entity("POCD_MT000040UV02.xsd");
+        offloaded.offload("ref");
+        // Providing mock knowledge
+        when(repository.isExtensionInserted(EXTENSION)).thenReturn(true);
+        when(repository.streamDocsByExtensionId(EXTENSION)).thenReturn(cursor(inline, offloaded));
+        when(content.open("ref")).thenReturn(new ByteArrayInputStream(DATA));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.exportBundle(EXTENSION).writeTo(out);
+        Map<String, byte[]> entries = unzip(out.toByteArray());
+        assertEquals(2, entries.size());
+        assertArrayEquals(DATA, entries.get(ROOT));
+        assertArrayEquals(DATA, entries.get("POCD_MT000040UV02.xsd"));
+    }
+
+    @Test
+    void exportMissingBundle() throws Exception {
+        when(repository.isExtensionInserted(EXTENSION)).thenReturn(false);
+        assertThrows(ExtensionNotFoundException.class, () -> service.exportBundle(EXTENSION));
+        verify(repository, never()).streamDocsByExtensionId(any());
+    }
+
+    private static SchemaETY entity(String name) {
+        SchemaETY e = new SchemaETY();
+        e.setNameSchema(name);
+        e.setTypeIdExtension(EXTENSION);
+        e.setLastUpdateDate(new Date());
+        return e;
+    }
+
+    private static CloseableIterator<SchemaETY> cursor(SchemaETY... docs) {
+        Iterator<SchemaETY> it = Arrays.asList(docs).iterator();
+        return new CloseableIterator<SchemaETY>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+            @Override
+            public SchemaETY next() {
+                return it.next();
+            }
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        };
+    }
+
+    private static ByteArrayInputStream stream(String... names) throws IOException {
+        return new ByteArrayInputStream(zip(names, DATA));
+    }
+
+    private static byte[] zip(String[] names, byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (String name : names) {
+                zip.putNextEntry(new ZipEntry(name));
+                if (!name.endsWith("/")) zip.write(data);
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, byte[]> unzip(byte[] bundle) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(bundle))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), StreamUtils.copyToByteArray(zip));
+            }
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractDatabaseHandler;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ICompactionRepo;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles(Constants.Profile.TEST)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CompactionRepoTest extends AbstractDatabaseHandler {
+
+    private static final String FAKE_FILENAME = "compaction.xsd";
+
+    @Autowired
+    private ICompactionRepo repository;
+
+    @BeforeAll
+    public void setup() throws IOException, OperationException {
+        this.setupTestRepository();
+    }
+
+    @Test
+    void findAndPurge() throws OperationException {
+        long now = System.currentTimeMillis();
+        // Five deleted versions, one per day, plus the active one
+        List<SchemaETY> versions = new ArrayList<>();
+        for (int i = 0; i <= 5; i++) {
+            SchemaETY entity = new SchemaETY();
+            entity.setNameSchema(FAKE_FILENAME);
+            entity.setContentSchema(("version " + i).getBytes());
+            entity.setTypeIdExtension(SCHEMA_TEST_FAKE_EXTS);
+            entity.setRootSchema(false);
+            entity.setInsertionDate(new Date(now - TimeUnit.DAYS.toMillis(i + 1L)));
+            entity.setLastUpdateDate(new Date(now - TimeUnit.DAYS.toMillis(i)));
+            entity.setDeleted(i > 0);
+            versions.add(mongo.insert(entity));
+        }
+        // Keep the two most recent deleted versions, nothing is protected as tombstone
+        List<String> ids = repository.findPurgeableIds(new Date(now), null, 2);
+        assertEquals(3, ids.size());
+        assertTrue(ids.contains(versions.get(5).getId()));
+        assertFalse(ids.contains(versions.get(0).getId()));
+        // Tombstones updated within the last two days are always kept
+        assertEquals(2, repository.findPurgeableIds(new Date(now - TimeUnit.DAYS.toMillis(3)), null, 0).size());
+        // Expired versions are purged regardless of the rank
+        assertEquals(4, repository.findPurgeableIds(new Date(now), new Date(now - TimeUnit.HOURS.toMillis(36)), 10).size());
+        // Purge, the active version is never removed
+        List<String> all = new ArrayList<>();
+        versions.forEach(v -> all.add(v.getId()));
+        assertEquals(5, repository.purge(all));
+        assertNotNull(mongo.findById(versions.get(0).getId(), SchemaETY.class));
+    }
+
+    @AfterAll
+    public void teardown() {
+        this.clearTestRepository();
+    }
+}
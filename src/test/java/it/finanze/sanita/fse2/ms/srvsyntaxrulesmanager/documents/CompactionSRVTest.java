@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.mongo.MongoCompactionCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ICompactionRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ICompactionSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.CompactionSRV;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.CompactionSRV.METRIC_COMPACTION_PURGED;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CompactionSRVTest {
+
+    private static final int TOMBSTONE_DAYS = 30;
+    private static final int KEEP_VERSIONS = 2;
+    private static final int BATCH_SIZE = 3;
+
+    private MeterRegistry registry;
+    private MongoCompactionCFG cfg;
+    private ICompactionRepo repository;
+    private ISchemaETagSRV etags;
+    private ICompactionSRV service;
+
+    @BeforeEach
+    void setup() {
+        cfg = mock(MongoCompactionCFG.class);
+        when(cfg.getTombstoneDays()).thenReturn(TOMBSTONE_DAYS);
+        when(cfg.getKeepVersions()).thenReturn(KEEP_VERSIONS);
+        when(cfg.getBatchSize()).thenReturn(BATCH_SIZE);
+        registry = new SimpleMeterRegistry();
+        repository = mock(ICompactionRepo.class);
+        etags = mock(ISchemaETagSRV.class);
+        service = new CompactionSRV(repository, cfg, etags, registry);
+    }
+
+    @Test
+    void compactInBatches() throws OperationException {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) ids.add(new ObjectId().toHexString());
+        // Providing mock knowledge
+        when(repository.findPurgeableIds(any(), isNull(), eq(KEEP_VERSIONS))).thenReturn(ids);
+        when(repository.purge(anyList())).thenAnswer(i -> (long) i.getArgument(0, List.class).size());
+        // Every document is removed, at most batch size at once
+        assertEquals(ids.size(), service.compact());
+        verify(repository, times(3)).purge(anyList());
+        assertEquals(ids.size(), registry.get(METRIC_COMPACTION_PURGED).counter().count());
+        // Cached tags are dropped once
+        verify(etags, times(1)).invalidateAll();
+    }
+
+    @Test
+    void compactKeepsTombstones() throws OperationException {
+        when(cfg.getMaxAgeDays()).thenReturn(365);
+        ArgumentCaptor<Date> tombstones = ArgumentCaptor.forClass(Date.class);
+        ArgumentCaptor<Date> expired = ArgumentCaptor.forClass(Date.class);
+        // Providing mock knowledge
+        when(repository.findPurgeableIds(tombstones.capture(), expired.capture(), anyInt())).thenReturn(new ArrayList<>());
+        // Nothing to remove
+        assertEquals(0, service.compact());
+        verify(repository, never()).purge(anyList());
+        verify(etags, never()).invalidateAll();
+        // The tombstone window is never shorter than configured
+        long window = System.currentTimeMillis() - tombstones.getValue().getTime();
+        assertTrue(window >= TimeUnit.DAYS.toMillis(TOMBSTONE_DAYS));
+        assertTrue(expired.getValue().before(tombstones.getValue()));
+    }
+
+    @Test
+    void rejectInvalidSettings() {
+        MongoCompactionCFG settings = new MongoCompactionCFG();
+        ReflectionTestUtils.setField(settings, "keepVersions", KEEP_VERSIONS);
+        // Not positive batch size
+        ReflectionTestUtils.setField(settings, "batchSize", 0);
+        assertThrows(IllegalStateException.class, settings::validate);
+        ReflectionTestUtils.setField(settings, "batchSize", -1);
+        assertThrows(IllegalStateException.class, settings::validate);
+        // Negative kept versions
+        ReflectionTestUtils.setField(settings, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(settings, "keepVersions", -1);
+        assertThrows(IllegalStateException.class, settings::validate);
+        // Valid settings
+        ReflectionTestUtils.setField(settings, "keepVersions", 0);
+        assertDoesNotThrow(settings::validate);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataProcessingException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.ContentCodec;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.ContentCodec.FORMAT_DEFLATE_XSD_V1;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility.computeHash;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentCodecTest {
+
+    private static final Path STANDARD = Paths.get("src", "test", "resources", "schema", "files", "standard");
+
+    @Test
+    void storedCompressed() throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(STANDARD)) {
+            files = paths.collect(Collectors.toList());
+        }
+        assertFalse(files.isEmpty());
+        for (Path path : files) {
+            byte[] data = Files.readAllBytes(path);
+            SchemaETY entity = SchemaETY.fromPath(path, "ext_a", false);
+            // Schemas always shrink
+            assertEquals(FORMAT_DEFLATE_XSD_V1, entity.getContentFormat());
+            assertTrue(entity.getContentSchema().length() < data.length);
+            // Digest and size refer to the plain content
+            assertEquals(computeHash(data), entity.digest());
+            assertEquals(data.length, entity.size());
+            // Both read paths give back the original bytes
+            assertArrayEquals(data, entity.content());
+            try (InputStream in = entity.decode(new ByteArrayInputStream(entity.getContentSchema().getData()))) {
+                assertArrayEquals(data, StreamUtils.copyToByteArray(in));
+            }
+        }
+    }
+
+    @Test
+    void storedPlain() throws DataProcessingException {
+        byte[] data = "x".getBytes(StandardCharsets.UTF_8);
+        SchemaETY entity = new SchemaETY();
+        entity.setContentSchema(data);
+        // Not worth compressing
+        assertNull(entity.getContentFormat());
+        assertArrayEquals(data, entity.getContentSchema().getData());
+        assertArrayEquals(data, entity.content());
+    }
+
+    @Test
+    void storedWithUnknownFormat() {
+        SchemaETY entity = new SchemaETY();
+        entity.setContentSchema("<xs:schema/><xs:schema/><xs:schema/>".getBytes(StandardCharsets.UTF_8));
+        entity.setContentFormat("unknown");
+        assertThrows(DataProcessingException.class, entity::content);
+        // Corrupted content
+        assertThrows(DataProcessingException.class, () -> ContentCodec.decode(FORMAT_DEFLATE_XSD_V1, new byte[]{1, 2, 3}));
+    }
+
+}
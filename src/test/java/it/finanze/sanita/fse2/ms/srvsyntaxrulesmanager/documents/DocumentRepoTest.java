@@ -17,6 +17,7 @@ import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataIntegrityException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -33,11 +34,14 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.ComponentScan.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -65,6 +69,20 @@ class DocumentRepoTest extends AbstractDatabaseHandler {
         this.setupTestRepository();
     }
 
+    @Test
+    void findDocsMetadataByExtensionId() throws OperationException {
+        // Retrieve both representations
+        List<SchemaETY> entities = repository.findDocsByExtensionId(SCHEMA_TEST_EXTS_A, false);
+        List<SchemaMetadataETY> metadata = repository.findDocsMetadataByExtensionId(SCHEMA_TEST_EXTS_A, false);
+        // Expect the same documents
+        assertEquals(entities.size(), metadata.size());
+        // Same for the grouped listing
+        assertEquals(
+            repository.groupByExtension(false).size(),
+            repository.groupMetadataByExtension(false).size()
+        );
+    }
+
     @Test
     void findDocById() throws OperationException {
         // Retrieve some entities
@@ -231,6 +249,74 @@ class DocumentRepoTest extends AbstractDatabaseHandler {
         ));
     }
 
+    @Test
+    void findDocsMetadataWithLegacyDocuments() throws OperationException, IOException {
+        // Documents written before the digest was stored
+        List<SchemaETY> legacy = new ArrayList<>();
+        try (Stream<Path> files = Files.list(SCHEMA_SAMPLE_FILES)) {
+            for (Path path : files.collect(Collectors.toList())) {
+                SchemaETY entity = SchemaETY.fromPath(path, SCHEMA_TEST_EXTS_D, false);
+                entity.setContentHash(null);
+                legacy.add(entity);
+            }
+        }
+        mongo.insertAll(legacy);
+        // Verify every digest is resolved
+        List<SchemaMetadataETY> metadata = repository.findDocsMetadataByExtensionId(SCHEMA_TEST_EXTS_D, false);
+        assertEquals(legacy.size(), metadata.size());
+        Map<String, String> digests = legacy.stream().collect(Collectors.toMap(SchemaETY::getId, SchemaETY::digest));
+        metadata.forEach(m -> assertEquals(digests.get(m.getId()), m.getContentHash()));
+    }
+
+    @Test
+    void replaceDocsByExtensionId() throws OperationException, DataIntegrityException, IOException {
+        // Retrieve old documents
+        List<SchemaETY> from = repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_A);
+        // Create the replacements
+        List<SchemaETY> newest = new ArrayList<>();
+        try (Stream<Path> files = Files.list(SCHEMA_SAMPLE_FILES)) {
+            for (Path path : files.collect(Collectors.toList())) {
+                newest.add(SchemaETY.fromPath(path, SCHEMA_TEST_EXTS_A, SCHEMA_TEST_ROOT.equals(path.getFileName().toString())));
+            }
+        }
+        // Replace
+        repository.replaceDocsByExtensionId(SCHEMA_TEST_EXTS_A, new ArrayList<>(), newest);
+        // Retrieve new documents
+        List<SchemaETY> to = repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_A);
+        // Assert size
+        assertEquals(newest.size(), to.size());
+        // Verify none of the old documents is still active
+        List<String> ids = to.stream().map(SchemaETY::getId).collect(Collectors.toList());
+        from.forEach(entity -> assertFalse(ids.contains(entity.getId())));
+    }
+
+    @Test
+    void replaceDocsWithInvalidExtension() throws IOException, OperationException {
+        // Create the replacements
+        List<SchemaETY> newest = new ArrayList<>();
+        try (Stream<Path> files = Files.list(SCHEMA_SAMPLE_FILES)) {
+            for (Path path : files.collect(Collectors.toList())) {
+                newest.add(SchemaETY.fromPath(path, SCHEMA_TEST_FAKE_EXTS, false));
+            }
+        }
+        // Nothing to replace
+        assertThrows(DataIntegrityException.class, () -> repository.replaceDocsByExtensionId(
+            SCHEMA_TEST_FAKE_EXTS, new ArrayList<>(), newest
+        ));
+        // Verify nothing has been inserted
+        assertFalse(repository.isExtensionInserted(SCHEMA_TEST_FAKE_EXTS));
+    }
+
+    @Test
+    void replaceDocsByExtensionIdException() {
+        // Provide knowledge, the test instance is standalone and replaces without transactions
+        doThrow(new MongoException("test")).when(mongo).updateMulti(any(), any(), eq(SchemaETY.class));
+        // Verify exception
+        assertThrows(OperationException.class, () -> repository.replaceDocsByExtensionId(
+            SCHEMA_TEST_EXTS_B, new ArrayList<>(), new ArrayList<>()
+        ));
+    }
+
     @Test
     void deleteDocsWithValidExtension() throws OperationException, DataIntegrityException {
         // Remove collection entities
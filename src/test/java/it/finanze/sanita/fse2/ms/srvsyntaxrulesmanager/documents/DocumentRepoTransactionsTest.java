@@ -0,0 +1,183 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractDatabaseHandler;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataIntegrityException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.ComponentScans;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants.ComponentScan.*;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_ID;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.FIELD_DELETED;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Transactional writes, they require a replica set (see application-replica.properties)
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ComponentScans( value = {
+    @ComponentScan(CONFIG_MONGO),
+    @ComponentScan(REPOSITORY),
+    @ComponentScan(UTILS)
+})
+@ActiveProfiles({Constants.Profile.TEST, Constants.Profile.REPLICA})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DocumentRepoTransactionsTest extends AbstractDatabaseHandler {
+
+    @SpyBean
+    private MongoTransactionManager transactions;
+
+    @Autowired
+    private IDocumentRepo repository;
+
+    @Autowired
+    private GridFsTemplate gridfs;
+
+    @BeforeAll
+    public void setup() throws IOException, OperationException {
+        this.setupTestRepository();
+        gridfs.delete(new Query());
+    }
+
+    @Test
+    void replaceDocsCommitted() throws OperationException, DataIntegrityException, IOException {
+        // Retrieve old documents
+        List<SchemaETY> from = repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_A);
+        List<SchemaETY> newest = getReplacements(SCHEMA_TEST_EXTS_A);
+        // Replace
+        repository.replaceDocsByExtensionId(SCHEMA_TEST_EXTS_A, new ArrayList<>(), newest);
+        // Verify the write went through a transaction
+        verify(transactions, times(1)).commit(any(TransactionStatus.class));
+        // Verify only the new documents are active
+        List<SchemaETY> to = repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_A);
+        assertEquals(newest.size(), to.size());
+        List<String> ids = to.stream().map(SchemaETY::getId).collect(Collectors.toList());
+        from.forEach(entity -> assertFalse(ids.contains(entity.getId())));
+        // Verify the contents are on GridFS and readable
+        to.forEach(entity -> assertTrue(entity.isOffloaded()));
+        assertNotNull(gridfs.findOne(query(where(FIELD_ID).is(new ObjectId(to.get(0).getContentRef())))));
+    }
+
+    @Test
+    void replaceDocsWithRemovedExtension() throws OperationException, IOException {
+        long files = countFiles();
+        List<SchemaETY> newest = getReplacements(SCHEMA_TEST_FAKE_EXTS);
+        // Nothing to replace, the inserts are rolled back
+        assertThrows(DataIntegrityException.class, () -> repository.replaceDocsByExtensionId(
+            SCHEMA_TEST_FAKE_EXTS, new ArrayList<>(), newest
+        ));
+        verify(transactions, times(1)).rollback(any(TransactionStatus.class));
+        verify(transactions, never()).commit(any(TransactionStatus.class));
+        // Verify nothing has been inserted, contents included
+        assertFalse(repository.isExtensionInserted(SCHEMA_TEST_FAKE_EXTS));
+        assertEquals(files, countFiles());
+    }
+
+    @Test
+    void patchDocsRolledBack() throws OperationException, IOException {
+        long files = countFiles();
+        List<SchemaETY> replaced = repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_B);
+        List<SchemaETY> newest = getReplacements(SCHEMA_TEST_EXTS_B).subList(0, replaced.size() - 1);
+        // A concurrent write retires one of the documents meanwhile
+        SchemaETY retired = replaced.get(replaced.size() - 1);
+        mongo.updateFirst(
+            query(where(FIELD_ID).is(new ObjectId(retired.getId()))),
+            new Update().set(FIELD_DELETED, true),
+            SchemaETY.class
+        );
+        // Verify the soft-deletes are rolled back
+        assertThrows(DataIntegrityException.class, () -> repository.patchDocsByExtensionId(replaced, newest));
+        verify(transactions, times(1)).rollback(any(TransactionStatus.class));
+        List<String> active = repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_B)
+            .stream().map(SchemaETY::getId).collect(Collectors.toList());
+        assertEquals(replaced.size() - 1, active.size());
+        replaced.stream().filter(e -> e != retired).forEach(e -> assertTrue(active.contains(e.getId())));
+        // Verify nothing has been inserted, contents included
+        newest.forEach(e -> assertFalse(active.contains(e.getId())));
+        assertEquals(files, countFiles());
+    }
+
+    @Test
+    void replaceDocsWithCommitFailure() throws OperationException, IOException {
+        long files = countFiles();
+        List<SchemaETY> from = repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_C);
+        List<SchemaETY> newest = getReplacements(SCHEMA_TEST_EXTS_C);
+        // The commit is refused
+        doAnswer(i -> {
+            transactions.rollback(i.getArgument(0));
+            throw new TransactionSystemException("test");
+        }).when(transactions).commit(any(TransactionStatus.class));
+        // Verify exception
+        assertThrows(OperationException.class, () -> repository.replaceDocsByExtensionId(
+            SCHEMA_TEST_EXTS_C, new ArrayList<>(), newest
+        ));
+        // Verify the old documents are still active and the contents removed
+        assertEquals(from.size(), repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_C).size());
+        assertEquals(files, countFiles());
+    }
+
+    @AfterAll
+    public void teardown() {
+        gridfs.delete(new Query());
+        this.clearTestRepository();
+    }
+
+    private List<SchemaETY> getReplacements(String extension) throws IOException {
+        List<SchemaETY> newest = new ArrayList<>();
+        try (Stream<Path> files = Files.list(SCHEMA_SAMPLE_FILES)) {
+            for (Path path : files.collect(Collectors.toList())) {
+                newest.add(SchemaETY.fromPath(path, extension, SCHEMA_TEST_ROOT.equals(path.getFileName().toString())));
+            }
+        }
+        return newest;
+    }
+
+    private long countFiles() {
+        List<GridFSFile> files = new ArrayList<>();
+        gridfs.find(new Query()).into(files);
+        return files.size();
+    }
+
+}
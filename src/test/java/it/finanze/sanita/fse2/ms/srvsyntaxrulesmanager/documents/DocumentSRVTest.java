@@ -12,35 +12,66 @@
 package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
 
 import brave.Tracer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.MongoException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractEntityHandler;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaContentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDocumentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaFileDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaUpdateDTO;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.*;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaContentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IActiveDocsCacheSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetEventsSRV;
 import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IDocumentSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaValidatorSRV;
+import org.apache.commons.io.IOUtils;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
 import org.mockito.MockedStatic;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.createPartialSchemaFromResource;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.createSchemaFromResource;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility.encodeBase64;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.RoutesUtility.API_PARAM_FILES;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 @WebMvcTest(IDocumentSRV.class)
+@Import(SimpleMeterRegistry.class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class DocumentSRVTest extends AbstractEntityHandler {
 
@@ -48,14 +79,34 @@ class DocumentSRVTest extends AbstractEntityHandler {
     private Tracer tracer;
     @MockBean
     private IDocumentRepo repository;
+    @MockBean
+    private ISchemaValidatorSRV validator;
+    @MockBean
+    private ISchemaContentRepo content;
+    @MockBean
+    private ISchemaETagSRV etags;
+    @MockBean
+    private IActiveDocsCacheSRV cache;
+    @MockBean
+    private IChangeSetEventsSRV events;
+    @Captor
+    private ArgumentCaptor<List<SchemaETY>> replaced;
     @Autowired
     private IDocumentSRV service;
+    @Autowired
+    private ObjectMapper mapper;
 
     @BeforeAll
     public void setup() throws IOException {
         this.setupTestEntities();
     }
 
+    @BeforeEach
+    void bypass() throws OperationException {
+        // Active documents are read straight from the mocked repository
+        when(cache.getActiveDocs(anyString())).thenAnswer(i -> repository.findDocsByExtensionId(i.getArgument(0), false));
+    }
+
     @Test
     void findDocWithValidId() throws OperationException {
         // Providing mock knowledge
@@ -83,7 +134,7 @@ class DocumentSRVTest extends AbstractEntityHandler {
         when(repository.findDocsByExtensionId(anyString(), ArgumentMatchers.eq(false))).thenReturn(new ArrayList<>());
         // Verify exception is thrown
         assertThrows(ExtensionNotFoundException.class, () -> {
-            service.findDocsByExtensionId(SCHEMA_TEST_FAKE_EXTS, false);
+            service.findDocsByExtensionId(SCHEMA_TEST_FAKE_EXTS, new SchemaDocumentDTO.Options(true), false);
         });
     }
 
@@ -94,10 +145,109 @@ class DocumentSRVTest extends AbstractEntityHandler {
             .thenReturn(new ArrayList<>(getReadOnlyEntities().values()));
         // Verify exception is not thrown
         assertDoesNotThrow(() -> {
-            service.findDocsByExtensionId(SCHEMA_TEST_EXTS_A, false);
+            service.findDocsByExtensionId(SCHEMA_TEST_EXTS_A, new SchemaDocumentDTO.Options(true), false);
         });
     }
 
+    @Test
+    void findActiveDocsFromCache() throws OperationException, ExtensionNotFoundException {
+        // Providing mock knowledge
+        doReturn(getEntitiesToUpload()).when(cache).getActiveDocs(SCHEMA_TEST_EXTS_A);
+        List<SchemaDocumentDTO> docs = service.findDocsByExtensionId(SCHEMA_TEST_EXTS_A, new SchemaDocumentDTO.Options(true), false);
+        assertEquals(getEntitiesToUpload().size(), docs.size());
+        verify(repository, never()).findDocsByExtensionId(anyString(), anyBoolean());
+        // History is never cached
+        when(repository.findDocsByExtensionId(SCHEMA_TEST_EXTS_A, true)).thenReturn(getEntitiesToUpload());
+        service.findDocsByExtensionId(SCHEMA_TEST_EXTS_A, new SchemaDocumentDTO.Options(true), true);
+        verify(cache, times(1)).getActiveDocs(anyString());
+    }
+
+    @Test
+    void findDocFromCache() throws OperationException, DocumentNotFoundException, IOException {
+        SchemaETY entity = getEntitiesToUpload().get(0);
+        byte[] data = entity.content();
+        SchemaETY cached = entity.withoutContent();
+        cached.setId(FAKE_VALID_DTO_ID);
+        // Providing mock knowledge
+        when(cache.getActiveDoc(anyString())).thenReturn(cached);
+        when(cache.getContent(cached)).thenReturn(SchemaContentDTO.of(data));
+        JsonNode json = mapper.readTree(mapper.writeValueAsString(service.findDocById(FAKE_VALID_DTO_ID)));
+        assertEquals(encodeBase64(data), json.get("contentSchema").asText());
+        verify(repository, never()).findDocById(anyString());
+        // Evicted before being written
+        when(cache.getContent(cached)).thenReturn(null);
+        when(repository.findDocById(anyString())).thenReturn(entity);
+        SchemaFileDTO file = service.findDocContentById(FAKE_VALID_DTO_ID);
+        assertEquals(entity.digest(), file.getDigest());
+        assertArrayEquals(data, IOUtils.toByteArray(file.asResource().getInputStream()));
+        verify(repository, times(1)).findDocById(anyString());
+    }
+
+    @Test
+    void findDocContentAsBase64() throws OperationException, DocumentNotFoundException, IOException {
+        // Providing mock knowledge
+        SchemaETY entity = getEntitiesToUpload().get(0);
+        when(repository.findDocById(anyString())).thenReturn(entity);
+        // Encoding and decompression happen at serialization time only
+        JsonNode json = mapper.readTree(mapper.writeValueAsString(service.findDocById(FAKE_VALID_DTO_ID)));
+        // Same wire format as before, the stored compression is not exposed
+        assertEquals(encodeBase64(entity.content()), json.get("contentSchema").asText());
+    }
+
+    @Test
+    void findDocContentFromGridFs() throws OperationException, DocumentNotFoundException, IOException {
+        // Providing mock knowledge
+        SchemaETY original = getEntitiesToUpload().get(1);
+        byte[] data = original.content();
+        SchemaETY entity = new SchemaETY();
+        entity.setId(FAKE_VALID_DTO_ID);
+        entity.setNameSchema(original.getNameSchema());
+        entity.setTypeIdExtension(original.getTypeIdExtension());
+        entity.setRootSchema(false);
+        entity.setInsertionDate(original.getInsertionDate());
+        entity.setLastUpdateDate(original.getLastUpdateDate());
+        entity.setContentSchema(data);
+        byte[] stored = entity.getContentSchema().getData();
+        entity.offload(new ObjectId().toHexString());
+        when(repository.findDocById(anyString())).thenReturn(entity);
+        when(content.open(anyString())).thenReturn(new ByteArrayInputStream(stored));
+        SchemaDocumentDTO doc = service.findDocById(FAKE_VALID_DTO_ID);
+        // Nothing is read until serialization
+        verify(content, never()).open(anyString());
+        JsonNode json = mapper.readTree(mapper.writeValueAsString(doc));
+        // Same wire format as inline contents
+        assertEquals(encodeBase64(data), json.get("contentSchema").asText());
+        verify(content, times(1)).open(anyString());
+    }
+
+    @Test
+    void findDocContentById() throws OperationException, DocumentNotFoundException, IOException {
+        // Providing mock knowledge
+        SchemaETY entity = getEntitiesToUpload().get(0);
+        byte[] data = entity.content();
+        when(repository.findDocById(anyString())).thenReturn(entity);
+        SchemaFileDTO file = service.findDocContentById(FAKE_VALID_DTO_ID);
+        assertEquals(entity.getContentHash(), file.getDigest());
+        assertEquals(data.length, file.getLength());
+        assertArrayEquals(data, IOUtils.toByteArray(file.asResource().getInputStream()));
+        // Not found
+        when(repository.findDocById(anyString())).thenReturn(null);
+        assertThrows(DocumentNotFoundException.class, () -> service.findDocContentById(FAKE_VALID_DTO_ID));
+    }
+
+    @Test
+    void findDocsMetadataWithValidExtension() throws OperationException {
+        // Providing mock knowledge
+        when(repository.findDocsMetadataByExtensionId(SCHEMA_TEST_EXTS_A, false))
+            .thenReturn(getReadOnlyEntities().values().stream().map(SchemaMetadataETY::fromEntity).collect(Collectors.toList()));
+        // Verify content is not loaded nor encoded
+        assertDoesNotThrow(() -> {
+            List<SchemaDocumentDTO> docs = service.findDocsByExtensionId(SCHEMA_TEST_EXTS_A, new SchemaDocumentDTO.Options(false), false);
+            assertTrue(docs.stream().allMatch(d -> d.getContentSchema() == null));
+        });
+        verify(repository, never()).findDocsByExtensionId(anyString(), anyBoolean());
+    }
+
     @Test
     void insertDocsWithValidExtension() throws OperationException {
         // Providing mock knowledge
@@ -111,6 +261,12 @@ class DocumentSRVTest extends AbstractEntityHandler {
                 createSchemaFromResource(API_PARAM_FILES, true)
             );
         });
+        // Cached tags and documents of the extension are dropped
+        verify(etags, times(1)).invalidate(SCHEMA_TEST_EXTS_D);
+        verify(cache, times(1)).invalidate(SCHEMA_TEST_EXTS_D);
+        // Subscribers are notified of the committed documents
+        int inserted = getEntitiesToUpload().size();
+        verify(events, times(1)).publish(argThat(i -> i.size() == inserted), eq(Collections.emptyList()));
     }
 
     @Test
@@ -149,6 +305,11 @@ class DocumentSRVTest extends AbstractEntityHandler {
                 createSchemaFromResource(API_PARAM_FILES, true)
             );
         });
+        // A failed write may still have changed the documents
+        verify(etags, times(1)).invalidate(SCHEMA_TEST_EXTS_D);
+        verify(cache, times(1)).invalidate(SCHEMA_TEST_EXTS_D);
+        // Nothing has been committed
+        verify(events, never()).publish(anyList(), anyList());
     }
 
     @Test
@@ -179,10 +340,10 @@ class DocumentSRVTest extends AbstractEntityHandler {
     @Test
     void updateWithValidExtension() throws OperationException, DataIntegrityException {
         // Providing mock knowledge
-        when(repository.isExtensionInserted(SCHEMA_TEST_EXTS_B)).thenReturn(true);
-        when(repository.getInsertedDocumentsByExtension(anyString())).thenReturn(getEntitiesToUseAsReplacementList());
-        when(repository.deleteDocsByExtensionId(anyString())).thenReturn(getEntitiesToUseAsReplacementList());
-        when(repository.insertDocsByExtensionId(anyList())).thenReturn(getEntitiesToUseAsReplacementList());
+        when(repository.findDocsMetadataByExtensionId(SCHEMA_TEST_EXTS_B, false)).thenReturn(
+            getEntitiesToUseAsReplacementList().stream().map(SchemaMetadataETY::fromEntity).collect(Collectors.toList())
+        );
+        when(repository.replaceDocsByExtensionId(anyString(), anyList(), anyList())).thenReturn(getEntitiesToUseAsReplacementList());
         // Verify exception is thrown
         assertDoesNotThrow(() -> {
             service.updateDocsByExtensionId(
@@ -191,12 +352,16 @@ class DocumentSRVTest extends AbstractEntityHandler {
                 createSchemaFromResource(API_PARAM_FILES, true)
             );
         });
+        // Verify the replacement is a single write
+        verify(repository, times(1)).replaceDocsByExtensionId(eq(SCHEMA_TEST_EXTS_B), anyList(), anyList());
+        verify(repository, never()).deleteDocsByExtensionId(anyString());
+        verify(repository, never()).insertDocsByExtensionId(anyList());
     }
 
     @Test
     void updateWithInvalidExtension() throws OperationException {
         // Providing mock knowledge
-        when(repository.isExtensionInserted(SCHEMA_TEST_EXTS_C)).thenReturn(false);
+        when(repository.findDocsMetadataByExtensionId(SCHEMA_TEST_EXTS_C, false)).thenReturn(new ArrayList<>());
         // Verify exception is thrown
         assertThrows(ExtensionNotFoundException.class, () -> {
             service.updateDocsByExtensionId(
@@ -212,8 +377,7 @@ class DocumentSRVTest extends AbstractEntityHandler {
     @Test
     void updateWithInvalidDataFile() throws OperationException {
         // Providing mock knowledge
-        when(repository.isExtensionInserted(SCHEMA_TEST_EXTS_B)).thenReturn(true);
-        when(repository.getInsertedDocumentsByExtension(anyString())).thenReturn(new ArrayList<>());
+        when(repository.findDocsMetadataByExtensionId(SCHEMA_TEST_EXTS_B, false)).thenReturn(getMetadataToUpload());
         try(MockedStatic<SchemaETY> mock = mockStatic(SchemaETY.class)) {
             // Providing mock knowledge
             mock.when(() -> SchemaETY.fromMultipart(
@@ -243,6 +407,9 @@ class DocumentSRVTest extends AbstractEntityHandler {
         assertDoesNotThrow(() -> {
             service.deleteDocsByExtensionId(SCHEMA_TEST_EXTS_C);
         });
+        verify(etags, times(1)).invalidate(SCHEMA_TEST_EXTS_C);
+        int deleted = getEntitiesToUpload().size();
+        verify(events, times(1)).publish(eq(Collections.emptyList()), argThat(d -> d.size() == deleted));
     }
 
     @Test
@@ -255,6 +422,82 @@ class DocumentSRVTest extends AbstractEntityHandler {
         });
     }
 
+    @Test
+    void patchDocsWithValidExtension() throws Exception {
+        // Providing mock knowledge
+        List<SchemaETY> current = getEntitiesToUpload();
+        when(repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_D)).thenReturn(current);
+        when(repository.patchDocsByExtensionId(anyList(), anyList())).thenAnswer(i -> i.getArgument(1));
+        MockMultipartFile[] files = createPartialSchemaFromResource(API_PARAM_FILES);
+        // Verify every file is inserted
+        assertEquals(files.length, service.patchDocsByExtensionId(SCHEMA_TEST_EXTS_D, files).getUpdatedItems());
+        // Verify the bundle is read once and written once
+        verify(repository, never()).isExtensionInserted(anyString());
+        verify(repository, times(1)).getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_D);
+        verify(repository, never()).deleteDocsByExtensionIdAndFilenames(anyString(), anyList());
+        verify(repository, times(1)).patchDocsByExtensionId(replaced.capture(), anyList());
+        // Verify only the matching files are replaced
+        Set<String> names = current.stream().map(SchemaETY::getNameSchema).collect(Collectors.toSet());
+        long expected = Arrays.stream(files).map(MockMultipartFile::getOriginalFilename).filter(names::contains).count();
+        assertEquals(expected, replaced.getValue().size());
+    }
+
+    @Test
+    void patchDocsWithUnchangedFiles() throws Exception {
+        // Providing mock knowledge
+        when(repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_D)).thenReturn(getEntitiesToUpload());
+        MockMultipartFile[] files = createSchemaFromResource(API_PARAM_FILES, true);
+        // Same bytes of the active version
+        SchemaUpdateDTO res = service.patchDocsByExtensionId(SCHEMA_TEST_EXTS_D, files);
+        assertEquals(0, res.getUpdatedItems());
+        assertEquals(files.length, res.getUnchangedItems().size());
+        // Verify nothing is written
+        verify(repository, never()).patchDocsByExtensionId(anyList(), anyList());
+    }
+
+    @Test
+    void patchDocsWithDuplicatedFiles() throws Exception {
+        // Providing mock knowledge
+        List<SchemaETY> current = getEntitiesToUpload();
+        SchemaETY duplicated = getEntitiesToUpload().get(0);
+        current.add(duplicated);
+        when(repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_D)).thenReturn(current);
+        when(repository.patchDocsByExtensionId(anyList(), anyList())).thenAnswer(i -> i.getArgument(1));
+        MockMultipartFile[] files = createSchemaFromResource(API_PARAM_FILES, true);
+        // Same bytes of the active version, the duplicated file is written once more
+        SchemaUpdateDTO res = service.patchDocsByExtensionId(SCHEMA_TEST_EXTS_D, files);
+        assertEquals(1, res.getUpdatedItems());
+        assertEquals(files.length - 1, res.getUnchangedItems().size());
+        // Verify every active copy is retired
+        verify(repository, times(1)).patchDocsByExtensionId(replaced.capture(), anyList());
+        assertEquals(2, replaced.getValue().size());
+        assertTrue(replaced.getValue().stream().allMatch(e -> e.getNameSchema().equals(duplicated.getNameSchema())));
+    }
+
+    @Test
+    void updateDocsWithUnchangedFiles() throws Exception {
+        // Providing mock knowledge
+        when(repository.findDocsMetadataByExtensionId(SCHEMA_TEST_EXTS_D, false)).thenReturn(getMetadataToUpload());
+        MockMultipartFile[] files = createSchemaFromResource(API_PARAM_FILES, true);
+        // Same bytes and same root of the active version
+        SchemaUpdateDTO res = service.updateDocsByExtensionId(SCHEMA_TEST_ROOT, SCHEMA_TEST_EXTS_D, files);
+        assertEquals(0, res.getUpdatedItems());
+        assertEquals(files.length, res.getUnchangedItems().size());
+        // Verify nothing is written
+        verify(repository, never()).replaceDocsByExtensionId(anyString(), anyList(), anyList());
+    }
+
+    @Test
+    void patchDocsWithInvalidExtension() throws OperationException, DataIntegrityException {
+        // Providing mock knowledge
+        when(repository.getInsertedDocumentsByExtension(SCHEMA_TEST_EXTS_C)).thenReturn(new ArrayList<>());
+        // Verify exception is thrown
+        assertThrows(ExtensionNotFoundException.class, () -> {
+            service.patchDocsByExtensionId(SCHEMA_TEST_EXTS_C, createPartialSchemaFromResource(API_PARAM_FILES));
+        });
+        verify(repository, never()).patchDocsByExtensionId(anyList(), anyList());
+    }
+
     @AfterAll
     public void teardown() {
         this.clearTestEntities();
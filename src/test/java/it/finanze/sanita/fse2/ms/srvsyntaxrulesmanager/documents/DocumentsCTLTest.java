@@ -29,22 +29,28 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.List;
 
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.*;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.error.ErrorType.*;
 import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.RoutesUtility.API_PARAM_FILES;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.RoutesUtility.API_ZIP_MEDIA_TYPE;
 import static org.apache.http.HttpStatus.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
 import static org.springframework.http.MediaType.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -167,16 +173,41 @@ class DocumentsCTLTest extends AbstractEntityHandler {
     @Test
     void updateDocumentsWithValidData() throws Exception {
         this.uploadDocumentsWithValidData();
+        MockMultipartFile[] files = createModifiedSchemaFromResource(API_PARAM_FILES);
+        MockMultipartFile[] modified = createPartialSchemaFromResource(API_PARAM_FILES);
         mvc.perform(
             putDocsByExtensionIdReq(
                 SCHEMA_TEST_ROOT,
                 SCHEMA_TEST_EXTS_A,
-                createSchemaFromResource(API_PARAM_FILES, true)
+                files
             )
         ).andExpectAll(
             status().is(SC_OK),
-            content().contentType(APPLICATION_JSON_VALUE)
+            content().contentType(APPLICATION_JSON_VALUE),
+            jsonPath("$.updatedItems").value(modified.length),
+            jsonPath("$.unchangedItems.length()").value(files.length - modified.length)
+        );
+    }
+
+    @Test
+    void updateDocumentsWithUnchangedData() throws Exception {
+        this.uploadDocumentsWithValidData();
+        MockMultipartFile[] files = createSchemaFromResource(API_PARAM_FILES, true);
+        mvc.perform(
+            putDocsByExtensionIdReq(
+                SCHEMA_TEST_ROOT,
+                SCHEMA_TEST_EXTS_A,
+                files
+            )
+        ).andExpectAll(
+            status().is(SC_OK),
+            content().contentType(APPLICATION_JSON_VALUE),
+            jsonPath("$.updatedItems").value(0),
+            jsonPath("$.unchangedItems.length()").value(files.length)
         );
+        // Verify no dead rows are written
+        List<SchemaETY> onDB = mongo.find(Query.query(Criteria.where("type_id_extension").is(SCHEMA_TEST_EXTS_A)), SchemaETY.class);
+        assertEquals(files.length, onDB.size());
     }
 
     @Test
@@ -197,12 +228,13 @@ class DocumentsCTLTest extends AbstractEntityHandler {
     @Test
     void updateDocumentsWithInvalidOperation() throws Exception {
         this.uploadDocumentsWithValidData();
-        Mockito.doThrow(new MongoException("Invalid exception")).when(mongo).insertAll(any());
+        // The test instance is standalone, the documents are soft-deleted before the inserts
+        Mockito.doThrow(new MongoException("Invalid exception")).when(mongo).updateMulti(any(Query.class), any(Update.class), eq(SchemaETY.class));
         mvc.perform(
             putDocsByExtensionIdReq(
                 SCHEMA_TEST_ROOT,
                 SCHEMA_TEST_EXTS_A,
-                createSchemaFromResource(API_PARAM_FILES, true)
+                createModifiedSchemaFromResource(API_PARAM_FILES)
             )
         ).andExpectAll(
             status().is(SC_INTERNAL_SERVER_ERROR),
@@ -290,6 +322,32 @@ class DocumentsCTLTest extends AbstractEntityHandler {
         );
     }
 
+    @Test
+    void uploadAndDownloadBundle() throws Exception {
+        mvc.perform(
+            postBundleReq(SCHEMA_TEST_ROOT, SCHEMA_TEST_EXTS_A, createZipFromResource())
+        ).andExpectAll(
+            status().is(201),
+            content().contentType(APPLICATION_JSON)
+        );
+        MvcResult result = mvc.perform(getBundleReq(SCHEMA_TEST_EXTS_A)).andExpect(
+            request().asyncStarted()
+        ).andReturn();
+        mvc.perform(asyncDispatch(result)).andExpectAll(
+            status().isOk(),
+            content().contentType(API_ZIP_MEDIA_TYPE)
+        );
+    }
+
+    @Test
+    void downloadBundleWithInvalidExtension() throws Exception {
+        mvc.perform(getBundleReq(SCHEMA_TEST_EXTS_A)).andExpectAll(
+            status().is(SC_NOT_FOUND),
+            content().contentType(APPLICATION_PROBLEM_JSON),
+            jsonPath("$.type").value(RESOURCE.getType())
+        );
+    }
+
     @Test
     void uploadDocumentsWithDuplicatedFiles() throws Exception {
         mvc.perform(
@@ -512,10 +570,12 @@ class DocumentsCTLTest extends AbstractEntityHandler {
     @Test
     void patchDocumentsTestWithMongoFailure() throws Exception {
         this.uploadDocumentsWithValidData();
-        Mockito.doThrow(new MongoException("Mongo failure")).when(mongo).insertAll(any());
+        BulkOperations ops = Mockito.mock(BulkOperations.class);
+        Mockito.doThrow(new MongoException("Mongo failure")).when(ops).execute();
+        Mockito.doReturn(ops).when(mongo).bulkOps(any(BulkMode.class), eq(SchemaETY.class));
         mvc.perform(patchDocsByExtensionIdReq(
             SCHEMA_TEST_EXTS_A,
-            createSchemaFromResource(API_PARAM_FILES, true)
+            createPartialSchemaFromResource(API_PARAM_FILES)
         )).andExpectAll(
             status().is(SC_INTERNAL_SERVER_ERROR),
             content().contentType(APPLICATION_PROBLEM_JSON)
@@ -526,11 +586,11 @@ class DocumentsCTLTest extends AbstractEntityHandler {
     void patchDocumentsTestWithDataIntegrityException() throws Exception {
         this.uploadDocumentsWithValidData();
 
-        Mockito.doThrow(new DataIntegrityException("Integrity failed")).when(repository).deleteDocsByExtensionIdAndFilenames(anyString(), any());
+        Mockito.doThrow(new DataIntegrityException("Integrity failed")).when(repository).patchDocsByExtensionId(anyList(), anyList());
 
         mvc.perform(
             patchDocsByExtensionIdReq(SCHEMA_TEST_EXTS_A,
-            createSchemaFromResource(API_PARAM_FILES, true)
+            createPartialSchemaFromResource(API_PARAM_FILES)
         )).andExpectAll(
                 status().is(SC_INTERNAL_SERVER_ERROR),
                 content().contentType(APPLICATION_PROBLEM_JSON)
@@ -0,0 +1,162 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import brave.Tracer;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.controller.IEdsDocumentsCTL;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaContentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaDocumentDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.SchemaFileDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DocumentNotFoundException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.ExtensionNotFoundException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IBundleSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IDocumentSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.*;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.error.ErrorType.RESOURCE;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.MiscUtility.computeHash;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_NOT_MODIFIED;
+import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.http.HttpHeaders.*;
+import static org.springframework.http.MediaType.APPLICATION_PROBLEM_JSON;
+import static org.springframework.http.MediaType.APPLICATION_XML;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(IEdsDocumentsCTL.class)
+class DocumentsConditionalCTLTest {
+
+    private static final String ID = "62cd4f7f5c7e221a80e7effa";
+    private static final byte[] DATA = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"/>".getBytes(StandardCharsets.UTF_8);
+    private static final String EXTENSION = "ext_a";
+    private static final String DIGEST = computeHash(DATA);
+
+    @Autowired
+    private MockMvc mvc;
+    @MockBean
+    private Tracer tracer;
+    @MockBean
+    private IDocumentSRV service;
+    @MockBean
+    private ISchemaETagSRV etags;
+    @MockBean
+    private IBundleSRV bundles;
+
+    @Test
+    void getDocumentContent() throws Exception {
+        when(service.findDocContentById(anyString())).thenReturn(file(SchemaContentDTO.of(DATA)));
+        mvc.perform(getDocContentByIdReq(ID)).andExpectAll(
+            status().isOk(),
+            content().contentType(APPLICATION_XML),
+            content().bytes(DATA),
+            header().string(ETAG, "W/\"" + DIGEST + "\""),
+            header().longValue(CONTENT_LENGTH, DATA.length)
+        );
+    }
+
+    @Test
+    void getDocumentContentNotModified() throws Exception {
+        SchemaContentDTO.Source source = mock(SchemaContentDTO.Source.class);
+        when(service.findDocContentById(anyString())).thenReturn(file(SchemaContentDTO.of(source)));
+        mvc.perform(getDocContentByIdReq(ID).header(IF_NONE_MATCH, "\"" + DIGEST + "\"")).andExpectAll(
+            status().is(SC_NOT_MODIFIED),
+            header().string(ETAG, "W/\"" + DIGEST + "\""),
+            content().bytes(new byte[0])
+        );
+        // The stored content is never opened
+        verify(source, never()).open();
+    }
+
+    @Test
+    void getDocumentContentWithStaleETag() throws Exception {
+        when(service.findDocContentById(anyString())).thenReturn(file(SchemaContentDTO.of(DATA)));
+        mvc.perform(getDocContentByIdReq(ID).header(IF_NONE_MATCH, "\"stale\"")).andExpectAll(
+            status().isOk(),
+            content().bytes(DATA)
+        );
+    }
+
+    @Test
+    void getDocumentContentWithNotFound() throws Exception {
+        when(service.findDocContentById(anyString())).thenThrow(new DocumentNotFoundException("Not found"));
+        mvc.perform(getDocContentByIdReq(ID)).andExpectAll(
+            status().is(SC_NOT_FOUND),
+            content().contentType(APPLICATION_PROBLEM_JSON),
+            jsonPath("$.title").value(RESOURCE.getTitle())
+        );
+    }
+
+    @Test
+    void getDocumentsByExtensionNotModified() throws Exception {
+        when(etags.getExtensionTag(EXTENSION, false, false)).thenReturn(DIGEST);
+        mvc.perform(findDocsByExtensionIdReq(EXTENSION).header(IF_NONE_MATCH, "\"" + DIGEST + "\"")).andExpectAll(
+            status().is(SC_NOT_MODIFIED),
+            header().string(ETAG, "W/\"" + DIGEST + "\"")
+        );
+        // Documents are never loaded
+        verify(service, never()).findDocsByExtensionId(anyString(), any(), anyBoolean());
+    }
+
+    @Test
+    void getDocumentsByExtensionModified() throws Exception {
+        when(etags.getExtensionTag(EXTENSION, false, false)).thenReturn(DIGEST);
+        when(service.findDocsByExtensionId(eq(EXTENSION), any(), eq(false))).thenReturn(new ArrayList<>(singletonList(document())));
+        mvc.perform(findDocsByExtensionIdReq(EXTENSION).header(IF_NONE_MATCH, "\"stale\"")).andExpectAll(
+            status().isOk(),
+            header().string(ETAG, "W/\"" + DIGEST + "\""),
+            jsonPath("$.items[0].typeIdExtension").value(EXTENSION)
+        );
+    }
+
+    @Test
+    void getDocumentsByExtensionWithNotFound() throws Exception {
+        // No tag, the regular flow answers
+        when(service.findDocsByExtensionId(eq(EXTENSION), any(), anyBoolean())).thenThrow(new ExtensionNotFoundException("Not found"));
+        mvc.perform(findDocsByExtensionIdReq(EXTENSION).header(IF_NONE_MATCH, "*")).andExpectAll(
+            status().is(SC_NOT_FOUND),
+            content().contentType(APPLICATION_PROBLEM_JSON)
+        );
+    }
+
+    @Test
+    void getAllDocumentsNotModified() throws Exception {
+        when(etags.getListingTag(false, false)).thenReturn(DIGEST);
+        mvc.perform(findActiveDocsReq().header(IF_NONE_MATCH, "W/\"" + DIGEST + "\"")).andExpectAll(
+            status().is(SC_NOT_MODIFIED),
+            header().string(ETAG, "W/\"" + DIGEST + "\"")
+        );
+        // Documents are never loaded
+        verify(service, never()).getExtensions(any(), anyBoolean());
+    }
+
+    private static SchemaDocumentDTO document() {
+        OffsetDateTime now = OffsetDateTime.now();
+        return new SchemaDocumentDTO(ID, "test.xsd", null, EXTENSION, true, now, now, false);
+    }
+
+    private static SchemaFileDTO file(SchemaContentDTO content) {
+        return new SchemaFileDTO("test.xsd", DIGEST, DATA.length, content);
+    }
+
+}
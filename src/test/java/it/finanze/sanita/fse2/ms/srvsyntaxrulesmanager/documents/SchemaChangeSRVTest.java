@@ -0,0 +1,169 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.mongo.MongoChangeStreamCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.dto.response.changes.ChangeSetDTO;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaChangeRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IActiveDocsCacheSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.IChangeSetEventsSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.SchemaChangeSRV;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_FILENAME;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_ID;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY.FIELD_TYPE_ID_EXT;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IChangeSetRepo.FIELD_DELETED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SchemaChangeSRVTest {
+
+    private static final String EXT_A = "ext_a";
+    private static final BsonDocument TOKEN = new BsonDocument("_data", new BsonString("token"));
+
+    private ISchemaChangeRepo repository;
+    private IActiveDocsCacheSRV cache;
+    private ISchemaETagSRV etags;
+    private IChangeSetEventsSRV events;
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+    private SchemaChangeSRV service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        repository = mock(ISchemaChangeRepo.class);
+        cache = mock(IActiveDocsCacheSRV.class);
+        etags = mock(ISchemaETagSRV.class);
+        events = mock(IChangeSetEventsSRV.class);
+        cursor = mock(MongoChangeStreamCursor.class);
+        MongoChangeStreamCFG cfg = mock(MongoChangeStreamCFG.class);
+        when(cfg.isEnabled()).thenReturn(true);
+        when(cfg.getRetryDelay()).thenReturn(50L);
+        when(cursor.getResumeToken()).thenReturn(TOKEN);
+        service = new SchemaChangeSRV(repository, cache, etags, events, cfg);
+    }
+
+    @AfterEach
+    void teardown() {
+        service.stop();
+    }
+
+    @Test
+    void invalidateOnWrite() throws OperationException {
+        stream(change("insert", new Document(FIELD_TYPE_ID_EXT, EXT_A)), change("delete", null));
+        service.start();
+        // Opened without a token, nothing is known about the previous writes
+        verify(cache, timeout(2000)).invalidateAll();
+        verify(cache, timeout(2000)).invalidate(EXT_A);
+        verify(etags, timeout(2000)).invalidate(EXT_A);
+        // Tombstones only, active documents are not affected
+        verify(etags, timeout(2000).times(2)).invalidateAll();
+        verify(cache, times(1)).invalidateAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publishChanges() throws OperationException {
+        ObjectId inserted = new ObjectId();
+        ObjectId deleted = new ObjectId();
+        stream(
+            change("insert", inserted, new Document(FIELD_TYPE_ID_EXT, EXT_A).append(FIELD_FILENAME, "a.xsd").append(FIELD_DELETED, false)),
+            change("update", deleted, new Document(FIELD_TYPE_ID_EXT, EXT_A).append(FIELD_FILENAME, "b.xsd").append(FIELD_DELETED, true))
+        );
+        service.start();
+        // Both in the same batch, a single event
+        ArgumentCaptor<List<ChangeSetDTO>> insertions = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<ChangeSetDTO>> deletions = ArgumentCaptor.forClass(List.class);
+        verify(events, timeout(2000)).publish(insertions.capture(), deletions.capture());
+        assertEquals(inserted.toHexString(), insertions.getValue().get(0).getId());
+        assertEquals("a.xsd", insertions.getValue().get(0).getDescription().getFilename());
+        assertEquals(deleted.toHexString(), deletions.getValue().get(0).getId());
+        verify(events, after(200).times(1)).publish(any(), any());
+    }
+
+    @Test
+    void resumeAfterFailure() throws OperationException {
+        when(repository.watch(any()))
+            .thenReturn(cursor)
+            .thenReturn(cursor);
+        when(cursor.tryNext())
+            .thenReturn(change("insert", new Document(FIELD_TYPE_ID_EXT, EXT_A)))
+            .thenThrow(new MongoException(6, "Host unreachable"))
+            .thenAnswer(i -> idle());
+        service.start();
+        // Reopened from the last seen change, the caches are kept
+        verify(repository, timeout(2000)).watch(TOKEN);
+        verify(cache, times(1)).invalidateAll();
+    }
+
+    @Test
+    void reopenOnInvalidate() throws OperationException {
+        stream(change("drop", null), change("invalidate", null));
+        service.start();
+        verify(repository, timeout(2000).atLeast(2)).watch(null);
+        verify(cache, timeout(2000).atLeast(3)).invalidateAll();
+    }
+
+    @Test
+    void pollingOnStandalone() throws OperationException {
+        when(repository.watch(any())).thenThrow(new OperationException("Not supported",
+            new MongoException(40573, "The $changeStream stage is only supported on replica sets")));
+        service.start();
+        verify(repository, timeout(2000)).watch(null);
+        verify(repository, after(200).times(1)).watch(any());
+        assertFalse(service.isActive());
+        assertFalse(service.isRunning());
+    }
+
+    @SafeVarargs
+    private final void stream(ChangeStreamDocument<Document>... changes) throws OperationException {
+        Queue<ChangeStreamDocument<Document>> queue = new ArrayDeque<>(Arrays.asList(changes));
+        when(repository.watch(any())).thenReturn(cursor);
+        when(cursor.tryNext()).thenAnswer(i -> queue.isEmpty() ? idle() : queue.poll());
+    }
+
+    private static ChangeStreamDocument<Document> idle() throws InterruptedException {
+        // Same as an empty batch after the await time
+        Thread.sleep(10);
+        return null;
+    }
+
+    private static ChangeStreamDocument<Document> change(String type, Document doc) {
+        return change(type, null, doc);
+    }
+
+    private static ChangeStreamDocument<Document> change(String type, ObjectId id, Document doc) {
+        BsonDocument key = id != null ? new BsonDocument(FIELD_ID, new BsonObjectId(id)) : null;
+        return new ChangeStreamDocument<>(type, TOKEN, null, null, doc, null, key, null, null, null, null, null, null);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractDatabaseHandler;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataIntegrityException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.DataProcessingException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ICompactionRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaContentRepo;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "data.mongodb.gridfs.threshold=" + SchemaContentRepoTest.THRESHOLD
+)
+@ActiveProfiles(Constants.Profile.TEST)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SchemaContentRepoTest extends AbstractDatabaseHandler {
+
+    static final int THRESHOLD = 1024;
+
+    private static final String FAKE_FILENAME = "offloaded.xsd";
+
+    @Autowired
+    private IDocumentRepo documents;
+
+    @Autowired
+    private ISchemaContentRepo content;
+
+    @Autowired
+    private ICompactionRepo compaction;
+
+    @BeforeAll
+    public void setup() throws IOException, OperationException {
+        this.setupTestRepository();
+    }
+
+    @Test
+    void storeStreamAndPurge() throws OperationException, DataIntegrityException, DataProcessingException, IOException {
+        // Above the threshold once plain, far below it once compressed
+        byte[] data = new byte[THRESHOLD * 4];
+        Arrays.fill(data, (byte) 'a');
+        SchemaETY entity = new SchemaETY();
+        Date now = new Date();
+        entity.setNameSchema(FAKE_FILENAME);
+        entity.setContentSchema(data);
+        entity.setTypeIdExtension(SCHEMA_TEST_FAKE_EXTS);
+        entity.setRootSchema(false);
+        entity.setInsertionDate(now);
+        entity.setLastUpdateDate(now);
+        assertTrue(entity.getContentSchema().length() < THRESHOLD);
+        // Store
+        documents.insertDocsByExtensionId(Collections.singletonList(entity));
+        SchemaETY stored = mongo.findById(entity.getId(), SchemaETY.class);
+        assertNotNull(stored);
+        assertTrue(stored.isOffloaded());
+        assertNull(stored.getContentSchema());
+        // Stream
+        try (InputStream in = stored.decode(content.open(stored.getContentRef()))) {
+            assertArrayEquals(data, IOUtils.toByteArray(in));
+        }
+        // Purge, the stored content is removed along with the document
+        List<SchemaETY> deleted = documents.deleteDocsByExtensionId(SCHEMA_TEST_FAKE_EXTS);
+        assertEquals(1, deleted.size());
+        assertEquals(1, compaction.purge(Collections.singletonList(stored.getId())));
+        assertThrows(OperationException.class, () -> content.open(stored.getContentRef()));
+    }
+
+    @AfterAll
+    public void teardown() {
+        this.clearTestRepository();
+    }
+}
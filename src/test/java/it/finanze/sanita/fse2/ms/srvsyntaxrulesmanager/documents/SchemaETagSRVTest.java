@@ -0,0 +1,132 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.SchemaETagCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.ExtensionMetadataETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaMetadataETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.IDocumentRepo;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaETagSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.SchemaETagSRV;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class SchemaETagSRVTest {
+
+    private static final String EXTENSION = "ext_a";
+
+    private IDocumentRepo repository;
+    private ISchemaETagSRV service;
+
+    @BeforeEach
+    void setup() {
+        repository = mock(IDocumentRepo.class);
+        service = new SchemaETagSRV(repository, mock(SchemaETagCFG.class));
+    }
+
+    @Test
+    void extensionTagIsCached() throws OperationException {
+        List<SchemaMetadataETY> docs = Arrays.asList(doc(1000), doc(2000));
+        // Providing mock knowledge
+        when(repository.findDocsMetadataByExtensionId(EXTENSION, false)).thenReturn(docs);
+        String tag = service.getExtensionTag(EXTENSION, false, false);
+        assertNotNull(tag);
+        // Same rows, same tag, no further reads
+        assertEquals(tag, service.getExtensionTag(EXTENSION, false, false));
+        verify(repository, times(1)).findDocsMetadataByExtensionId(EXTENSION, false);
+        // The binary view is a different representation
+        assertNotEquals(tag, service.getExtensionTag(EXTENSION, false, true));
+        // Row order does not matter
+        when(repository.findDocsMetadataByExtensionId(EXTENSION, false)).thenReturn(Arrays.asList(docs.get(1), docs.get(0)));
+        service.invalidateAll();
+        assertEquals(tag, service.getExtensionTag(EXTENSION, false, false));
+    }
+
+    @Test
+    void extensionTagChangesAfterWrite() throws OperationException {
+        SchemaMetadataETY doc = doc(1000);
+        // Providing mock knowledge
+        when(repository.findDocsMetadataByExtensionId(EXTENSION, false)).thenReturn(Collections.singletonList(doc));
+        String tag = service.getExtensionTag(EXTENSION, false, false);
+        // Replaced version
+        when(repository.findDocsMetadataByExtensionId(EXTENSION, false)).thenReturn(Collections.singletonList(doc(3000)));
+        // Still cached until the write path drops it
+        assertEquals(tag, service.getExtensionTag(EXTENSION, false, false));
+        service.invalidate(EXTENSION);
+        assertNotEquals(tag, service.getExtensionTag(EXTENSION, false, false));
+    }
+
+    @Test
+    void extensionTagWithNotFound() throws OperationException {
+        when(repository.findDocsMetadataByExtensionId(anyString(), anyBoolean())).thenReturn(new ArrayList<>());
+        assertNull(service.getExtensionTag(EXTENSION, false, false));
+    }
+
+    @Test
+    void listingTagIsDroppedByAnyExtension() throws OperationException {
+        ExtensionMetadataETY ext = new ExtensionMetadataETY();
+        ext.setItems(Collections.singletonList(doc(1000)));
+        // Providing mock knowledge
+        when(repository.groupMetadataByExtension(false)).thenReturn(Collections.singletonList(ext));
+        String tag = service.getListingTag(false, false);
+        assertEquals(tag, service.getListingTag(false, false));
+        verify(repository, times(1)).groupMetadataByExtension(false);
+        // Any extension write changes the listing
+        service.invalidate("ext_b");
+        assertEquals(tag, service.getListingTag(false, false));
+        verify(repository, times(2)).groupMetadataByExtension(false);
+    }
+
+    @Test
+    void reconcile() throws OperationException {
+        SchemaMetadataETY doc = doc(1000);
+        // Providing mock knowledge
+        when(repository.findDocsMetadataByExtensionId(EXTENSION, false)).thenReturn(Collections.singletonList(doc));
+        String tag = service.getExtensionTag(EXTENSION, false, false);
+        // First check, nothing to compare with
+        when(repository.findLastUpdateDate()).thenReturn(new Date(1000));
+        assertEquals(1, service.reconcile());
+        service.getExtensionTag(EXTENSION, false, false);
+        verify(repository, times(2)).findDocsMetadataByExtensionId(EXTENSION, false);
+        // Nothing happened
+        assertEquals(0, service.reconcile());
+        verify(repository, never()).findExtensionsUpdatedAfter(any());
+        // Another replica replaced the document
+        when(repository.findLastUpdateDate()).thenReturn(new Date(3000));
+        when(repository.findExtensionsUpdatedAfter(new Date(1000))).thenReturn(Collections.singletonList(EXTENSION));
+        when(repository.findDocsMetadataByExtensionId(EXTENSION, false)).thenReturn(Collections.singletonList(doc(3000)));
+        assertEquals(1, service.reconcile());
+        assertNotEquals(tag, service.getExtensionTag(EXTENSION, false, false));
+    }
+
+    private static SchemaMetadataETY doc(long lastUpdate) {
+        SchemaMetadataETY doc = new SchemaMetadataETY();
+        doc.setId(new ObjectId().toHexString());
+        doc.setTypeIdExtension(EXTENSION);
+        doc.setLastUpdateDate(new Date(lastUpdate));
+        return doc;
+    }
+}
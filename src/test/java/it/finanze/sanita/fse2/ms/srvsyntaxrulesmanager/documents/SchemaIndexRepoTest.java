@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.documents;
+
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractDatabaseHandler;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.Constants;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.OperationException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.health.SchemaIndexHealthIndicator;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.entity.SchemaETY;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.ISchemaIndexRepo;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.repository.mongo.impl.SchemaIndexRepo.IDX_EXT_DELETED_NAME;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles(Constants.Profile.TEST)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SchemaIndexRepoTest extends AbstractDatabaseHandler {
+
+    @Autowired
+    private ISchemaIndexRepo repository;
+    @Autowired
+    private SchemaIndexHealthIndicator health;
+
+    @BeforeAll
+    public void setup() throws IOException, OperationException {
+        this.setupTestRepository();
+    }
+
+    @Test
+    void ensureIndexes() throws OperationException {
+        // Create every index, twice to verify idempotency
+        for (String name : repository.getExpectedIndexes()) {
+            assertDoesNotThrow(() -> repository.ensureIndex(name, true));
+            assertDoesNotThrow(() -> repository.ensureIndex(name, true));
+        }
+        // Nothing should be missing
+        assertTrue(repository.getMissingIndexes().isEmpty());
+        assertEquals(Status.UP, health.health().getStatus());
+        // Drop one
+        mongo.indexOps(SchemaETY.class).dropIndex(IDX_EXT_DELETED_NAME);
+        assertEquals(1, repository.getMissingIndexes().size());
+        // Slower queries only, still ready
+        Health status = health.health();
+        assertEquals(Status.UP, status.getStatus());
+        assertEquals(Collections.singletonList(IDX_EXT_DELETED_NAME), status.getDetails().get(SchemaIndexHealthIndicator.DETAIL_MISSING));
+    }
+
+    @AfterAll
+    public void teardown() {
+        this.clearTestRepository();
+    }
+}
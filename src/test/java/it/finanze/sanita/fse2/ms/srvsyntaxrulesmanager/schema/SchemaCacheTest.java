@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.schema;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.SchemaCacheCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaCache;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaValidator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractEntityHandler.*;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.createSchemaFromResource;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.RoutesUtility.API_PARAM_FILES;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaCache.METRIC_CACHE_EVICTIONS;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaCache.METRIC_CACHE_GETS;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.MediaType.APPLICATION_XML_VALUE;
+
+class SchemaCacheTest {
+
+    private MeterRegistry registry;
+    private SchemaCache cache;
+
+    @BeforeEach
+    void setup() {
+        SchemaCacheCFG cfg = mock(SchemaCacheCFG.class);
+        when(cfg.getMaxSize()).thenReturn(1);
+        registry = new SimpleMeterRegistry();
+        cache = new SchemaCache(cfg, registry);
+    }
+
+    @Test
+    void verifySameContentTwice() throws IOException {
+        MockMultipartFile[] files = createSchemaFromResource(API_PARAM_FILES, true);
+        // First compilation populates the cache
+        assertDoesNotThrow(() -> new SchemaValidator(SCHEMA_TEST_ROOT, cache).verify(files));
+        assertEquals(1, getCount("miss"));
+        // Same content is not compiled again
+        assertDoesNotThrow(() -> new SchemaValidator(SCHEMA_TEST_ROOT, cache).verify(files));
+        assertEquals(1, getCount("hit"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void verifyUnreferencedFileDoesNotInvalidate() throws IOException {
+        MockMultipartFile[] files = createSchemaFromResource(API_PARAM_FILES, true);
+        assertDoesNotThrow(() -> new SchemaValidator(SCHEMA_TEST_ROOT, cache).verify(files));
+        // Add a file which is not part of the include/import graph
+        MockMultipartFile[] extended = Arrays.copyOf(files, files.length + 1);
+        extended[files.length] = createStandaloneSchema(SCHEMA_TEST_ROOT_B);
+        assertDoesNotThrow(() -> new SchemaValidator(SCHEMA_TEST_ROOT, cache).verify(extended));
+        assertEquals(1, getCount("hit"));
+    }
+
+    @Test
+    void verifyEviction() throws IOException {
+        MockMultipartFile[] files = createSchemaFromResource(API_PARAM_FILES, true);
+        MockMultipartFile[] standalone = new MockMultipartFile[]{createStandaloneSchema(SCHEMA_TEST_ROOT_B)};
+        assertDoesNotThrow(() -> new SchemaValidator(SCHEMA_TEST_ROOT, cache).verify(files));
+        assertDoesNotThrow(() -> new SchemaValidator(SCHEMA_TEST_ROOT_B, cache).verify(standalone));
+        // Capacity is one, the first schema must have been evicted
+        assertEquals(1, cache.size());
+        assertEquals(1, registry.get(METRIC_CACHE_EVICTIONS).counter().count());
+    }
+
+    private static MockMultipartFile createStandaloneSchema(String filename) {
+        return new MockMultipartFile(
+            API_PARAM_FILES,
+            filename,
+            APPLICATION_XML_VALUE,
+            "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"/>".getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    private double getCount(String result) {
+        return registry.get(METRIC_CACHE_GETS).tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ * 
+ * Copyright (C) 2023 Ministero della Salute
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.schema;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.SchemaCacheCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.config.ValidationExecutorCFG;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.SchemaValidatorException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.exceptions.ValidationUnavailableException;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.ISchemaValidatorSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.SchemaValidatorSRV;
+import it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.validators.schema.SchemaCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.AbstractEntityHandler.SCHEMA_TEST_ROOT;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.base.MockRequests.createSchemaFromResource;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.service.impl.SchemaValidatorSRV.METRIC_VALIDATION_COMPILE;
+import static it.finanze.sanita.fse2.ms.srvsyntaxrulesmanager.utility.RoutesUtility.API_PARAM_FILES;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SchemaValidatorSRVTest {
+
+    private static final long RETRY_AFTER = 7;
+
+    private MeterRegistry registry;
+    private ThreadPoolExecutor executor;
+    private ISchemaValidatorSRV service;
+
+    @BeforeEach
+    void setup() {
+        SchemaCacheCFG cache = mock(SchemaCacheCFG.class);
+        when(cache.getMaxSize()).thenReturn(1);
+        ValidationExecutorCFG cfg = mock(ValidationExecutorCFG.class);
+        when(cfg.getRetryAfter()).thenReturn(RETRY_AFTER);
+        registry = new SimpleMeterRegistry();
+        // Single thread, no queue
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+        service = new SchemaValidatorSRV(new SchemaCache(cache, registry), executor, cfg, registry);
+    }
+
+    @AfterEach
+    void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void verifyOnValidationThread() throws IOException {
+        assertDoesNotThrow(() -> service.verify(SCHEMA_TEST_ROOT, createSchemaFromResource(API_PARAM_FILES, true)));
+        assertEquals(1, registry.get(METRIC_VALIDATION_COMPILE).timer().count());
+        // Invalid schemas are reported as usual
+        assertThrows(SchemaValidatorException.class, () -> service.verify(
+            SCHEMA_TEST_ROOT,
+            createSchemaFromResource(API_PARAM_FILES, false)
+        ));
+    }
+
+    @Test
+    void verifyUnexpectedFailure() {
+        SchemaCache broken = mock(SchemaCache.class);
+        when(broken.get(anyString(), any())).thenThrow(new NullPointerException("Broken"));
+        ValidationExecutorCFG cfg = mock(ValidationExecutorCFG.class);
+        service = new SchemaValidatorSRV(broken, executor, cfg, registry);
+        // Not reported as an invalid schema
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> service.verify(
+            SCHEMA_TEST_ROOT,
+            createSchemaFromResource(API_PARAM_FILES, true)
+        ));
+        assertInstanceOf(NullPointerException.class, ex.getCause());
+    }
+
+    @Test
+    void verifyRejectionWhenSaturated() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        // Keep the only validation thread busy
+        executor.submit(() -> {
+            latch.await();
+            return null;
+        });
+        ValidationUnavailableException ex = assertThrows(ValidationUnavailableException.class, () -> service.verify(
+            SCHEMA_TEST_ROOT,
+            createSchemaFromResource(API_PARAM_FILES, true)
+        ));
+        assertEquals(RETRY_AFTER, ex.getRetryAfter());
+        latch.countDown();
+    }
+}